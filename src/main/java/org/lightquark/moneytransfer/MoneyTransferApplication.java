@@ -1,12 +1,21 @@
 package org.lightquark.moneytransfer;
 
+import org.lightquark.moneytransfer.service.SnapshotService;
 import org.lightquark.moneytransfer.service.TransactionProcessor;
+import org.lightquark.moneytransfer.tcp.TcpIngestionServer;
 import org.lightquark.moneytransfer.web.JettyWebServer;
 
+import java.io.IOException;
+
 public class MoneyTransferApplication {
 
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         new TransactionProcessor().start();
+        SnapshotService.getInstance().recover();
+        SnapshotService.getInstance().start();
+        if (TcpIngestionServer.isEnabled()) {
+            new TcpIngestionServer().start();
+        }
         new JettyWebServer().start();
     }
 }
@@ -0,0 +1,27 @@
+package org.lightquark.moneytransfer.client;
+
+import lombok.Getter;
+import lombok.ToString;
+import org.lightquark.moneytransfer.tcp.AckStatus;
+
+/**
+ * Answer of the TCP ingestion to a request, the transaction id is 0 unless the request is accepted.
+ */
+@Getter
+@ToString
+public class Acknowledgement {
+
+    private final long correlationId;
+    private final AckStatus status;
+    private final long transactionId;
+
+    public Acknowledgement(long correlationId, AckStatus status, long transactionId) {
+        this.correlationId = correlationId;
+        this.status = status;
+        this.transactionId = transactionId;
+    }
+
+    public boolean isAccepted() {
+        return status == AckStatus.ACCEPTED;
+    }
+}
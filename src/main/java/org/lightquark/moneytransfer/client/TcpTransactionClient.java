@@ -0,0 +1,163 @@
+package org.lightquark.moneytransfer.client;
+
+import org.lightquark.moneytransfer.model.TransactionType;
+import org.lightquark.moneytransfer.tcp.AckStatus;
+import org.lightquark.moneytransfer.tcp.BinaryProtocol;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Client of the TCP ingestion, see {@link org.lightquark.moneytransfer.tcp.TcpIngestionServer}. It depends only on
+ * {@link BinaryProtocol} and {@link AckStatus}, the amounts are in minor units.
+ * <p>
+ * The requests are buffered and sent by {@link #flush()}, or once the buffer is full, so many of them share
+ * a segment. Their acknowledgements are read by a thread of the client which completes the returned futures.
+ * The methods are thread safe.
+ * <pre>
+ * try (TcpTransactionClient client = new TcpTransactionClient("localhost", 8081)) {
+ *     CompletableFuture&lt;Acknowledgement&gt; deposit = client.deposit(accountId, 1000);
+ *     client.flush();
+ *     deposit.join();
+ * }
+ * </pre>
+ */
+public class TcpTransactionClient implements Closeable {
+
+    private static final int BUFFER_SIZE = 65536;
+
+    private final SocketChannel channel;
+    private final ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+    // Requests waiting for their acknowledgements, in the order they are sent
+    private final Queue<Pending> pending = new ConcurrentLinkedQueue<>();
+    private long lastCorrelationId;
+    private volatile IOException failure;
+
+    public TcpTransactionClient(String host, int port) throws IOException {
+        channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Thread reader = new Thread(this::readLoop, "tcp-client-" + channel.getLocalAddress());
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    public CompletableFuture<Acknowledgement> deposit(long accountId, long amount) throws IOException {
+        return send(TransactionType.DEPOSIT, accountId, 0L, amount);
+    }
+
+    public CompletableFuture<Acknowledgement> withdraw(long accountId, long amount) throws IOException {
+        return send(TransactionType.WITHDRAW, accountId, 0L, amount);
+    }
+
+    public CompletableFuture<Acknowledgement> transfer(long sourceAccountId, long destinationAccountId, long amount)
+            throws IOException {
+        return send(TransactionType.TRANSFER, sourceAccountId, destinationAccountId, amount);
+    }
+
+    /**
+     * Sends the buffered requests.
+     */
+    public synchronized void flush() throws IOException {
+        out.flip();
+        try {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        } finally {
+            out.clear();
+        }
+    }
+
+    /**
+     * Closes the connection, the requests without acknowledgements complete exceptionally.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private synchronized CompletableFuture<Acknowledgement> send(TransactionType type, long sourceAccountId,
+            long destinationAccountId, long amount) throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        if (out.remaining() < BinaryProtocol.LENGTH_SIZE + BinaryProtocol.REQUEST_SIZE) {
+            flush();
+        }
+        long correlationId = ++lastCorrelationId;
+        Pending request = new Pending(correlationId);
+        pending.add(request);
+        if (failure != null) {
+            // The reader has failed meanwhile and may have missed this request
+            failPending();
+        }
+        BinaryProtocol.putRequest(out, type, correlationId, sourceAccountId, destinationAccountId, amount);
+        return request.acknowledgement;
+    }
+
+    private void readLoop() {
+        ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+        try {
+            while (channel.read(in) >= 0) {
+                in.flip();
+                while (in.remaining() >= BinaryProtocol.LENGTH_SIZE) {
+                    int length = in.getInt(in.position());
+                    if (length < BinaryProtocol.ACK_SIZE || length > BinaryProtocol.MAX_FRAME_SIZE) {
+                        throw new ProtocolException("Invalid frame length " + length);
+                    }
+                    if (in.remaining() < BinaryProtocol.LENGTH_SIZE + length) {
+                        break;
+                    }
+                    int next = in.position() + BinaryProtocol.LENGTH_SIZE + length;
+                    in.position(in.position() + BinaryProtocol.LENGTH_SIZE);
+                    long correlationId = in.getLong();
+                    AckStatus status = AckStatus.of(in.get());
+                    long transactionId = in.getLong();
+                    in.position(next);
+                    complete(new Acknowledgement(correlationId, status, transactionId));
+                }
+                in.compact();
+            }
+            throw new EOFException("Connection is closed by the server");
+        } catch (IOException e) {
+            failure = e;
+            failPending();
+        }
+    }
+
+    private void complete(Acknowledgement acknowledgement) throws ProtocolException {
+        Pending request = pending.poll();
+        if (request == null || request.correlationId != acknowledgement.getCorrelationId()) {
+            throw new ProtocolException("Unexpected acknowledgement " + acknowledgement);
+        }
+        if (acknowledgement.getStatus() == null) {
+            throw new ProtocolException("Unknown status of acknowledgement " + acknowledgement.getCorrelationId());
+        }
+        request.acknowledgement.complete(acknowledgement);
+    }
+
+    private void failPending() {
+        Pending request;
+        while ((request = pending.poll()) != null) {
+            request.acknowledgement.completeExceptionally(failure);
+        }
+    }
+
+    private static final class Pending {
+        private final long correlationId;
+        private final CompletableFuture<Acknowledgement> acknowledgement = new CompletableFuture<>();
+
+        private Pending(long correlationId) {
+            this.correlationId = correlationId;
+        }
+    }
+}
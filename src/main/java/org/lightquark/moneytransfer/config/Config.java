@@ -5,6 +5,9 @@ import lombok.extern.slf4j.Slf4j;
 import java.io.IOException;
 import java.util.Properties;
 
+/**
+ * Properties of application.properties, a system property of the same name overrides the file.
+ */
 @Slf4j
 public class Config {
 
@@ -23,7 +26,8 @@ public class Config {
     }
 
     public static String getString(String key) {
-        return properties.getProperty(key);
+        String value = System.getProperty(key);
+        return value != null ? value : properties.getProperty(key);
     }
 
     public static String getString(String key, String defaultValue) {
@@ -33,7 +37,7 @@ public class Config {
 
     public static Integer getInteger(String key) {
         try {
-            String s = properties.getProperty(key);
+            String s = getString(key);
             return s != null ? Integer.parseInt(s) : null;
         } catch (Exception e) {
             log.warn("Failed parse property {}", key, e);
@@ -1,51 +1,140 @@
 package org.lightquark.moneytransfer.controller;
 
 import lombok.extern.slf4j.Slf4j;
+import org.lightquark.moneytransfer.json.JsonEncoder;
 import org.lightquark.moneytransfer.model.Account;
+import org.lightquark.moneytransfer.model.AccountPage;
+import org.lightquark.moneytransfer.model.TransactionPage;
 import org.lightquark.moneytransfer.service.AccountService;
+import org.lightquark.moneytransfer.service.TransactionService;
 
+import java.io.OutputStream;
 import java.util.List;
 
 import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 @Slf4j
 @Path("/account")
 @Produces(MediaType.APPLICATION_JSON)
 public class AccountController {
 
+    private static final int MAX_HISTORY_LIMIT = 1000;
+    private static final int MAX_PAGE_LIMIT = 1000;
+    private static final int STREAM_PAGE_SIZE = 1024;
+    private static final MediaType NDJSON_TYPE = MediaType.valueOf(TransactionController.APPLICATION_NDJSON);
+
     private AccountService accountService = AccountService.getInstance();
+    private TransactionService transactionService = TransactionService.getInstance();
 
+    /**
+     * Without params returns all accounts as a JSON array. With limit returns a page of accounts from the cursor.
+     * With the Accept header preferring application/x-ndjson returns the accounts from the cursor as lines.
+     * The array and the lines are written while the accounts are read by pages, so a response of any size takes
+     * the memory of a page.
+     */
     @GET
     @Path("/all")
-    public Response findAll() {
-        List<Account> accounts = accountService.findAll();
-        if (accounts == null) {
+    @Produces({MediaType.APPLICATION_JSON, TransactionController.APPLICATION_NDJSON})
+    public Response findAll(@QueryParam("from") @DefaultValue("0") long from, @QueryParam("limit") Integer limit,
+            @Context HttpHeaders headers) {
+        if (from < 0 || limit != null && (limit <= 0 || limit > MAX_PAGE_LIMIT)) {
+            log.info("Invalid account page from {} limit {}", from, limit);
             return Response.status(Response.Status.BAD_REQUEST).build();
         }
-        return Response.ok(accounts).build();
+        if (prefers(headers, NDJSON_TYPE)) {
+            return Response.ok(streamAccounts(from, false), NDJSON_TYPE).build();
+        }
+        if (limit != null) {
+            return Response.ok(accountService.findPage(from, limit)).build();
+        }
+        return Response.ok(streamAccounts(from, true), MediaType.APPLICATION_JSON_TYPE).build();
     }
 
     @GET
     @Path("/{id}")
     public Response find(@PathParam("id") Long id) {
-        Account account = accountService.find(id);
-        if (account == null) {
+        byte[] json = accountService.findJson(id);
+        if (json == null) {
             return Response.status(Response.Status.BAD_REQUEST).build();
         }
-        return Response.ok(account).build();
+        return Response.ok(json).build();
+    }
+
+    @GET
+    @Path("/{id}/transactions")
+    public Response findTransactions(@PathParam("id") Long id,
+            @QueryParam("from") @DefaultValue("0") long from,
+            @QueryParam("limit") @DefaultValue("100") int limit) {
+        if (from < 0 || limit <= 0 || limit > MAX_HISTORY_LIMIT) {
+            log.info("Invalid history page from {} limit {}", from, limit);
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        if (accountService.find(id) == null) {
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        TransactionPage page = transactionService.findHistory(id, from, limit);
+        return Response.ok(page).build();
+    }
+
+    /**
+     * @param array true for a JSON array, false for newline delimited JSON
+     */
+    private StreamingOutput streamAccounts(long from, boolean array) {
+        return (OutputStream stream) -> {
+            try (JsonEncoder encoder = JsonEncoder.open(stream)) {
+                if (array) {
+                    encoder.writeStartArray();
+                }
+                Long cursor = from;
+                while (cursor != null) {
+                    AccountPage page = accountService.findPage(cursor, STREAM_PAGE_SIZE);
+                    for (Account account : page.getAccounts()) {
+                        encoder.writeAccount(account);
+                        if (!array) {
+                            encoder.writeLineSeparator();
+                        }
+                    }
+                    cursor = page.getNext();
+                }
+                if (array) {
+                    encoder.writeEndArray();
+                }
+            }
+        };
+    }
+
+    private static boolean prefers(HttpHeaders headers, MediaType type) {
+        List<MediaType> acceptable = headers.getAcceptableMediaTypes();
+        if (acceptable.isEmpty()) {
+            return false;
+        }
+        MediaType preferred = acceptable.get(0);
+        return preferred.getType().equalsIgnoreCase(type.getType())
+                && preferred.getSubtype().equalsIgnoreCase(type.getSubtype());
     }
 
     @PUT
     @Path("/create")
-    public Response create() {
-        Account account = accountService.create();
+    public Response create(@QueryParam("hot") boolean hot) {
+        Account account;
+        try {
+            account = accountService.create(hot);
+        } catch (IllegalArgumentException e) {
+            log.info("Unable to create account: {}", e.getMessage());
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
         log.info("Account {} created successfully.", account);
         return Response.ok(account).build();
     }
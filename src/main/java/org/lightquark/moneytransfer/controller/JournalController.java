@@ -0,0 +1,22 @@
+package org.lightquark.moneytransfer.controller;
+
+import org.lightquark.moneytransfer.journal.TransactionJournal;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+@Path("/journal")
+@Produces(MediaType.APPLICATION_JSON)
+public class JournalController {
+
+    private TransactionJournal transactionJournal = TransactionJournal.getInstance();
+
+    @GET
+    @Path("/stats")
+    public Response stats() {
+        return Response.ok(transactionJournal.getStats()).build();
+    }
+}
@@ -0,0 +1,94 @@
+package org.lightquark.moneytransfer.controller;
+
+import org.lightquark.moneytransfer.metrics.PrometheusWriter;
+import org.lightquark.moneytransfer.metrics.TransactionMetrics;
+import org.lightquark.moneytransfer.model.LockStats;
+import org.lightquark.moneytransfer.model.TransactionStatus;
+import org.lightquark.moneytransfer.model.TransactionType;
+import org.lightquark.moneytransfer.repository.TransactionRepository;
+import org.lightquark.moneytransfer.service.AccountJsonCache;
+import org.lightquark.moneytransfer.service.AdmissionControl;
+import org.lightquark.moneytransfer.service.IdempotencyCache;
+import org.lightquark.moneytransfer.trace.EventRecorder;
+import org.lightquark.moneytransfer.util.TransferLockManager;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Response;
+
+/**
+ * Metrics in the Prometheus text format. The counters are summed on every scrape, the processing only adds to them.
+ */
+@Path("/metrics")
+@Produces(PrometheusWriter.CONTENT_TYPE)
+public class MetricsController {
+
+    private static final String PREFIX = "moneytransfer_";
+    private static final TransactionStatus[] PROCESSED_STATUSES =
+            {TransactionStatus.COMPLETED, TransactionStatus.INVALID};
+
+    private TransactionRepository transactionRepository = TransactionRepository.getInstance();
+    private TransactionMetrics transactionMetrics = TransactionMetrics.getInstance();
+    private TransferLockManager lockManager = TransferLockManager.getInstance();
+    private EventRecorder eventRecorder = EventRecorder.getInstance();
+    private IdempotencyCache idempotencyCache = IdempotencyCache.getInstance();
+    private AccountJsonCache accountJsonCache = AccountJsonCache.getInstance();
+    private AdmissionControl admissionControl = AdmissionControl.getInstance();
+
+    @GET
+    public Response metrics() {
+        PrometheusWriter writer = new PrometheusWriter();
+        writer.gauge(PREFIX + "queue_depth", "Transactions waiting for processing",
+                transactionRepository.getSize());
+        writer.counter(PREFIX + "transactions_enqueued_total", "Transactions saved for processing", null,
+                transactionRepository.getEnqueuedCount());
+        writer.counter(PREFIX + "transactions_dequeued_total", "Transactions taken for processing", null,
+                transactionRepository.getDequeuedCount());
+        writer.counter(PREFIX + "transactions_postponed_total",
+                "Transactions put aside until the preceding transactions of the account are processed", null,
+                transactionMetrics.getPostponed());
+
+        LockStats lockStats = lockManager.getStats();
+        writer.counter(PREFIX + "transactions_retried_total", "Transactions put off for a retry on a busy lock", null,
+                lockStats.getRetries());
+        writer.counter(PREFIX + "lock_acquisitions_total", "Account lock acquisitions", null,
+                lockStats.getAcquisitions());
+        writer.counter(PREFIX + "lock_waits_total", "Account lock acquisitions which found the lock busy", null,
+                lockStats.getWaits());
+        writer.counter(PREFIX + "lock_timeouts_total", "Account lock acquisitions which timed out", null,
+                lockStats.getTimeouts());
+        writer.counterSeconds(PREFIX + "lock_wait_seconds_total", "Time spent waiting for busy account locks",
+                lockStats.getWaitNanos());
+
+        for (TransactionType type : TransactionType.values()) {
+            for (TransactionStatus status : PROCESSED_STATUSES) {
+                writer.counter(PREFIX + "transactions_processed_total", "Processed transactions",
+                        "type=\"" + type + "\",status=\"" + status + "\"",
+                        transactionMetrics.getProcessed(type, status));
+            }
+        }
+        for (TransactionType type : TransactionType.values()) {
+            writer.histogram(PREFIX + "transaction_processing_seconds", "Processing time of transactions",
+                    "type=\"" + type + "\"", transactionMetrics.getProcessingTime(type));
+        }
+        for (AdmissionControl.Rejection rejection : AdmissionControl.Rejection.values()) {
+            writer.counter(PREFIX + "admission_rejected_total", "Transactions not admitted for processing",
+                    "reason=\"" + rejection + "\"", admissionControl.getRejectedCount(rejection));
+        }
+        writer.gauge(PREFIX + "idempotency_keys", "Idempotency keys remembered", idempotencyCache.getSize());
+        writer.counter(PREFIX + "idempotency_repeated_requests_total", "Requests with an already known idempotency key",
+                null, idempotencyCache.getRepeatedCount());
+        writer.counter(PREFIX + "account_json_cache_hits_total", "Account reads served with the cached JSON", null,
+                accountJsonCache.getHitCount());
+        writer.counter(PREFIX + "account_json_cache_misses_total", "Account reads which encoded the JSON again", null,
+                accountJsonCache.getMissCount());
+        writer.gauge(PREFIX + "account_json_cache_entries", "Accounts with the cached JSON",
+                accountJsonCache.getSize());
+        writer.counter(PREFIX + "account_json_cache_evictions_total", "Accounts evicted from the JSON cache", null,
+                accountJsonCache.getEvictionCount());
+        writer.counter(PREFIX + "trace_events_dropped_total", "Trace events dropped because the buffer was full", null,
+                eventRecorder.getDroppedCount());
+        return Response.ok(writer.toString()).build();
+    }
+}
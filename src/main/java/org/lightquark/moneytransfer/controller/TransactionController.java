@@ -1,101 +1,459 @@
 package org.lightquark.moneytransfer.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import lombok.extern.slf4j.Slf4j;
 import org.lightquark.moneytransfer.model.Account;
+import org.lightquark.moneytransfer.model.BatchItemResult;
 import org.lightquark.moneytransfer.model.Transaction;
+import org.lightquark.moneytransfer.model.TransactionRequest;
+import org.lightquark.moneytransfer.model.TransactionType;
 import org.lightquark.moneytransfer.service.AccountService;
+import org.lightquark.moneytransfer.service.AdmissionControl;
+import org.lightquark.moneytransfer.service.IdempotencyCache;
 import org.lightquark.moneytransfer.service.TransactionService;
+import org.lightquark.moneytransfer.util.MoneyUtils;
+import org.lightquark.moneytransfer.web.ClientAddressListener;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
+import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 @Slf4j
 @Path("/transaction")
 @Produces(MediaType.APPLICATION_JSON)
 public class TransactionController {
 
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final ObjectReader REQUEST_READER = OBJECT_MAPPER.readerFor(TransactionRequest.class);
+    private static final ObjectWriter RESULT_WRITER = OBJECT_MAPPER.writerFor(BatchItemResult.class)
+            .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    private static final long MAX_AWAIT_MILLIS = 60_000;
+    private static final int UNPROCESSABLE_ENTITY = 422;
+    private static final byte[] LINE_SEPARATOR = "\n".getBytes(StandardCharsets.UTF_8);
+    // Entries of a batch whose transactions are saved at once and whose results are sent at once
+    private static final int BATCH_CHUNK_SIZE = 256;
+
     private TransactionService transactionService = TransactionService.getInstance();
     private AccountService accountService = AccountService.getInstance();
+    private IdempotencyCache idempotencyCache = IdempotencyCache.getInstance();
+    private AdmissionControl admissionControl = AdmissionControl.getInstance();
+
+    // The address of the client is the key of its rate limit, see ClientAddressListener
+    @Context
+    private ContainerRequestContext requestContext;
+
+    @GET
+    @Path("/locks")
+    public Response lockStats() {
+        return Response.ok(transactionService.getLockStats()).build();
+    }
 
     @PUT
     @Path("/deposit")
-    public Response deposit(@QueryParam("accountId") Long accountId, @QueryParam("amount") BigDecimal amount) {
+    public void deposit(@QueryParam("accountId") Long accountId, @QueryParam("amount") BigDecimal amount,
+            @QueryParam("await") Long await, @HeaderParam(IDEMPOTENCY_KEY_HEADER) String idempotencyKey,
+            @Suspended AsyncResponse asyncResponse) {
+        respond(asyncResponse, await, idempotencyKey, accountId,
+                original -> isSame(original, TransactionType.DEPOSIT, accountId, null, amount),
+                () -> createDeposit(accountId, amount));
+    }
+
+    @PUT
+    @Path("/withdraw")
+    public void withdraw(@QueryParam("accountId") Long accountId, @QueryParam("amount") BigDecimal amount,
+            @QueryParam("await") Long await, @HeaderParam(IDEMPOTENCY_KEY_HEADER) String idempotencyKey,
+            @Suspended AsyncResponse asyncResponse) {
+        respond(asyncResponse, await, idempotencyKey, accountId,
+                original -> isSame(original, TransactionType.WITHDRAW, accountId, null, amount),
+                () -> createWithdraw(accountId, amount));
+    }
+
+    @PUT
+    @Path("/transfer")
+    public void transfer(@QueryParam("sourceAccountId") Long sourceAccountId,
+            @QueryParam("destinationAccountId") Long destinationAccountId,
+            @QueryParam("amount") BigDecimal amount,
+            @QueryParam("await") Long await, @HeaderParam(IDEMPOTENCY_KEY_HEADER) String idempotencyKey,
+            @Suspended AsyncResponse asyncResponse) {
+        respond(asyncResponse, await, idempotencyKey, sourceAccountId,
+                original -> isSame(original, TransactionType.TRANSFER, sourceAccountId, destinationAccountId,
+                        amount),
+                () -> createTransfer(sourceAccountId, destinationAccountId, amount));
+    }
+
+    /**
+     * Without await the transaction is returned once it is accepted, in UNPROCESSED status.
+     * With await (milliseconds) the response is resumed once the transaction is processed, no thread waits for it.
+     * If the time is out the transaction is returned as it is with ACCEPTED status.
+     * <p>
+     * A request repeating the Idempotency-Key of a previous one gets the transaction of the previous one, in its
+     * current status or, with await, once it is processed. Reusing the key for other params is UNPROCESSABLE_ENTITY.
+     * <p>
+     * A new transaction which is not admitted (see {@link AdmissionControl}) is TOO_MANY_REQUESTS with Retry-After,
+     * a repeated request gets the transaction of the previous one anyway.
+     *
+     * @param accountId source account of the transaction, the key of its rate limit
+     * @param sameRequest tells if the transaction of a previous request with the key matches the params
+     * @param creator returns the created transaction or null if the request is invalid
+     */
+    private void respond(AsyncResponse asyncResponse, Long await, String idempotencyKey, Long accountId,
+            Predicate<Transaction> sameRequest, Supplier<Transaction> creator) {
+        if (await != null && (await <= 0 || await > MAX_AWAIT_MILLIS)) {
+            log.info("Invalid await {}", await);
+            asyncResponse.resume(Response.status(Response.Status.BAD_REQUEST).build());
+            return;
+        }
+        if (idempotencyKey == null) {
+            if (admit(asyncResponse, accountId)) {
+                accept(asyncResponse, await, creator.get());
+            }
+            return;
+        }
+        if (idempotencyKey.isEmpty() || idempotencyKey.length() > IdempotencyCache.MAX_KEY_LENGTH) {
+            log.info("Invalid idempotency key {}", idempotencyKey);
+            asyncResponse.resume(Response.status(Response.Status.BAD_REQUEST).build());
+            return;
+        }
+
+        CompletableFuture<Transaction> created = new CompletableFuture<>();
+        CompletableFuture<Transaction> original = idempotencyCache.putIfAbsent(idempotencyKey, created);
+        if (original != null) {
+            original.thenAccept(transaction -> {
+                if (transaction == null) {
+                    // The previous request has not created a transaction, so this one tries on its own
+                    respond(asyncResponse, await, idempotencyKey, accountId, sameRequest, creator);
+                } else if (!sameRequest.test(transaction)) {
+                    log.info("Idempotency key {} is reused for other params", idempotencyKey);
+                    asyncResponse.resume(Response.status(UNPROCESSABLE_ENTITY).build());
+                } else if (await == null) {
+                    asyncResponse.resume(Response.ok(transaction).build());
+                } else {
+                    resumeWhenProcessed(asyncResponse, await, transaction,
+                            transactionService.whenProcessed(transaction));
+                }
+            });
+            return;
+        }
+        Transaction transaction = null;
+        try {
+            if (admit(asyncResponse, accountId)) {
+                transaction = creator.get();
+                accept(asyncResponse, await, transaction);
+            }
+        } finally {
+            if (transaction == null) {
+                idempotencyCache.remove(idempotencyKey, created);
+            }
+            created.complete(transaction);
+        }
+    }
+
+    /**
+     * @return false if the transaction is not admitted, the response is resumed then
+     */
+    private boolean admit(AsyncResponse asyncResponse, Long accountId) {
+        long retryAfter = admissionControl.admit(getClient(), accountId);
+        if (retryAfter == AdmissionControl.ADMITTED) {
+            return true;
+        }
+        log.debug("Transaction of account {} is not admitted, retry after {} s", accountId, retryAfter);
+        asyncResponse.resume(tooManyRequests(retryAfter));
+        return false;
+    }
+
+    private String getClient() {
+        return requestContext == null ? null
+                : (String) requestContext.getProperty(ClientAddressListener.CLIENT_ADDRESS_ATTRIBUTE);
+    }
+
+    private static Response tooManyRequests(long retryAfter) {
+        return Response.status(Response.Status.TOO_MANY_REQUESTS).header(HttpHeaders.RETRY_AFTER, retryAfter).build();
+    }
+
+    private void accept(AsyncResponse asyncResponse, Long await, Transaction transaction) {
+        if (transaction == null) {
+            asyncResponse.resume(Response.status(Response.Status.BAD_REQUEST).build());
+            return;
+        }
+        if (await == null) {
+            transactionService.save(transaction);
+            log.debug("Added transaction {}", transaction);
+            asyncResponse.resume(Response.ok(transaction).build());
+            return;
+        }
+
+        resumeWhenProcessed(asyncResponse, await, transaction, transactionService.submit(transaction));
+        log.debug("Added transaction {}", transaction);
+    }
+
+    private static void resumeWhenProcessed(AsyncResponse asyncResponse, long await, Transaction transaction,
+            CompletableFuture<Transaction> processed) {
+        asyncResponse.setTimeout(await, TimeUnit.MILLISECONDS);
+        asyncResponse.setTimeoutHandler(timedOut ->
+                timedOut.resume(Response.status(Response.Status.ACCEPTED).entity(transaction).build()));
+        processed.whenComplete((done, e) -> {
+            if (e != null) {
+                asyncResponse.resume(e);
+            } else {
+                asyncResponse.resume(Response.ok(done).build());
+            }
+        });
+    }
+
+    private static boolean isSame(Transaction transaction, TransactionType type, Long sourceAccountId,
+            Long destinationAccountId, BigDecimal amount) {
+        return transaction.getType() == type
+                && Objects.equals(transaction.getSourceAccountId(), sourceAccountId)
+                && Objects.equals(transaction.getDestinationAccountId(), destinationAccountId)
+                && amount != null && transaction.getAmount().compareTo(amount) == 0;
+    }
+
+    private Transaction createDeposit(Long accountId, BigDecimal amount) {
         if (accountId == null || amount == null) {
             log.info("Invalid query params: accountId {}, amount {}", accountId, amount);
-            return Response.status(Response.Status.BAD_REQUEST).build();
+            return null;
         }
         Account account = accountService.find(accountId);
         if (account == null) {
             log.info("Invalid accountId {}", accountId);
-            return Response.status(Response.Status.BAD_REQUEST).build();
+            return null;
         }
-        if (BigDecimal.ZERO.compareTo(amount) >= 0) {
+        Long minorAmount = toMinorUnits(amount);
+        if (minorAmount == null || minorAmount <= 0) {
             log.info("Invalid amount {}", amount);
-            return Response.status(Response.Status.BAD_REQUEST).build();
+            return null;
         }
-
-        Transaction transaction = transactionService.deposit(account, amount);
-        log.info("Added transaction {}", transaction);
-        return Response.ok(transaction).build();
+        return transactionService.createDeposit(account, minorAmount);
     }
 
-    @PUT
-    @Path("/withdraw")
-    public Response withdraw(@QueryParam("accountId") Long accountId, @QueryParam("amount") BigDecimal amount) {
+    private Transaction createWithdraw(Long accountId, BigDecimal amount) {
         if (accountId == null || amount == null) {
             log.info("Invalid query params: accountId {}, amount {}", accountId, amount);
-            return Response.status(Response.Status.BAD_REQUEST).build();
+            return null;
         }
         Account account = accountService.find(accountId);
         if (account == null) {
             log.info("Invalid accountId {}", accountId);
-            return Response.status(Response.Status.BAD_REQUEST).build();
+            return null;
         }
-        if (BigDecimal.ZERO.compareTo(amount) >= 0 || account.getBalance().compareTo(amount) < 0) {
+        Long minorAmount = toMinorUnits(amount);
+        if (minorAmount == null || minorAmount <= 0 || account.getBalanceMinor() < minorAmount) {
             log.info("Invalid amount {}", amount);
-            return Response.status(Response.Status.BAD_REQUEST).build();
+            return null;
         }
-
-        Transaction transaction = transactionService.withdraw(account, amount);
-        log.info("Added transaction {}", transaction);
-        return Response.ok(transaction).build();
+        return transactionService.createWithdraw(account, minorAmount);
     }
 
-    @PUT
-    @Path("/transfer")
-    public Response transfer(@QueryParam("sourceAccountId") Long sourceAccountId,
-            @QueryParam("destinationAccountId") Long destinationAccountId,
-            @QueryParam("amount") BigDecimal amount) {
+    private Transaction createTransfer(Long sourceAccountId, Long destinationAccountId, BigDecimal amount) {
         if (sourceAccountId == null || destinationAccountId == null || amount == null
                 || sourceAccountId.equals(destinationAccountId)) {
             log.info("Invalid query params: sourceAccountId {}, destinationAccountId {}, amount {}",
                     sourceAccountId, destinationAccountId, amount);
-            return Response.status(Response.Status.BAD_REQUEST).build();
+            return null;
         }
         Account sourceAccount = accountService.find(sourceAccountId);
         if (sourceAccount == null) {
             log.info("Invalid sourceAccountId {}", sourceAccountId);
-            return Response.status(Response.Status.BAD_REQUEST).build();
+            return null;
         }
         Account destinationAccount = accountService.find(destinationAccountId);
         if (destinationAccount == null) {
             log.info("Invalid destinationAccountId {}", destinationAccountId);
-            return Response.status(Response.Status.BAD_REQUEST).build();
+            return null;
         }
-        if (BigDecimal.ZERO.compareTo(amount) >= 0 || sourceAccount.getBalance().compareTo(amount) < 0) {
+        Long minorAmount = toMinorUnits(amount);
+        if (minorAmount == null || minorAmount <= 0 || sourceAccount.getBalanceMinor() < minorAmount) {
             log.info("Invalid amount {}", amount);
-            return Response.status(Response.Status.BAD_REQUEST).build();
+            return null;
         }
+        return transactionService.createTransfer(sourceAccount, destinationAccount, minorAmount);
+    }
 
-        Transaction transaction = transactionService.transfer(sourceAccount, destinationAccount, amount);
-        log.info("Added transaction {}", transaction);
-        return Response.ok(transaction).build();
+    /**
+     * Accepts a JSON array or newline delimited JSON objects (see {@link TransactionRequest}).
+     * The entries are validated one by one while the body is read, the accepted ones are saved by chunks of
+     * {@link #BATCH_CHUNK_SIZE} entries. The response has a line with {@link BatchItemResult} per entry, the lines
+     * of a chunk are sent once its transactions are saved, so neither the body nor the response is held in memory.
+     * With the queue of pending transactions full the batch is TOO_MANY_REQUESTS, the entries over the rate limits
+     * are rejected one by one.
+     */
+    @POST
+    @Path("/batch")
+    @Consumes({MediaType.APPLICATION_JSON, APPLICATION_NDJSON})
+    @Produces(APPLICATION_NDJSON)
+    public Response batch(InputStream body) {
+        long retryAfter = admissionControl.checkQueueDepth();
+        if (retryAfter != AdmissionControl.ADMITTED) {
+            log.info("Batch is not admitted, retry after {} s", retryAfter);
+            return tooManyRequests(retryAfter);
+        }
+        String client = getClient();
+        StreamingOutput output = (OutputStream stream) -> {
+            List<BatchItemResult> results = new ArrayList<>(BATCH_CHUNK_SIZE);
+            List<Transaction> transactions = new ArrayList<>(BATCH_CHUNK_SIZE);
+            int entries = 0;
+            int accepted = 0;
+            try (MappingIterator<TransactionRequest> requests = REQUEST_READER.readValues(body)) {
+                boolean more = true;
+                while (more) {
+                    try {
+                        more = readChunk(requests, entries, client, results, transactions);
+                    } finally {
+                        // The created transactions have taken the ids of their accounts, so they must be saved
+                        // in any case
+                        transactionService.saveAll(transactions);
+                    }
+                    for (BatchItemResult result : results) {
+                        RESULT_WRITER.writeValue(stream, result);
+                        stream.write(LINE_SEPARATOR);
+                    }
+                    stream.flush();
+                    entries += results.size();
+                    accepted += transactions.size();
+                    results.clear();
+                    transactions.clear();
+                }
+            } catch (JsonProcessingException e) {
+                log.info("Unable to read the batch: {}", e.getOriginalMessage());
+                RESULT_WRITER.writeValue(stream, BatchItemResult.rejected(entries, "Malformed batch"));
+                stream.write(LINE_SEPARATOR);
+            }
+            log.info("Added {} transactions out of {} batch entries", accepted, entries);
+        };
+        return Response.ok(output).build();
+    }
+
+    /**
+     * Reads the entries of the batch until the chunk is full.
+     *
+     * @param offset index of the first entry of the chunk
+     * @return false if the batch is read to its end or is malformed
+     */
+    private boolean readChunk(MappingIterator<TransactionRequest> requests, int offset, String client,
+            List<BatchItemResult> results, List<Transaction> transactions) {
+        try {
+            while (results.size() < BATCH_CHUNK_SIZE) {
+                if (!requests.hasNextValue()) {
+                    return false;
+                }
+                int index = offset + results.size();
+                try {
+                    results.add(submit(index, requests.nextValue(), client, transactions));
+                } catch (JsonMappingException e) {
+                    log.info("Invalid batch entry {}: {}", index, e.getOriginalMessage());
+                    results.add(BatchItemResult.rejected(index, "Invalid entry"));
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            log.info("Unable to read the batch after entry {}: {}", offset + results.size(), e.getMessage());
+            results.add(BatchItemResult.rejected(offset + results.size(), "Malformed batch"));
+            return false;
+        }
+    }
+
+    /**
+     * Validates an entry and creates its transaction, the entry takes its admission tokens only once it is valid.
+     */
+    private BatchItemResult submit(int index, TransactionRequest request, String client,
+            List<Transaction> transactions) {
+        if (request.getType() == null || request.getSourceAccountId() == null || request.getAmount() == null) {
+            return BatchItemResult.rejected(index, "Missed params");
+        }
+        Account sourceAccount = accountService.find(request.getSourceAccountId());
+        if (sourceAccount == null) {
+            return BatchItemResult.rejected(index, "Invalid sourceAccountId");
+        }
+        Long amount = toMinorUnits(request.getAmount());
+        if (amount == null || amount <= 0) {
+            return BatchItemResult.rejected(index, "Invalid amount");
+        }
+
+        Account destinationAccount = null;
+        switch (request.getType()) {
+            case DEPOSIT:
+                break;
+            case WITHDRAW:
+                if (sourceAccount.getBalanceMinor() < amount) {
+                    return BatchItemResult.rejected(index, "Invalid amount");
+                }
+                break;
+            case TRANSFER:
+                if (request.getDestinationAccountId() == null
+                        || request.getDestinationAccountId().equals(request.getSourceAccountId())) {
+                    return BatchItemResult.rejected(index, "Invalid destinationAccountId");
+                }
+                destinationAccount = accountService.find(request.getDestinationAccountId());
+                if (destinationAccount == null) {
+                    return BatchItemResult.rejected(index, "Invalid destinationAccountId");
+                }
+                if (sourceAccount.getBalanceMinor() < amount) {
+                    return BatchItemResult.rejected(index, "Invalid amount");
+                }
+                break;
+            default:
+                return BatchItemResult.rejected(index, "Invalid type");
+        }
+        if (admissionControl.admit(client, request.getSourceAccountId()) != AdmissionControl.ADMITTED) {
+            return BatchItemResult.rejected(index, "Too many requests");
+        }
+
+        Transaction transaction;
+        if (request.getType() == TransactionType.DEPOSIT) {
+            transaction = transactionService.createDeposit(sourceAccount, amount);
+        } else if (request.getType() == TransactionType.WITHDRAW) {
+            transaction = transactionService.createWithdraw(sourceAccount, amount);
+        } else {
+            transaction = transactionService.createTransfer(sourceAccount, destinationAccount, amount);
+        }
+        transactions.add(transaction);
+        return BatchItemResult.accepted(index, transaction);
+    }
+
+    /**
+     * @return the amount in minor units or null, if it has too many fraction digits or does not fit into long
+     */
+    private static Long toMinorUnits(BigDecimal amount) {
+        try {
+            return MoneyUtils.toMinorUnits(amount);
+        } catch (ArithmeticException e) {
+            return null;
+        }
     }
 
 }
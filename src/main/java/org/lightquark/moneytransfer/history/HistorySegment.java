@@ -0,0 +1,162 @@
+package org.lightquark.moneytransfer.history;
+
+import org.lightquark.moneytransfer.model.Transaction;
+import org.lightquark.moneytransfer.model.TransactionStatus;
+import org.lightquark.moneytransfer.model.TransactionType;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Fixed count of history records. A segment is filled in a plain buffer, then it is sealed: the records are
+ * compressed by blocks, so a read decompresses only the block of the record, and the buffer is dropped.
+ * <p>
+ * Record layout:
+ * <pre>
+ *  0 long  transaction id
+ *  8 long  source account id
+ * 16 long  destination account id, 0 if none
+ * 24 long  amount in minor units
+ * 32 byte  transaction type
+ * 33 byte  transaction status
+ * </pre>
+ */
+class HistorySegment {
+
+    static final int RECORD_SIZE = 40;
+
+    private static final TransactionType[] TYPES = TransactionType.values();
+    private static final TransactionStatus[] STATUSES = TransactionStatus.values();
+
+    private final int blockRecords;
+    // Every record is written by the thread which got its position, null once the segment is sealed
+    private volatile ByteBuffer records;
+    // Count of written records, the write of the last one sees all the others
+    private final AtomicInteger written = new AtomicInteger();
+    // Set before the records are dropped
+    private volatile Sealed sealed;
+
+    HistorySegment(int capacity, int blockRecords) {
+        this.blockRecords = blockRecords;
+        this.records = ByteBuffer.allocate(capacity * RECORD_SIZE);
+    }
+
+    /**
+     * @return true if the segment is full after the write, so it may be sealed
+     */
+    boolean write(int index, Transaction transaction) {
+        ByteBuffer buffer = records;
+        int offset = index * RECORD_SIZE;
+        Long destination = transaction.getDestinationAccountId();
+        buffer.putLong(offset, transaction.getId());
+        buffer.putLong(offset + 8, transaction.getSourceAccountId());
+        buffer.putLong(offset + 16, destination == null ? 0 : destination);
+        buffer.putLong(offset + 24, transaction.getAmountMinor());
+        buffer.put(offset + 32, (byte) transaction.getType().ordinal());
+        buffer.put(offset + 33, (byte) transaction.getStatus().ordinal());
+        return written.incrementAndGet() * RECORD_SIZE == buffer.capacity();
+    }
+
+    /**
+     * Compresses the full segment, the records stay readable during it.
+     */
+    void seal() {
+        byte[] raw = records.array();
+        int blockSize = blockRecords * RECORD_SIZE;
+        int blockCount = (raw.length + blockSize - 1) / blockSize;
+        int[] offsets = new int[blockCount + 1];
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 4);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        byte[] chunk = new byte[blockSize];
+        try {
+            for (int block = 0; block < blockCount; block++) {
+                offsets[block] = out.size();
+                deflater.reset();
+                deflater.setInput(raw, block * blockSize, Math.min(blockSize, raw.length - block * blockSize));
+                deflater.finish();
+                while (!deflater.finished()) {
+                    out.write(chunk, 0, deflater.deflate(chunk));
+                }
+            }
+            offsets[blockCount] = out.size();
+        } finally {
+            deflater.end();
+        }
+        sealed = new Sealed(out.toByteArray(), offsets);
+        records = null;
+    }
+
+    boolean isSealed() {
+        return sealed != null;
+    }
+
+    /**
+     * @param cache block decompressed by the previous read of the same reader
+     */
+    Transaction read(int index, BlockCache cache) {
+        ByteBuffer buffer = records;
+        int offset;
+        if (buffer != null) {
+            offset = index * RECORD_SIZE;
+        } else {
+            int block = index / blockRecords;
+            buffer = cache.get(this, block);
+            offset = (index - block * blockRecords) * RECORD_SIZE;
+        }
+        long destination = buffer.getLong(offset + 16);
+        return new Transaction(buffer.getLong(offset), TYPES[buffer.get(offset + 32)], STATUSES[buffer.get(offset + 33)],
+                buffer.getLong(offset + 8), destination == 0 ? null : destination, buffer.getLong(offset + 24));
+    }
+
+    private static final class Sealed {
+        private final byte[] data;
+        // Start of every compressed block in the data, the last one is the end of the data
+        private final int[] offsets;
+
+        private Sealed(byte[] data, int[] offsets) {
+            this.data = data;
+            this.offsets = offsets;
+        }
+    }
+
+    /**
+     * Keeps the last decompressed block of a reader. Not thread-safe, a reader uses its own cache.
+     */
+    static final class BlockCache {
+        private final Inflater inflater = new Inflater();
+        private HistorySegment segment;
+        private int block;
+        private ByteBuffer buffer;
+
+        private ByteBuffer get(HistorySegment target, int targetBlock) {
+            if (target == segment && targetBlock == block) {
+                return buffer;
+            }
+            Sealed current = target.sealed;
+            byte[] raw = new byte[target.blockRecords * RECORD_SIZE];
+            inflater.reset();
+            inflater.setInput(current.data, current.offsets[targetBlock],
+                    current.offsets[targetBlock + 1] - current.offsets[targetBlock]);
+            try {
+                int length = 0;
+                while (length < raw.length && !inflater.finished()) {
+                    length += inflater.inflate(raw, length, raw.length - length);
+                }
+            } catch (DataFormatException e) {
+                throw new IllegalStateException("Corrupted history segment", e);
+            }
+            segment = target;
+            block = targetBlock;
+            buffer = ByteBuffer.wrap(raw);
+            return buffer;
+        }
+
+        void close() {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package org.lightquark.moneytransfer.history;
+
+import lombok.extern.slf4j.Slf4j;
+import org.lightquark.moneytransfer.config.Config;
+import org.lightquark.moneytransfer.model.Transaction;
+import org.lightquark.moneytransfer.model.TransactionPage;
+import org.lightquark.moneytransfer.util.ConcurrentLongHashMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only history of processed transactions.
+ * <p>
+ * The records are kept in segments of fixed size, a full segment is sealed (compressed) in the background.
+ * Every account has an index of the positions of its records, a transfer is indexed for both accounts.
+ * A page is found by the position in the index of the account, so a query reads only the records of the page
+ * whatever the size of the history is.
+ * <p>
+ * Appends take no common lock: a record gets its position from a counter, so the workers of the partitions write
+ * their records side by side. The index of an account is locked by the appends of its records only, i.e. by the
+ * workers of both accounts of a transfer. Reads take no locks.
+ * <p>
+ * Nothing is evicted, so the history is disabled by default. A transaction takes a record of
+ * {@link HistorySegment#RECORD_SIZE} bytes until its segment is sealed, and a position of 8 bytes in the index of
+ * each of its accounts.
+ */
+@Slf4j
+public class TransactionHistory {
+
+    private static final String ENABLED_PROPERTY = "history_enabled";
+    private static final String SEGMENT_SIZE_PROPERTY = "history_segment_records";
+    private static final int DEFAULT_SEGMENT_SIZE = 65536;
+    private static final String BLOCK_SIZE_PROPERTY = "history_block_records";
+    private static final int DEFAULT_BLOCK_SIZE = 256;
+
+    private static final TransactionHistory INSTANCE = create();
+
+    public static TransactionHistory getInstance() {
+        return INSTANCE;
+    }
+
+    private static TransactionHistory create() {
+        if (!Boolean.parseBoolean(Config.getString(ENABLED_PROPERTY, "false"))) {
+            return new TransactionHistory();
+        }
+        return new TransactionHistory(Config.getInteger(SEGMENT_SIZE_PROPERTY, DEFAULT_SEGMENT_SIZE),
+                Config.getInteger(BLOCK_SIZE_PROPERTY, DEFAULT_BLOCK_SIZE), Executors.newSingleThreadExecutor());
+    }
+
+    private final boolean enabled;
+    private final int segmentShift;
+    private final int blockSize;
+    private final Executor sealer;
+    private final ConcurrentLongHashMap<AccountIndex> indexes = new ConcurrentLongHashMap<>();
+    // Replaced by a copy on every new segment, so a reader sees every segment of the array set
+    private volatile HistorySegment[] segments = new HistorySegment[16];
+    // Position of the next record
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Disabled history, nothing is kept.
+     */
+    private TransactionHistory() {
+        this.enabled = false;
+        this.segmentShift = 0;
+        this.blockSize = 0;
+        this.sealer = null;
+    }
+
+    /**
+     * @param segmentSize count of records in a segment, a power of two
+     * @param blockSize count of records compressed together, a read decompresses the whole block
+     */
+    public TransactionHistory(int segmentSize, int blockSize, Executor sealer) {
+        if (Integer.bitCount(segmentSize) != 1 || blockSize <= 0) {
+            throw new IllegalArgumentException("Invalid history segment " + segmentSize + " or block " + blockSize);
+        }
+        log.info("Transaction history, segment's size {}, block's size {}", segmentSize, blockSize);
+        this.enabled = true;
+        this.segmentShift = Integer.numberOfTrailingZeros(segmentSize);
+        this.blockSize = blockSize;
+        this.sealer = sealer;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Appends the processed transaction, may be called by several threads at once.
+     */
+    public void append(Transaction transaction) {
+        if (!enabled) {
+            return;
+        }
+        long position = tail.getAndIncrement();
+        HistorySegment segment = segmentOf((int) (position >>> segmentShift));
+        boolean full = segment.write((int) (position & ((1 << segmentShift) - 1)), transaction);
+
+        // The record is written before it is indexed, so a reader finds only written records
+        Long source = transaction.getSourceAccountId();
+        Long destination = transaction.getDestinationAccountId();
+        if (source != null) {
+            indexOf(source).add(position);
+        }
+        if (destination != null && !destination.equals(source)) {
+            indexOf(destination).add(position);
+        }
+
+        if (full) {
+            sealer.execute(segment::seal);
+        }
+    }
+
+    private HistorySegment segmentOf(int segmentIndex) {
+        HistorySegment[] current = segments;
+        if (segmentIndex < current.length && current[segmentIndex] != null) {
+            return current[segmentIndex];
+        }
+        return addSegment(segmentIndex);
+    }
+
+    /**
+     * Locked once per segment by the appends which reach it first.
+     */
+    private synchronized HistorySegment addSegment(int segmentIndex) {
+        HistorySegment[] current = segments;
+        if (segmentIndex < current.length && current[segmentIndex] != null) {
+            return current[segmentIndex];
+        }
+        int length = current.length;
+        while (length <= segmentIndex) {
+            length *= 2;
+        }
+        HistorySegment[] next = Arrays.copyOf(current, length);
+        next[segmentIndex] = new HistorySegment(1 << segmentShift, blockSize);
+        segments = next;
+        return next[segmentIndex];
+    }
+
+    private AccountIndex indexOf(long accountId) {
+        AccountIndex index = indexes.get(accountId);
+        if (index == null) {
+            index = new AccountIndex();
+            AccountIndex current = indexes.putIfAbsent(accountId, index);
+            if (current != null) {
+                index = current;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @param from position in the history of the account to start from, 0 for the oldest transaction
+     * @return transactions of the account in the order they were processed
+     */
+    public TransactionPage find(long accountId, long from, int limit) {
+        AccountIndex index = enabled ? indexes.get(accountId) : null;
+        long count = index == null ? 0 : index.size;
+        if (from >= count || limit <= 0) {
+            return new TransactionPage(Collections.emptyList(), null);
+        }
+        int pageSize = (int) Math.min(limit, count - from);
+        List<Transaction> transactions = new ArrayList<>(pageSize);
+        HistorySegment[] current = segments;
+        HistorySegment.BlockCache cache = new HistorySegment.BlockCache();
+        try {
+            for (long i = from; i < from + pageSize; i++) {
+                long position = index.get(i);
+                HistorySegment segment = current[(int) (position >>> segmentShift)];
+                transactions.add(segment.read((int) (position & ((1 << segmentShift) - 1)), cache));
+            }
+        } finally {
+            cache.close();
+        }
+        long next = from + pageSize;
+        return new TransactionPage(transactions, next < count ? next : null);
+    }
+
+    /**
+     * Positions of the records of an account. The positions are kept in chunks, so the index grows without copying;
+     * the first chunk grows from a small one, most accounts have few transactions.
+     * <p>
+     * Written under the lock of the index. A reader reads the size first, the positions below it are published.
+     */
+    private static final class AccountIndex {
+        private static final int CHUNK_SHIFT = 10;
+        private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+        private static final int FIRST_CHUNK_SIZE = 4;
+
+        private volatile long[][] chunks = {new long[FIRST_CHUNK_SIZE]};
+        private volatile long size;
+
+        private synchronized void add(long position) {
+            long[][] current = chunks;
+            int chunk = (int) (size >>> CHUNK_SHIFT);
+            int offset = (int) (size & (CHUNK_SIZE - 1));
+            if (chunk == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+                chunks = current;
+            }
+            if (current[chunk] == null) {
+                current[chunk] = new long[CHUNK_SIZE];
+            } else if (offset == current[chunk].length) {
+                current[chunk] = Arrays.copyOf(current[chunk], Math.min(offset * 2, CHUNK_SIZE));
+            }
+            current[chunk][offset] = position;
+            size = size + 1;
+        }
+
+        private long get(long i) {
+            return chunks[(int) (i >>> CHUNK_SHIFT)][(int) (i & (CHUNK_SIZE - 1))];
+        }
+    }
+}
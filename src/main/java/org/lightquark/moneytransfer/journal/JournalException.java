@@ -0,0 +1,10 @@
+package org.lightquark.moneytransfer.journal;
+
+public class JournalException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public JournalException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,25 @@
+package org.lightquark.moneytransfer.journal;
+
+import org.lightquark.moneytransfer.model.Transaction;
+
+/**
+ * Receives the records of the journal in the order they were written.
+ */
+@FunctionalInterface
+public interface JournalListener {
+
+    void onTransaction(Transaction transaction);
+
+    /**
+     * Receives a processed transaction with its final status, written after the transaction itself unless the
+     * journal failed writing the transaction.
+     */
+    default void onOutcome(Transaction transaction) {
+    }
+
+    default void onAccountCreated(long accountId, boolean hot) {
+    }
+
+    default void onAccountDeleted(long accountId) {
+    }
+}
@@ -0,0 +1,55 @@
+package org.lightquark.moneytransfer.journal;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Reads journal records until the end of the file or the first torn or corrupted record.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class JournalReader {
+
+    private static final int READ_BUFFER_SIZE = JournalRecord.SIZE * 4096;
+
+    /**
+     * @return offset where the valid records end
+     */
+    public static long read(Path file, long offset, JournalListener listener) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return read(channel, offset, listener);
+        }
+    }
+
+    static long validLength(FileChannel channel) throws IOException {
+        return read(channel, 0, transaction -> { });
+    }
+
+    private static long read(FileChannel channel, long offset, JournalListener listener) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+        CRC32 crc = new CRC32();
+        long position = offset;
+        while (true) {
+            buffer.clear();
+            int read = 0;
+            while (buffer.hasRemaining() && read >= 0) {
+                read = channel.read(buffer, position + buffer.position());
+            }
+            buffer.flip();
+            boolean end = buffer.remaining() < READ_BUFFER_SIZE;
+            while (JournalRecord.isValid(buffer, crc)) {
+                JournalRecord.read(buffer, listener);
+            }
+            position += buffer.position();
+            if (end || buffer.hasRemaining()) {
+                return position;
+            }
+        }
+    }
+}
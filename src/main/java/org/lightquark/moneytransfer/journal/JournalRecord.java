@@ -0,0 +1,128 @@
+package org.lightquark.moneytransfer.journal;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.lightquark.moneytransfer.model.Transaction;
+import org.lightquark.moneytransfer.model.TransactionStatus;
+import org.lightquark.moneytransfer.model.TransactionType;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Fixed width binary layout of a journal record:
+ * <pre>
+ *  0 int   CRC32 of the bytes 4..47
+ *  4 byte  record kind
+ *  5 byte  transaction type
+ *  6 byte  status of a processed transaction, 0 in other records
+ *  8 long  transaction id
+ * 16 long  source account id, or the id of the created or deleted account
+ * 24 long  destination account id, 0 if none
+ * 32 long  amount in minor units
+ * 40 long  reserved
+ * </pre>
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+final class JournalRecord {
+
+    static final int SIZE = 48;
+    static final byte KIND_TRANSACTION = 1;
+    static final byte KIND_ACCOUNT_CREATED = 2;
+    static final byte KIND_ACCOUNT_DELETED = 3;
+    static final byte KIND_HOT_ACCOUNT_CREATED = 4;
+    // Transaction with the status it got from the processing
+    static final byte KIND_OUTCOME = 5;
+
+    private static final int CHECKED_BYTES_OFFSET = 4;
+    private static final int KIND_OFFSET = 4;
+    private static final int STATUS_OFFSET = 6;
+    private static final TransactionType[] TYPES = TransactionType.values();
+    private static final TransactionStatus[] STATUSES = TransactionStatus.values();
+
+    /**
+     * @param kind {@link #KIND_TRANSACTION} or {@link #KIND_OUTCOME}
+     */
+    static void write(ByteBuffer buffer, byte kind, Transaction transaction, CRC32 crc) {
+        int start = buffer.position();
+        buffer.putInt(0);
+        buffer.put(kind);
+        buffer.put((byte) transaction.getType().ordinal());
+        buffer.put(kind == KIND_OUTCOME ? (byte) transaction.getStatus().ordinal() : 0);
+        buffer.put((byte) 0);
+        buffer.putLong(transaction.getId());
+        buffer.putLong(transaction.getSourceAccountId());
+        Long destination = transaction.getDestinationAccountId();
+        buffer.putLong(destination == null ? 0 : destination);
+        buffer.putLong(transaction.getAmountMinor());
+        buffer.putLong(0);
+        buffer.putInt(start, checksum(buffer, start, crc));
+    }
+
+    static void writeAccountEvent(ByteBuffer buffer, byte kind, long accountId, CRC32 crc) {
+        int start = buffer.position();
+        buffer.putInt(0);
+        buffer.put(kind);
+        buffer.put((byte) 0);
+        buffer.putShort((short) 0);
+        buffer.putLong(0);
+        buffer.putLong(accountId);
+        buffer.putLong(0);
+        buffer.putLong(0);
+        buffer.putLong(0);
+        buffer.putInt(start, checksum(buffer, start, crc));
+    }
+
+    /**
+     * @return true if the record at the buffer position is complete and its checksum matches
+     */
+    static boolean isValid(ByteBuffer buffer, CRC32 crc) {
+        int start = buffer.position();
+        if (buffer.remaining() < SIZE) {
+            return false;
+        }
+        byte kind = buffer.get(start + KIND_OFFSET);
+        return kind >= KIND_TRANSACTION && kind <= KIND_OUTCOME
+                && buffer.getInt(start) == checksum(buffer, start, crc);
+    }
+
+    /**
+     * Passes the record at the buffer position to the listener and moves past it,
+     * the record must be checked by {@link #isValid(ByteBuffer, CRC32)} first.
+     */
+    static void read(ByteBuffer buffer, JournalListener listener) {
+        int start = buffer.position();
+        buffer.position(start + SIZE);
+        switch (buffer.get(start + KIND_OFFSET)) {
+            case KIND_ACCOUNT_CREATED:
+                listener.onAccountCreated(buffer.getLong(start + 16), false);
+                break;
+            case KIND_HOT_ACCOUNT_CREATED:
+                listener.onAccountCreated(buffer.getLong(start + 16), true);
+                break;
+            case KIND_ACCOUNT_DELETED:
+                listener.onAccountDeleted(buffer.getLong(start + 16));
+                break;
+            case KIND_OUTCOME:
+                listener.onOutcome(readTransaction(buffer, start, STATUSES[buffer.get(start + STATUS_OFFSET)]));
+                break;
+            default:
+                listener.onTransaction(readTransaction(buffer, start, TransactionStatus.UNPROCESSED));
+        }
+    }
+
+    private static Transaction readTransaction(ByteBuffer buffer, int start, TransactionStatus status) {
+        TransactionType type = TYPES[buffer.get(start + 5)];
+        long destination = buffer.getLong(start + 24);
+        return new Transaction(buffer.getLong(start + 8), type, status,
+                buffer.getLong(start + 16), destination == 0 ? null : destination, buffer.getLong(start + 32));
+    }
+
+    private static int checksum(ByteBuffer buffer, int start, CRC32 crc) {
+        ByteBuffer record = buffer.duplicate();
+        record.limit(start + SIZE).position(start + CHECKED_BYTES_OFFSET);
+        crc.reset();
+        crc.update(record);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,139 @@
+package org.lightquark.moneytransfer.journal;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Snapshot files of the account state. A snapshot holds the state right after the journal records before its
+ * journal offset were applied, so a recovery loads it and replays the journal from that offset.
+ * <p>
+ * A snapshot is written to a temporary file which is renamed once complete, so a crash never leaves a partial
+ * snapshot. Only the latest {@link #KEPT_SNAPSHOTS} snapshots are kept.
+ */
+@Slf4j
+public class SnapshotStore {
+
+    // Count of the values of an account: id, balance in minor units, last transaction id and flags
+    public static final int ACCOUNT_FIELDS = 4;
+    public static final long FLAG_HOT = 1L;
+
+    private static final long MAGIC = 0x534E415053484F54L;
+    private static final int HEADER_SIZE = 32;
+    private static final int RECORD_SIZE = ACCOUNT_FIELDS * Long.BYTES;
+    private static final int KEPT_SNAPSHOTS = 2;
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".dat";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    private static final int WRITE_BUFFER_SIZE = RECORD_SIZE * 4096;
+
+    private final Path directory;
+
+    public SnapshotStore(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @param accounts id, balance in minor units, last transaction id and flags of every account, one after another
+     */
+    public void write(long journalOffset, long[] accounts) throws IOException {
+        Files.createDirectories(directory);
+        Path target = directory.resolve(String.format("%s%020d%s", PREFIX, journalOffset, SUFFIX));
+        Path temporary = directory.resolve(target.getFileName() + TEMPORARY_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+            buffer.putLong(MAGIC).putInt(RECORD_SIZE).putInt(0).putLong(journalOffset)
+                    .putLong(accounts.length / ACCOUNT_FIELDS);
+            for (long value : accounts) {
+                if (!buffer.hasRemaining()) {
+                    writeFully(channel, buffer);
+                }
+                buffer.putLong(value);
+            }
+            writeFully(channel, buffer);
+            channel.force(true);
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        log.info("Snapshot {} of {} accounts is written", target, accounts.length / ACCOUNT_FIELDS);
+
+        List<Path> snapshots = list();
+        for (int i = 0; i < snapshots.size() - KEPT_SNAPSHOTS; i++) {
+            Files.deleteIfExists(snapshots.get(i));
+        }
+    }
+
+    /**
+     * @return the latest snapshot or null if there are none
+     */
+    public Snapshot readLatest() throws IOException {
+        List<Path> snapshots = list();
+        if (snapshots.isEmpty()) {
+            return null;
+        }
+        Path file = snapshots.get(snapshots.size() - 1);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Reads the whole file
+            }
+            buffer.flip();
+            if (buffer.remaining() < HEADER_SIZE || buffer.getLong() != MAGIC || buffer.getInt() != RECORD_SIZE) {
+                throw new IOException("Unsupported format of snapshot " + file);
+            }
+            buffer.getInt();
+            long journalOffset = buffer.getLong();
+            long count = buffer.getLong();
+            if (buffer.remaining() != count * RECORD_SIZE) {
+                throw new IOException("Snapshot " + file + " is incomplete");
+            }
+            long[] accounts = new long[(int) count * ACCOUNT_FIELDS];
+            buffer.asLongBuffer().get(accounts);
+            return new Snapshot(journalOffset, accounts);
+        }
+    }
+
+    private List<Path> list() throws IOException {
+        List<Path> snapshots = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return snapshots;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            stream.forEach(snapshots::add);
+        }
+        // The journal offsets are zero padded, so the names sort in the order of the offsets
+        Collections.sort(snapshots);
+        return snapshots;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Getter
+    public static class Snapshot {
+        private final long journalOffset;
+        // id, balance in minor units, last transaction id and flags of every account, one after another
+        private final long[] accounts;
+
+        private Snapshot(long journalOffset, long[] accounts) {
+            this.journalOffset = journalOffset;
+            this.accounts = accounts;
+        }
+    }
+}
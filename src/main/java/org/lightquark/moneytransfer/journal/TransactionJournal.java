@@ -0,0 +1,395 @@
+package org.lightquark.moneytransfer.journal;
+
+import lombok.extern.slf4j.Slf4j;
+import org.lightquark.moneytransfer.config.Config;
+import org.lightquark.moneytransfer.model.JournalStats;
+import org.lightquark.moneytransfer.model.Transaction;
+import org.lightquark.moneytransfer.model.TransactionStatus;
+import org.lightquark.moneytransfer.repository.TransactionRepository;
+import org.lightquark.moneytransfer.util.ThreadUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead journal of accepted transactions.
+ * Appends from all request threads are collected by a single flusher thread, which writes them with one
+ * {@link FileChannel#force(boolean)} per batch (group commit). A batch is flushed once it reaches the max size or
+ * once its first append has waited for the max delay. Only durable transactions are passed on for processing.
+ * <p>
+ * Once a transaction passed on is processed, its outcome is appended too, without waiting for it. So the replay
+ * applies the statuses the transactions got instead of deciding them again, and the outcome of a transaction
+ * whose write failed keeps its id in the journal.
+ */
+@Slf4j
+public class TransactionJournal {
+
+    private static final String ENABLED_PROPERTY = "journal_enabled";
+    private static final String FILE_PROPERTY = "journal_file";
+    private static final String DEFAULT_FILE = "transaction-journal.dat";
+    private static final String MAX_BATCH_SIZE_PROPERTY = "journal_max_batch_size";
+    private static final int DEFAULT_MAX_BATCH_SIZE = 1024;
+    private static final String MAX_DELAY_PROPERTY = "journal_max_delay_micros";
+    private static final int DEFAULT_MAX_DELAY = 200;
+
+    private static final TransactionJournal INSTANCE = create();
+
+    public static TransactionJournal getInstance() {
+        return INSTANCE;
+    }
+
+    private static TransactionJournal create() {
+        if (!Boolean.parseBoolean(Config.getString(ENABLED_PROPERTY, "false"))) {
+            return new TransactionJournal();
+        }
+        TransactionRepository transactionRepository = TransactionRepository.getInstance();
+        TransactionJournal journal = new TransactionJournal(Paths.get(Config.getString(FILE_PROPERTY, DEFAULT_FILE)),
+                Config.getInteger(MAX_BATCH_SIZE_PROPERTY, DEFAULT_MAX_BATCH_SIZE),
+                TimeUnit.MICROSECONDS.toNanos(Config.getInteger(MAX_DELAY_PROPERTY, DEFAULT_MAX_DELAY)),
+                transactionRepository::saveAll);
+        journal.start();
+        return journal;
+    }
+
+    private final Path file;
+    private final FileChannel channel;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final Consumer<Collection<Transaction>> onDurable;
+    private final BlockingQueue<Append> appends = new LinkedBlockingQueue<>();
+    private final Consumer<Transaction> outcomeAppender = this::appendOutcome;
+    private final CRC32 crc = new CRC32();
+    // Held by the flusher while a batch is written and passed on, see pause
+    private final Lock flushLock = new ReentrantLock();
+    // Offset where the durable records end, the next batch is written there
+    private long position;
+    // Set once a failed write could not be cut off, used by the flusher only
+    private JournalException broken;
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(JournalRecord.SIZE * 64);
+
+    private final LongAdder fsyncCount = new LongAdder();
+    private final LongAdder recordCount = new LongAdder();
+    private final LongAdder fsyncNanos = new LongAdder();
+    private final LongAccumulator maxBatch = new LongAccumulator(Math::max, 0);
+    private final LongAccumulator maxFsyncNanos = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Disabled journal, transactions are saved for processing without it.
+     */
+    private TransactionJournal() {
+        this.file = null;
+        this.channel = null;
+        this.maxBatchSize = 0;
+        this.maxDelayNanos = 0;
+        this.onDurable = null;
+    }
+
+    /**
+     * Opens the journal for appending, a torn record at the end left by a crash is cut off.
+     *
+     * @param onDurable receives every batch after it is forced to the disk, in the order of appends
+     */
+    public TransactionJournal(Path file, int maxBatchSize, long maxDelayNanos,
+            Consumer<Collection<Transaction>> onDurable) {
+        this(file, open(file), maxBatchSize, maxDelayNanos, onDurable);
+    }
+
+    /**
+     * @param channel the journal file opened for reading and writing
+     */
+    TransactionJournal(Path file, FileChannel channel, int maxBatchSize, long maxDelayNanos,
+            Consumer<Collection<Transaction>> onDurable) {
+        log.info("Transaction journal {}, max batch size {}, max delay {} ns", file, maxBatchSize, maxDelayNanos);
+        this.file = file;
+        this.channel = channel;
+        try {
+            long end = JournalReader.validLength(channel);
+            channel.truncate(end);
+            channel.position(end);
+            position = end;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed opening journal " + file, e);
+        }
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxDelayNanos = Math.max(0, maxDelayNanos);
+        this.onDurable = onDurable;
+    }
+
+    private static FileChannel open(Path file) {
+        try {
+            return FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed opening journal " + file, e);
+        }
+    }
+
+    public void start() {
+        ThreadUtils.runThread(this::flushLoop);
+    }
+
+    public boolean isEnabled() {
+        return channel != null;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Blocks until the transaction is durable.
+     *
+     * @throws JournalException if the journal failed to write it, the transaction is then passed on as invalid
+     */
+    public void append(Transaction transaction) {
+        appendAll(Collections.singletonList(transaction));
+    }
+
+    /**
+     * Blocks until all the transactions are durable, see {@link #append(Transaction)}.
+     */
+    public void appendAll(Collection<Transaction> transactions) {
+        try {
+            appendAllAsync(transactions).join();
+        } catch (CompletionException e) {
+            throw new JournalException("Failed writing journal", e.getCause());
+        }
+    }
+
+    /**
+     * @return future completed once the transactions are durable and passed on for processing
+     */
+    public CompletableFuture<Void> appendAllAsync(Collection<Transaction> transactions) {
+        if (!isEnabled()) {
+            throw new IllegalStateException("Journal is disabled");
+        }
+        return enqueue(new Append(transactions, JournalRecord.KIND_TRANSACTION, 0));
+    }
+
+    /**
+     * Blocks until the creation of the account is durable.
+     */
+    public void appendAccountCreated(long accountId, boolean hot) {
+        appendAccountEvent(hot ? JournalRecord.KIND_HOT_ACCOUNT_CREATED : JournalRecord.KIND_ACCOUNT_CREATED,
+                accountId);
+    }
+
+    /**
+     * Blocks until the deletion of the account is durable.
+     */
+    public void appendAccountDeleted(long accountId) {
+        appendAccountEvent(JournalRecord.KIND_ACCOUNT_DELETED, accountId);
+    }
+
+    /**
+     * Appends the status of the processed transaction without waiting for it. A failed write of an outcome is
+     * only logged, the transaction is then decided again on replay.
+     */
+    public void appendOutcome(Transaction transaction) {
+        if (!isEnabled()) {
+            throw new IllegalStateException("Journal is disabled");
+        }
+        enqueue(new Append(Collections.singletonList(transaction), JournalRecord.KIND_OUTCOME, 0));
+    }
+
+    private void appendAccountEvent(byte kind, long accountId) {
+        if (!isEnabled()) {
+            throw new IllegalStateException("Journal is disabled");
+        }
+        try {
+            enqueue(new Append(Collections.emptyList(), kind, accountId)).join();
+        } catch (CompletionException e) {
+            throw new JournalException("Failed writing journal", e.getCause());
+        }
+    }
+
+    private CompletableFuture<Void> enqueue(Append append) {
+        appends.add(append);
+        return append.done;
+    }
+
+    /**
+     * Stops passing on new transactions until {@link #resume()} is called by the same thread. Once this method
+     * returns, every transaction written to the journal so far has been passed on.
+     *
+     * @return offset where the journal ends
+     */
+    public long pause() {
+        flushLock.lock();
+        return position;
+    }
+
+    public void resume() {
+        flushLock.unlock();
+    }
+
+    private void flushLoop() {
+        List<Append> batch = new ArrayList<>();
+        try {
+            while (true) {
+                Append first = appends.take();
+                batch.add(first);
+                int records = first.size();
+                long deadline = System.nanoTime() + maxDelayNanos;
+                while (records < maxBatchSize) {
+                    Append next = appends.poll();
+                    if (next == null) {
+                        long left = deadline - System.nanoTime();
+                        next = left > 0 ? appends.poll(left, TimeUnit.NANOSECONDS) : null;
+                        if (next == null) {
+                            break;
+                        }
+                    }
+                    batch.add(next);
+                    records += next.size();
+                }
+                flush(batch, records);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            log.info("Journal flusher is interrupted");
+        }
+    }
+
+    private void flush(List<Append> batch, int records) {
+        flushLock.lock();
+        try {
+            flushLocked(batch, records);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushLocked(List<Append> batch, int records) {
+        List<Transaction> transactions = new ArrayList<>(records);
+        for (Append append : batch) {
+            if (append.kind == JournalRecord.KIND_TRANSACTION) {
+                transactions.addAll(append.transactions);
+            }
+        }
+        Throwable failure = broken;
+        if (failure == null) {
+            try {
+                write(batch, records);
+            } catch (IOException | RuntimeException e) {
+                log.error("Journal write of {} records failed", records, e);
+                failure = e;
+                rollBack(e);
+            }
+        }
+        if (failure != null) {
+            // The ids are already taken, so the transactions still go to the processing to keep the order,
+            // and their invalid outcomes mark the ids as used on replay
+            for (Transaction transaction : transactions) {
+                transaction.setStatus(TransactionStatus.INVALID);
+            }
+        }
+        for (Transaction transaction : transactions) {
+            transaction.whenProcessed(outcomeAppender);
+        }
+        onDurable.accept(transactions);
+        for (Append append : batch) {
+            if (failure == null) {
+                append.done.complete(null);
+            } else {
+                append.done.completeExceptionally(failure);
+            }
+        }
+    }
+
+    private void write(List<Append> batch, int records) throws IOException {
+        int length = records * JournalRecord.SIZE;
+        if (buffer.capacity() < length) {
+            buffer = ByteBuffer.allocateDirect(Integer.highestOneBit(length) << 1);
+        }
+        buffer.clear();
+        for (Append append : batch) {
+            if (append.hasTransactions()) {
+                for (Transaction transaction : append.transactions) {
+                    JournalRecord.write(buffer, append.kind, transaction, crc);
+                }
+            } else {
+                JournalRecord.writeAccountEvent(buffer, append.kind, append.accountId, crc);
+            }
+        }
+        buffer.flip();
+        long start = System.nanoTime();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+        position += length;
+        long elapsed = System.nanoTime() - start;
+        fsyncCount.increment();
+        fsyncNanos.add(elapsed);
+        maxFsyncNanos.accumulate(elapsed);
+        recordCount.add(records);
+        maxBatch.accumulate(records);
+    }
+
+    /**
+     * Cuts off the records of a failed write, some of which may be in the file already, so they are not replayed
+     * as valid on recovery and the next batch is written at the position of the journal. If that fails too, the
+     * journal fails every following append.
+     */
+    private void rollBack(Throwable cause) {
+        try {
+            channel.truncate(position);
+            channel.position(position);
+            channel.force(false);
+        } catch (IOException | RuntimeException e) {
+            log.error("Journal failed cutting off a failed write at {}, every following append fails", position, e);
+            broken = new JournalException("Journal is broken by a failed write", cause);
+        }
+    }
+
+    public JournalStats getStats() {
+        long fsyncs = fsyncCount.sum();
+        long records = recordCount.sum();
+        return new JournalStats(isEnabled(), fsyncs, records,
+                fsyncs == 0 ? 0 : (double) records / fsyncs, maxBatch.get(),
+                fsyncs == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(fsyncNanos.sum() / fsyncs),
+                TimeUnit.NANOSECONDS.toMicros(maxFsyncNanos.get()));
+    }
+
+    private static class Append {
+        private final Collection<Transaction> transactions;
+        private final byte kind;
+        private final long accountId;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private Append(Collection<Transaction> transactions, byte kind, long accountId) {
+            this.transactions = transactions;
+            this.kind = kind;
+            this.accountId = accountId;
+        }
+
+        private int size() {
+            return hasTransactions() ? transactions.size() : 1;
+        }
+
+        private boolean hasTransactions() {
+            return kind == JournalRecord.KIND_TRANSACTION || kind == JournalRecord.KIND_OUTCOME;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package org.lightquark.moneytransfer.json;
+
+import org.lightquark.moneytransfer.model.Account;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public class AccountJsonProvider extends JsonCodecProvider<Account> {
+
+    public AccountJsonProvider() {
+        super(Account.class);
+    }
+
+    @Override
+    protected void write(JsonEncoder encoder, Account account) throws IOException {
+        encoder.writeAccount(account);
+    }
+
+    @Override
+    protected Account read(InputStream in) throws IOException {
+        return JsonDecoder.readAccount(in);
+    }
+}
@@ -0,0 +1,23 @@
+package org.lightquark.moneytransfer.json;
+
+import org.lightquark.moneytransfer.model.AccountPage;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public class AccountPageJsonProvider extends JsonCodecProvider<AccountPage> {
+
+    public AccountPageJsonProvider() {
+        super(AccountPage.class);
+    }
+
+    @Override
+    protected void write(JsonEncoder encoder, AccountPage page) throws IOException {
+        encoder.writeAccountPage(page);
+    }
+
+    @Override
+    protected AccountPage read(InputStream in) throws IOException {
+        return JsonDecoder.readAccountPage(in);
+    }
+}
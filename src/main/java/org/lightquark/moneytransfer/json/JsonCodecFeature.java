@@ -0,0 +1,20 @@
+package org.lightquark.moneytransfer.json;
+
+import javax.ws.rs.core.Feature;
+import javax.ws.rs.core.FeatureContext;
+
+/**
+ * Registers the providers of {@link JsonEncoder} and {@link JsonDecoder}, for the server and the clients.
+ * The entities without a provider of their own are left to the Jackson feature.
+ */
+public class JsonCodecFeature implements Feature {
+
+    @Override
+    public boolean configure(FeatureContext context) {
+        context.register(AccountJsonProvider.class);
+        context.register(TransactionJsonProvider.class);
+        context.register(AccountPageJsonProvider.class);
+        context.register(TransactionPageJsonProvider.class);
+        return true;
+    }
+}
@@ -0,0 +1,64 @@
+package org.lightquark.moneytransfer.json;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.MessageBodyWriter;
+
+/**
+ * Reads and writes an entity with {@link JsonDecoder} and {@link JsonEncoder} in place of the Jackson bean
+ * serialization. Jersey prefers a provider of the entity type to the Jackson one, which takes any object.
+ */
+@Produces(MediaType.APPLICATION_JSON)
+@Consumes(MediaType.APPLICATION_JSON)
+public abstract class JsonCodecProvider<T> implements MessageBodyWriter<T>, MessageBodyReader<T> {
+
+    private final Class<T> type;
+
+    protected JsonCodecProvider(Class<T> type) {
+        this.type = type;
+    }
+
+    protected abstract void write(JsonEncoder encoder, T value) throws IOException;
+
+    protected abstract T read(InputStream in) throws IOException;
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return this.type.isAssignableFrom(type);
+    }
+
+    @Override
+    public void writeTo(T value, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+            MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException {
+        try (JsonEncoder encoder = JsonEncoder.open(entityStream)) {
+            write(encoder, value);
+        }
+    }
+
+    @Override
+    public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return this.type == type;
+    }
+
+    @Override
+    public T readFrom(Class<T> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+            MultivaluedMap<String, String> httpHeaders, InputStream entityStream) throws IOException {
+        try {
+            return read(entityStream);
+        } catch (JsonProcessingException e) {
+            throw new BadRequestException("Invalid " + type.getSimpleName() + ": " + e.getOriginalMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,264 @@
+package org.lightquark.moneytransfer.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadFeature;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.lightquark.moneytransfer.model.Account;
+import org.lightquark.moneytransfer.model.AccountPage;
+import org.lightquark.moneytransfer.model.Transaction;
+import org.lightquark.moneytransfer.model.TransactionPage;
+import org.lightquark.moneytransfer.model.TransactionStatus;
+import org.lightquark.moneytransfer.model.TransactionType;
+import org.lightquark.moneytransfer.util.MoneyUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the JSON written by {@link JsonEncoder} with a streaming parser, the unknown fields are skipped.
+ * The input stream is left open.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class JsonDecoder {
+
+    private static final JsonFactory FACTORY = JsonFactory.builder()
+            .disable(StreamReadFeature.AUTO_CLOSE_SOURCE)
+            .build();
+
+    public static Account readAccount(InputStream in) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(in)) {
+            parser.nextToken();
+            return readAccount(parser);
+        }
+    }
+
+    public static Transaction readTransaction(InputStream in) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(in)) {
+            parser.nextToken();
+            return readTransaction(parser);
+        }
+    }
+
+    public static AccountPage readAccountPage(InputStream in) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(in)) {
+            parser.nextToken();
+            return readAccountPage(parser);
+        }
+    }
+
+    public static TransactionPage readTransactionPage(InputStream in) throws IOException {
+        try (JsonParser parser = FACTORY.createParser(in)) {
+            parser.nextToken();
+            return readTransactionPage(parser);
+        }
+    }
+
+    private static Account readAccount(JsonParser parser) throws IOException {
+        if (startObject(parser)) {
+            return null;
+        }
+        Long id = null;
+        long balance = 0L;
+        Long lastTransactionId = null;
+        Long transactionIdGenerator = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "id":
+                    id = readLong(parser);
+                    break;
+                case "balance":
+                    balance = readMoney(parser);
+                    break;
+                case "lastTransactionId":
+                    lastTransactionId = readLong(parser);
+                    break;
+                case "transactionIdGenerator":
+                    transactionIdGenerator = readLong(parser);
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+        if (id == null) {
+            throw new JsonParseException(parser, "Account without id");
+        }
+        Account account = new Account(id, balance, lastTransactionId == null ? 0L : lastTransactionId);
+        if (transactionIdGenerator != null) {
+            account.reserveTransactionIds(transactionIdGenerator);
+        }
+        return account;
+    }
+
+    private static Transaction readTransaction(JsonParser parser) throws IOException {
+        if (startObject(parser)) {
+            return null;
+        }
+        Long id = null;
+        TransactionType type = null;
+        TransactionStatus status = null;
+        Long sourceAccountId = null;
+        Long destinationAccountId = null;
+        long amount = 0L;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "id":
+                    id = readLong(parser);
+                    break;
+                case "type":
+                    type = readEnum(parser, TransactionType.class);
+                    break;
+                case "status":
+                    status = readEnum(parser, TransactionStatus.class);
+                    break;
+                case "sourceAccountId":
+                    sourceAccountId = readLong(parser);
+                    break;
+                case "destinationAccountId":
+                    destinationAccountId = readLong(parser);
+                    break;
+                case "amount":
+                    amount = readMoney(parser);
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+        return new Transaction(id, type, status, sourceAccountId, destinationAccountId, amount);
+    }
+
+    private static AccountPage readAccountPage(JsonParser parser) throws IOException {
+        if (startObject(parser)) {
+            return null;
+        }
+        List<Account> accounts = null;
+        Long next = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "accounts":
+                    if (startArray(parser)) {
+                        break;
+                    }
+                    accounts = new ArrayList<>();
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        accounts.add(readAccount(parser));
+                    }
+                    break;
+                case "next":
+                    next = readLong(parser);
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+        return new AccountPage(accounts, next);
+    }
+
+    private static TransactionPage readTransactionPage(JsonParser parser) throws IOException {
+        if (startObject(parser)) {
+            return null;
+        }
+        List<Transaction> transactions = null;
+        Long next = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "transactions":
+                    if (startArray(parser)) {
+                        break;
+                    }
+                    transactions = new ArrayList<>();
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        transactions.add(readTransaction(parser));
+                    }
+                    break;
+                case "next":
+                    next = readLong(parser);
+                    break;
+                default:
+                    parser.skipChildren();
+                    break;
+            }
+        }
+        return new TransactionPage(transactions, next);
+    }
+
+    /**
+     * @return true if the value is null
+     */
+    private static boolean startObject(JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return true;
+        }
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            throw new JsonParseException(parser, "Expected an object, got " + parser.currentToken());
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the value is null
+     */
+    private static boolean startArray(JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return true;
+        }
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            throw new JsonParseException(parser, "Expected an array, got " + parser.currentToken());
+        }
+        return false;
+    }
+
+    private static Long readLong(JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (parser.currentToken() != JsonToken.VALUE_NUMBER_INT) {
+            throw new JsonParseException(parser, "Expected an integer, got " + parser.currentToken());
+        }
+        return parser.getLongValue();
+    }
+
+    private static long readMoney(JsonParser parser) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return 0L;
+        }
+        if (!parser.currentToken().isNumeric()) {
+            throw new JsonParseException(parser, "Expected an amount, got " + parser.currentToken());
+        }
+        try {
+            return MoneyUtils.toMinorUnits(parser.getDecimalValue());
+        } catch (ArithmeticException e) {
+            throw new JsonParseException(parser, "Invalid amount " + parser.getText(), e);
+        }
+    }
+
+    private static <E extends Enum<E>> E readEnum(JsonParser parser, Class<E> type) throws IOException {
+        if (parser.currentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (parser.currentToken() != JsonToken.VALUE_STRING) {
+            throw new JsonParseException(parser, "Expected a string, got " + parser.currentToken());
+        }
+        try {
+            return Enum.valueOf(type, parser.getText());
+        } catch (IllegalArgumentException e) {
+            throw new JsonParseException(parser, "Unknown " + type.getSimpleName() + " " + parser.getText(), e);
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package org.lightquark.moneytransfer.json;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamReadConstraints;
+import com.fasterxml.jackson.core.io.ContentReference;
+import com.fasterxml.jackson.core.io.IOContext;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.json.UTF8JsonGenerator;
+import com.fasterxml.jackson.core.util.BufferRecycler;
+import org.lightquark.moneytransfer.config.Config;
+import org.lightquark.moneytransfer.model.Account;
+import org.lightquark.moneytransfer.model.AccountPage;
+import org.lightquark.moneytransfer.model.Transaction;
+import org.lightquark.moneytransfer.model.TransactionPage;
+import org.lightquark.moneytransfer.model.TransactionStatus;
+import org.lightquark.moneytransfer.model.TransactionType;
+import org.lightquark.moneytransfer.util.MoneyUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Writes the entities with a streaming generator field by field, in the order of the Jackson bean serialization,
+ * so the JSON is the same without the introspection of the getters. The money is formatted from the minor units
+ * without a BigDecimal.
+ * <p>
+ * The encoders are pooled together with the buffers of their generators, closing an encoder returns it to the pool.
+ * Jackson keeps the buffers per thread otherwise, which reuses nothing when the requests run on virtual threads.
+ * <pre>
+ * try (JsonEncoder encoder = JsonEncoder.open(stream)) {
+ *     encoder.writeAccount(account);
+ * }
+ * </pre>
+ */
+public final class JsonEncoder implements Closeable {
+
+    private static final String POOL_SIZE_PROPERTY = "json_encoder_pool_size";
+    private static final int DEFAULT_POOL_SIZE = 64;
+    // Slots tried to take or return an encoder before giving up on the pool
+    private static final int POOL_PROBES = 4;
+    private static final int GENERATOR_FEATURES = JsonGenerator.Feature.collectDefaults()
+            & ~JsonGenerator.Feature.AUTO_CLOSE_TARGET.getMask();
+    // Beyond it BigDecimal switches to the exponent notation for small amounts, see BigDecimal.toString()
+    private static final int MAX_PLAIN_SCALE = 6;
+    // Sign, 19 digits of a long and the decimal point
+    private static final int MAX_MONEY_LENGTH = 21;
+    private static final long SCALE_FACTOR = MoneyUtils.SCALE <= MAX_PLAIN_SCALE ? pow10(MoneyUtils.SCALE) : 0;
+    private static final int ACCOUNT_SIZE_HINT = 96;
+
+    private static final SerializedString ID = new SerializedString("id");
+    private static final SerializedString BALANCE = new SerializedString("balance");
+    private static final SerializedString LAST_TRANSACTION_ID = new SerializedString("lastTransactionId");
+    private static final SerializedString TRANSACTION_ID_GENERATOR = new SerializedString("transactionIdGenerator");
+    private static final SerializedString TYPE = new SerializedString("type");
+    private static final SerializedString STATUS = new SerializedString("status");
+    private static final SerializedString SOURCE_ACCOUNT_ID = new SerializedString("sourceAccountId");
+    private static final SerializedString DESTINATION_ACCOUNT_ID = new SerializedString("destinationAccountId");
+    private static final SerializedString AMOUNT = new SerializedString("amount");
+    private static final SerializedString ACCOUNTS = new SerializedString("accounts");
+    private static final SerializedString TRANSACTIONS = new SerializedString("transactions");
+    private static final SerializedString NEXT = new SerializedString("next");
+    private static final SerializedString[] TYPE_NAMES = names(TransactionType.values());
+    private static final SerializedString[] STATUS_NAMES = names(TransactionStatus.values());
+
+    private static final AtomicReferenceArray<JsonEncoder> POOL =
+            new AtomicReferenceArray<>(Config.getInteger(POOL_SIZE_PROPERTY, DEFAULT_POOL_SIZE));
+
+    private final BufferRecycler recycler = new BufferRecycler();
+    private final char[] digits = new char[MAX_MONEY_LENGTH];
+    private JsonGenerator generator;
+
+    private JsonEncoder() {
+    }
+
+    /**
+     * @return an encoder writing into the stream, the stream is flushed but not closed by {@link #close()}
+     */
+    public static JsonEncoder open(OutputStream out) {
+        JsonEncoder encoder = take();
+        IOContext context = new IOContext(StreamReadConstraints.defaults(), encoder.recycler,
+                ContentReference.rawReference(out), false);
+        encoder.generator = new UTF8JsonGenerator(context, GENERATOR_FEATURES, null, out,
+                JsonFactory.DEFAULT_QUOTE_CHAR);
+        // The values written one after another are delimited by the caller, see writeLineSeparator()
+        encoder.generator.setRootValueSeparator(null);
+        return encoder;
+    }
+
+    public static byte[] toBytes(Account account) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(ACCOUNT_SIZE_HINT);
+        try (JsonEncoder encoder = open(out)) {
+            encoder.writeAccount(account);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed encoding account " + account.getId(), e);
+        }
+        return out.toByteArray();
+    }
+
+    public void writeAccount(Account account) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName(ID);
+        writeLong(account.getId());
+        generator.writeFieldName(BALANCE);
+        writeMoney(account.getBalanceMinor());
+        generator.writeFieldName(LAST_TRANSACTION_ID);
+        writeLong(account.getLastTransactionId());
+        generator.writeFieldName(TRANSACTION_ID_GENERATOR);
+        AtomicLong transactionIdGenerator = account.getTransactionIdGenerator();
+        if (transactionIdGenerator == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(transactionIdGenerator.get());
+        }
+        generator.writeEndObject();
+    }
+
+    public void writeTransaction(Transaction transaction) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName(ID);
+        writeLong(transaction.getId());
+        generator.writeFieldName(TYPE);
+        writeEnum(transaction.getType(), TYPE_NAMES);
+        generator.writeFieldName(STATUS);
+        writeEnum(transaction.getStatus(), STATUS_NAMES);
+        generator.writeFieldName(SOURCE_ACCOUNT_ID);
+        writeLong(transaction.getSourceAccountId());
+        generator.writeFieldName(DESTINATION_ACCOUNT_ID);
+        writeLong(transaction.getDestinationAccountId());
+        generator.writeFieldName(AMOUNT);
+        writeMoney(transaction.getAmountMinor());
+        generator.writeEndObject();
+    }
+
+    public void writeAccountPage(AccountPage page) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName(ACCOUNTS);
+        List<Account> accounts = page.getAccounts();
+        if (accounts == null) {
+            generator.writeNull();
+        } else {
+            generator.writeStartArray();
+            for (Account account : accounts) {
+                writeAccount(account);
+            }
+            generator.writeEndArray();
+        }
+        generator.writeFieldName(NEXT);
+        writeLong(page.getNext());
+        generator.writeEndObject();
+    }
+
+    public void writeTransactionPage(TransactionPage page) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName(TRANSACTIONS);
+        List<Transaction> transactions = page.getTransactions();
+        if (transactions == null) {
+            generator.writeNull();
+        } else {
+            generator.writeStartArray();
+            for (Transaction transaction : transactions) {
+                writeTransaction(transaction);
+            }
+            generator.writeEndArray();
+        }
+        generator.writeFieldName(NEXT);
+        writeLong(page.getNext());
+        generator.writeEndObject();
+    }
+
+    public void writeStartArray() throws IOException {
+        generator.writeStartArray();
+    }
+
+    public void writeEndArray() throws IOException {
+        generator.writeEndArray();
+    }
+
+    /**
+     * Ends a line of newline delimited JSON.
+     */
+    public void writeLineSeparator() throws IOException {
+        generator.writeRaw('\n');
+    }
+
+    /**
+     * Flushes the written JSON into the stream and returns the encoder to the pool.
+     */
+    @Override
+    public void close() throws IOException {
+        JsonGenerator closed = generator;
+        generator = null;
+        try {
+            // Gives the buffers back to the recycler of the encoder
+            closed.close();
+        } finally {
+            release(this);
+        }
+    }
+
+    private void writeLong(Long value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(value);
+        }
+    }
+
+    private void writeEnum(Enum<?> value, SerializedString[] names) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeString(names[value.ordinal()]);
+        }
+    }
+
+    /**
+     * Writes the amount as {@link MoneyUtils#toDecimal(long)} does, without the trailing zeros of the fraction.
+     */
+    private void writeMoney(long minorUnits) throws IOException {
+        if (SCALE_FACTOR == 0 || minorUnits == Long.MIN_VALUE) {
+            generator.writeNumber(MoneyUtils.toDecimal(minorUnits));
+            return;
+        }
+        long magnitude = Math.abs(minorUnits);
+        long fraction = magnitude % SCALE_FACTOR;
+        int fractionDigits = MoneyUtils.SCALE;
+        while (fraction != 0 && fraction % 10 == 0) {
+            fraction /= 10;
+            fractionDigits--;
+        }
+
+        int end = digits.length;
+        int position = end;
+        if (fraction != 0) {
+            for (int i = 0; i < fractionDigits; i++) {
+                digits[--position] = (char) ('0' + fraction % 10);
+                fraction /= 10;
+            }
+            digits[--position] = '.';
+        }
+        long integer = magnitude / SCALE_FACTOR;
+        do {
+            digits[--position] = (char) ('0' + integer % 10);
+            integer /= 10;
+        } while (integer != 0);
+        if (minorUnits < 0) {
+            digits[--position] = '-';
+        }
+        generator.writeNumber(digits, position, end - position);
+    }
+
+    private static JsonEncoder take() {
+        int start = (int) Thread.currentThread().threadId();
+        for (int i = 0; i < POOL_PROBES; i++) {
+            int slot = Math.floorMod(start + i, POOL.length());
+            JsonEncoder encoder = POOL.getAndSet(slot, null);
+            if (encoder != null) {
+                return encoder;
+            }
+        }
+        return new JsonEncoder();
+    }
+
+    private static void release(JsonEncoder encoder) {
+        int start = (int) Thread.currentThread().threadId();
+        for (int i = 0; i < POOL_PROBES; i++) {
+            if (POOL.compareAndSet(Math.floorMod(start + i, POOL.length()), null, encoder)) {
+                return;
+            }
+        }
+        // The pool is full, the encoder is left to the garbage collector
+    }
+
+    private static SerializedString[] names(Enum<?>[] values) {
+        SerializedString[] names = new SerializedString[values.length];
+        for (Enum<?> value : values) {
+            names[value.ordinal()] = new SerializedString(value.name());
+        }
+        return names;
+    }
+
+    private static long pow10(int exponent) {
+        long power = 1;
+        for (int i = 0; i < exponent; i++) {
+            power *= 10;
+        }
+        return power;
+    }
+}
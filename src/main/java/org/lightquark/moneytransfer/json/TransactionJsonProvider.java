@@ -0,0 +1,23 @@
+package org.lightquark.moneytransfer.json;
+
+import org.lightquark.moneytransfer.model.Transaction;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public class TransactionJsonProvider extends JsonCodecProvider<Transaction> {
+
+    public TransactionJsonProvider() {
+        super(Transaction.class);
+    }
+
+    @Override
+    protected void write(JsonEncoder encoder, Transaction transaction) throws IOException {
+        encoder.writeTransaction(transaction);
+    }
+
+    @Override
+    protected Transaction read(InputStream in) throws IOException {
+        return JsonDecoder.readTransaction(in);
+    }
+}
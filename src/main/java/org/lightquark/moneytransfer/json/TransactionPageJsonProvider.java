@@ -0,0 +1,23 @@
+package org.lightquark.moneytransfer.json;
+
+import org.lightquark.moneytransfer.model.TransactionPage;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+public class TransactionPageJsonProvider extends JsonCodecProvider<TransactionPage> {
+
+    public TransactionPageJsonProvider() {
+        super(TransactionPage.class);
+    }
+
+    @Override
+    protected void write(JsonEncoder encoder, TransactionPage page) throws IOException {
+        encoder.writeTransactionPage(page);
+    }
+
+    @Override
+    protected TransactionPage read(InputStream in) throws IOException {
+        return JsonDecoder.readTransactionPage(in);
+    }
+}
@@ -0,0 +1,54 @@
+package org.lightquark.moneytransfer.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations with power of two buckets, from 2^10 ns (about 1 microsecond) to 2^30 ns (about 1 second),
+ * and a bucket for the longer ones. A record is a bucket lookup and two adds, so it can be called for every
+ * transaction.
+ */
+public class LatencyHistogram {
+
+    private static final int FIRST_BOUND_SHIFT = 10;
+    private static final int LAST_BOUND_SHIFT = 30;
+    // The last one has no upper bound
+    private static final int BUCKETS = LAST_BOUND_SHIFT - FIRST_BOUND_SHIFT + 2;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder sumNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        int bucket = nanos <= 1L << FIRST_BOUND_SHIFT
+                ? 0 : Math.min(BUCKETS - 1, Long.SIZE - Long.numberOfLeadingZeros(nanos - 1) - FIRST_BOUND_SHIFT);
+        buckets[bucket].increment();
+        sumNanos.add(nanos);
+    }
+
+    /**
+     * @return count of the buckets including the last one without an upper bound
+     */
+    public int getBucketCount() {
+        return BUCKETS;
+    }
+
+    /**
+     * @return inclusive upper bound of the bucket in nanoseconds, Long.MAX_VALUE for the last one
+     */
+    public long getUpperBound(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : 1L << (FIRST_BOUND_SHIFT + bucket);
+    }
+
+    public long getCount(int bucket) {
+        return buckets[bucket].sum();
+    }
+
+    public long getSumNanos() {
+        return sumNanos.sum();
+    }
+}
@@ -0,0 +1,73 @@
+package org.lightquark.moneytransfer.metrics;
+
+/**
+ * Builds metrics in the Prometheus text exposition format. The samples of a metric must be written one after another,
+ * a metric's HELP and TYPE lines are written before its first sample.
+ */
+public class PrometheusWriter {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private final StringBuilder text = new StringBuilder(4096);
+    private String lastName;
+
+    public PrometheusWriter counter(String name, String help, String labels, long value) {
+        header(name, help, "counter");
+        sample(name, labels, Long.toString(value));
+        return this;
+    }
+
+    public PrometheusWriter counterSeconds(String name, String help, long nanos) {
+        header(name, help, "counter");
+        sample(name, null, Double.toString(nanos / NANOS_PER_SECOND));
+        return this;
+    }
+
+    public PrometheusWriter gauge(String name, String help, long value) {
+        header(name, help, "gauge");
+        sample(name, null, Long.toString(value));
+        return this;
+    }
+
+    /**
+     * Writes the cumulative buckets, the sum and the count of the histogram in seconds.
+     */
+    public PrometheusWriter histogram(String name, String help, String labels, LatencyHistogram histogram) {
+        header(name, help, "histogram");
+        String prefix = labels == null ? "" : labels + ",";
+        long count = 0;
+        for (int i = 0; i < histogram.getBucketCount(); i++) {
+            count += histogram.getCount(i);
+            long bound = histogram.getUpperBound(i);
+            String le = bound == Long.MAX_VALUE ? "+Inf" : Double.toString(bound / NANOS_PER_SECOND);
+            sample(name + "_bucket", prefix + "le=\"" + le + "\"", Long.toString(count));
+        }
+        sample(name + "_sum", labels, Double.toString(histogram.getSumNanos() / NANOS_PER_SECOND));
+        sample(name + "_count", labels, Long.toString(count));
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+
+    private void header(String name, String help, String type) {
+        if (name.equals(lastName)) {
+            return;
+        }
+        lastName = name;
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private void sample(String name, String labels, String value) {
+        text.append(name);
+        if (labels != null) {
+            text.append('{').append(labels).append('}');
+        }
+        text.append(' ').append(value).append('\n');
+    }
+}
@@ -0,0 +1,65 @@
+package org.lightquark.moneytransfer.metrics;
+
+import org.lightquark.moneytransfer.model.Transaction;
+import org.lightquark.moneytransfer.model.TransactionStatus;
+import org.lightquark.moneytransfer.model.TransactionType;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the processing of transactions, updated by the processing threads. Every update is an add to
+ * a {@link LongAdder}, the sums are taken only when the metrics are read.
+ */
+public class TransactionMetrics {
+
+    private static final TransactionType[] TYPES = TransactionType.values();
+    private static final TransactionStatus[] STATUSES = TransactionStatus.values();
+
+    private static final TransactionMetrics INSTANCE = new TransactionMetrics();
+
+    public static TransactionMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    private final LongAdder postponed = new LongAdder();
+    // By type and status
+    private final LongAdder[][] processed = new LongAdder[TYPES.length][STATUSES.length];
+    private final LatencyHistogram[] processingTimes = new LatencyHistogram[TYPES.length];
+
+    TransactionMetrics() {
+        for (TransactionType type : TYPES) {
+            for (TransactionStatus status : STATUSES) {
+                processed[type.ordinal()][status.ordinal()] = new LongAdder();
+            }
+            processingTimes[type.ordinal()] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Counts a transaction put aside until the preceding transactions of its account are processed.
+     */
+    public void recordPostponed() {
+        postponed.increment();
+    }
+
+    /**
+     * @param nanos time the processing of the transaction took
+     */
+    public void recordProcessed(Transaction transaction, long nanos) {
+        int type = transaction.getType().ordinal();
+        processed[type][transaction.getStatus().ordinal()].increment();
+        processingTimes[type].record(nanos);
+    }
+
+    public long getPostponed() {
+        return postponed.sum();
+    }
+
+    public long getProcessed(TransactionType type, TransactionStatus status) {
+        return processed[type.ordinal()][status.ordinal()].sum();
+    }
+
+    public LatencyHistogram getProcessingTime(TransactionType type) {
+        return processingTimes[type.ordinal()];
+    }
+}
@@ -1,13 +1,16 @@
 package org.lightquark.moneytransfer.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
+import org.lightquark.moneytransfer.util.MoneyUtils;
 
 import java.math.BigDecimal;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -17,26 +20,155 @@ import java.util.concurrent.locks.ReentrantLock;
 public class Account {
 
     private static final AtomicLong ID_GENERATOR = new AtomicLong();
+    private static final AtomicLongFieldUpdater<Account> BALANCE_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(Account.class, "balance");
 
     private final Long id;
-    @Setter
-    private BigDecimal balance;
+    // Minor units, see MoneyUtils
+    @Getter(AccessLevel.NONE)
+    private volatile long balance;
     @Setter
     private Long lastTransactionId;
     private AtomicLong transactionIdGenerator;
     @JsonIgnore
-    private final transient Lock lock;
+    private final Lock lock;
 
     public Account() {
-        this.id = ID_GENERATOR.incrementAndGet();
-        this.balance = BigDecimal.ZERO;
+        this.id = generateId();
+        this.balance = 0L;
         this.lastTransactionId = 0L;
         this.lock = new ReentrantLock();
         this.transactionIdGenerator = new AtomicLong();
     }
 
+    /**
+     * Restores an account, e.g. from a snapshot. The transaction id generator continues from the last transaction id.
+     */
+    public Account(long id, long balance, long lastTransactionId) {
+        this.id = id;
+        this.balance = balance;
+        this.lastTransactionId = lastTransactionId;
+        this.lock = new ReentrantLock();
+        this.transactionIdGenerator = new AtomicLong(lastTransactionId);
+    }
+
+    /**
+     * For views over the accounts kept outside of the heap. Such views must override the accessors of the balance,
+     * the last transaction id and the transaction id generator.
+     */
+    protected Account(Long id, Lock lock) {
+        this.id = id;
+        this.lock = lock;
+    }
+
+    /**
+     * @return true if the credits of the account take no lock, see {@link HotAccount}
+     */
+    @JsonIgnore
+    public boolean isHot() {
+        return false;
+    }
+
+    /**
+     * Position of the lock of the account in the global order the locks are taken in, accounts sharing a lock
+     * share the position.
+     */
+    @JsonIgnore
+    public long getLockOrder() {
+        return id;
+    }
+
+    public static long generateId() {
+        return ID_GENERATOR.incrementAndGet();
+    }
+
+    /**
+     * @return the greatest id generated or reserved so far, no account has a greater one
+     */
+    public static long getLastId() {
+        return ID_GENERATOR.get();
+    }
+
+    /**
+     * Makes sure the ids up to the given one are never generated again, e.g. after the accounts are loaded from disk.
+     */
+    public static void reserveIds(long lastId) {
+        ID_GENERATOR.accumulateAndGet(lastId, Math::max);
+    }
+
+    public BigDecimal getBalance() {
+        return MoneyUtils.toDecimal(getBalanceMinor());
+    }
+
+    public void setBalance(BigDecimal balance) {
+        setBalanceMinor(MoneyUtils.toMinorUnits(balance));
+    }
+
+    @JsonIgnore
+    public long getBalanceMinor() {
+        return balance;
+    }
+
+    public void setBalanceMinor(long balance) {
+        this.balance = balance;
+    }
+
+    /**
+     * Adds the amount to the balance with a compare-and-set, so it needs no lock of the account.
+     *
+     * @return false if the balance would overflow, it stays unchanged then
+     */
+    public boolean credit(long amount) {
+        long current;
+        do {
+            current = getBalanceMinor();
+            if (!MoneyUtils.canAdd(current, amount)) {
+                return false;
+            }
+        } while (!compareAndSetBalanceMinor(current, current + amount));
+        return true;
+    }
+
+    /**
+     * Subtracts the amount from the balance with a compare-and-set, so it needs no lock of the account.
+     *
+     * @return false if the balance is less than the amount, it stays unchanged then
+     */
+    public boolean debit(long amount) {
+        long current;
+        do {
+            current = getBalanceMinor();
+            if (current < amount) {
+                return false;
+            }
+        } while (!compareAndSetBalanceMinor(current, current - amount));
+        return true;
+    }
+
+    /**
+     * Adds the amount, a negative one subtracts, whatever the balance is. For changes decided already, e.g. the
+     * transactions completed before a restart.
+     */
+    public void add(long amount) {
+        long current;
+        do {
+            current = getBalanceMinor();
+        } while (!compareAndSetBalanceMinor(current, current + amount));
+    }
+
+    protected boolean compareAndSetBalanceMinor(long expected, long balance) {
+        return BALANCE_UPDATER.compareAndSet(this, expected, balance);
+    }
+
     @JsonIgnore
     public Long getNextTransactionId() {
         return transactionIdGenerator.incrementAndGet();
     }
+
+    /**
+     * Makes sure the transaction ids up to the given one are never generated again for this account.
+     */
+    public void reserveTransactionIds(long lastId) {
+        transactionIdGenerator.accumulateAndGet(lastId, Math::max);
+    }
 }
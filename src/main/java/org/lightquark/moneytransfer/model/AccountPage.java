@@ -0,0 +1,24 @@
+package org.lightquark.moneytransfer.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Page of the accounts in the order of ids, next is the cursor of the following page or null if it is the last.
+ */
+@Getter
+public class AccountPage {
+
+    private final List<Account> accounts;
+    private final Long next;
+
+    @JsonCreator
+    public AccountPage(@JsonProperty("accounts") List<Account> accounts,
+            @JsonProperty("next") Long next) {
+        this.accounts = accounts;
+        this.next = next;
+    }
+}
@@ -0,0 +1,40 @@
+package org.lightquark.moneytransfer.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Outcome of a single entry of a transaction batch: the created transaction or the reason of rejection.
+ */
+@Getter
+@ToString
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchItemResult {
+
+    private final int index;
+    private final boolean accepted;
+    private final Transaction transaction;
+    private final String error;
+
+    @JsonCreator
+    public BatchItemResult(@JsonProperty("index") int index,
+            @JsonProperty("accepted") boolean accepted,
+            @JsonProperty("transaction") Transaction transaction,
+            @JsonProperty("error") String error) {
+        this.index = index;
+        this.accepted = accepted;
+        this.transaction = transaction;
+        this.error = error;
+    }
+
+    public static BatchItemResult accepted(int index, Transaction transaction) {
+        return new BatchItemResult(index, true, transaction, null);
+    }
+
+    public static BatchItemResult rejected(int index, String error) {
+        return new BatchItemResult(index, false, null, error);
+    }
+}
@@ -0,0 +1,175 @@
+package org.lightquark.moneytransfer.model;
+
+import org.lightquark.moneytransfer.util.MoneyUtils;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Account which receives a large share of all transfers, e.g. a fee collector.
+ * <p>
+ * A credit is added to one of striped cells chosen by the thread, as in {@link java.util.concurrent.atomic.LongAdder},
+ * so credits take no lock and the threads rarely contend. Debits and balance reads sum the cells with the balance
+ * under the lock of the account.
+ * <p>
+ * A cell takes at most its share of the room left above the balance, so the sum never overflows. A credit over
+ * the share of its cell folds the cells into the balance under the lock and checks the overflow against the sum.
+ * A fold closes the cells and replaces them with new ones sharing the new room, so no credit lands in a cell
+ * counted by a previous share.
+ */
+public class HotAccount extends Account {
+
+    private static final int CELL_COUNT = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1;
+    // The cells are spread over the array, so two cells never share a cache line
+    private static final int CELL_SHIFT = 3;
+
+    // Value of a cell moved into the balance, no credit is added to it
+    private static final long CLOSED = Long.MIN_VALUE;
+
+    private volatile Cells cells;
+
+    public HotAccount() {
+        super();
+        this.cells = new Cells(0);
+    }
+
+    public HotAccount(long id, long balance, long lastTransactionId) {
+        super(id, balance, lastTransactionId);
+        this.cells = new Cells(balance);
+    }
+
+    @Override
+    public boolean isHot() {
+        return true;
+    }
+
+    @Override
+    public long getBalanceMinor() {
+        Lock lock = getLock();
+        lock.lock();
+        try {
+            return sum();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setBalanceMinor(long balance) {
+        Lock lock = getLock();
+        lock.lock();
+        try {
+            fold();
+            open(balance);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return false if the balance would overflow, it stays unchanged then
+     */
+    @Override
+    public boolean credit(long amount) {
+        Cells current = cells;
+        int cell = cellIndex();
+        long value;
+        do {
+            value = current.values.get(cell);
+            if (value == CLOSED || value > current.limit - amount) {
+                return creditFolded(amount);
+            }
+        } while (!current.values.compareAndSet(cell, value, value + amount));
+        return true;
+    }
+
+    private boolean creditFolded(long amount) {
+        Lock lock = getLock();
+        lock.lock();
+        try {
+            long balance = fold();
+            boolean credited = MoneyUtils.canAdd(balance, amount);
+            open(credited ? balance + amount : balance);
+            return credited;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A debit only lowers the balance, so the room of the cells stays valid.
+     */
+    @Override
+    public boolean debit(long amount) {
+        Lock lock = getLock();
+        lock.lock();
+        try {
+            if (sum() < amount) {
+                return false;
+            }
+            super.setBalanceMinor(super.getBalanceMinor() - amount);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void add(long amount) {
+        Lock lock = getLock();
+        lock.lock();
+        try {
+            open(fold() + amount);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Must be called under the lock of the account, the credits may go on during it.
+     *
+     * @return the balance with the cells, starting from the balance keeps every partial sum in range
+     */
+    private long sum() {
+        long balance = super.getBalanceMinor();
+        AtomicLongArray values = cells.values;
+        for (int i = 0; i < CELL_COUNT; i++) {
+            balance += values.get(i << CELL_SHIFT);
+        }
+        return balance;
+    }
+
+    /**
+     * Closes the cells, must be called under the lock of the account and followed by {@link #open}.
+     *
+     * @return the balance with the cells
+     */
+    private long fold() {
+        long balance = super.getBalanceMinor();
+        AtomicLongArray values = cells.values;
+        for (int i = 0; i < CELL_COUNT; i++) {
+            balance += values.getAndSet(i << CELL_SHIFT, CLOSED);
+        }
+        return balance;
+    }
+
+    private void open(long balance) {
+        super.setBalanceMinor(balance);
+        cells = new Cells(balance);
+    }
+
+    private static int cellIndex() {
+        long hash = Thread.currentThread().threadId() * 0x9E3779B97F4A7C15L;
+        return ((int) (hash >>> 32) & (CELL_COUNT - 1)) << CELL_SHIFT;
+    }
+
+    private static final class Cells {
+        private final AtomicLongArray values = new AtomicLongArray(CELL_COUNT << CELL_SHIFT);
+        // Greatest value of a cell, the cells together never exceed the room above the balance
+        private final long limit;
+
+        private Cells(long balance) {
+            this.limit = (Long.MAX_VALUE - Math.max(balance, 0)) / CELL_COUNT;
+        }
+    }
+}
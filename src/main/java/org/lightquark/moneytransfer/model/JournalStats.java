@@ -0,0 +1,20 @@
+package org.lightquark.moneytransfer.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Group commit statistics of the transaction journal, latencies are in microseconds.
+ */
+@Getter
+@AllArgsConstructor
+public class JournalStats {
+
+    private final boolean enabled;
+    private final long fsyncCount;
+    private final long recordCount;
+    private final double averageBatchSize;
+    private final long maxBatchSize;
+    private final long averageFsyncLatency;
+    private final long maxFsyncLatency;
+}
@@ -0,0 +1,20 @@
+package org.lightquark.moneytransfer.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Counters of the account locks: acquisitions, the ones which found the lock busy (waits), the ones which had to park,
+ * the ones which timed out, the transactions put off for a retry and the time spent waiting for busy locks.
+ */
+@Getter
+@AllArgsConstructor
+public class LockStats {
+
+    private final long acquisitions;
+    private final long waits;
+    private final long parks;
+    private final long timeouts;
+    private final long retries;
+    private final long waitNanos;
+}
@@ -1,26 +1,55 @@
 package org.lightquark.moneytransfer.model;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.ToString;
+import org.lightquark.moneytransfer.util.MoneyUtils;
 
 import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Consumer;
 
 @Getter
 @EqualsAndHashCode(of = {"id"})
 @ToString(of = {"id", "type", "status", "sourceAccountId", "destinationAccountId", "amount"})
 public class Transaction {
 
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<Transaction, Consumer> LISTENER_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(Transaction.class, Consumer.class, "processedListener");
+    // Marks a processed transaction in place of the listener
+    private static final Consumer<Transaction> PROCESSED = transaction -> { };
+
     private final Long id;
     private final TransactionType type;
     @Setter
     private TransactionStatus status;
     private final Long sourceAccountId;
     private final Long destinationAccountId;
-    private final BigDecimal amount;
+    // Minor units, see MoneyUtils
+    @Getter(AccessLevel.NONE)
+    private final long amount;
+    @Getter(AccessLevel.NONE)
+    private volatile Consumer<Transaction> processedListener;
+    // Status journaled before a restart, the replay applies it instead of deciding the transaction again
+    @JsonIgnore
+    @Setter
+    private TransactionStatus recordedStatus;
+
+    public Transaction(Long id, TransactionType type, TransactionStatus status, Long sourceAccountId,
+            Long destinationAccountId, long amount) {
+        this.id = id;
+        this.type = type;
+        this.status = status;
+        this.sourceAccountId = sourceAccountId;
+        this.destinationAccountId = destinationAccountId;
+        this.amount = amount;
+    }
 
     @JsonCreator
     public Transaction(@JsonProperty("id") Long id,
@@ -29,11 +58,45 @@ public class Transaction {
             @JsonProperty("sourceAccountId") Long sourceAccountId,
             @JsonProperty("destinationAccountId") Long destinationAccountId,
             @JsonProperty("amount") BigDecimal amount) {
-        this.id = id;
-        this.type = type;
-        this.status = status;
-        this.sourceAccountId = sourceAccountId;
-        this.destinationAccountId = destinationAccountId;
-        this.amount = amount;
+        this(id, type, status, sourceAccountId, destinationAccountId,
+                amount == null ? 0L : MoneyUtils.toMinorUnits(amount));
+    }
+
+    public BigDecimal getAmount() {
+        return MoneyUtils.toDecimal(amount);
+    }
+
+    @JsonIgnore
+    public long getAmountMinor() {
+        return amount;
+    }
+
+    /**
+     * Registers the listener called once the transaction reaches its final status, right away if it already has.
+     * The listeners of a transaction are called in the order of registration.
+     */
+    public void whenProcessed(Consumer<Transaction> listener) {
+        while (true) {
+            Consumer<Transaction> current = processedListener;
+            if (current == PROCESSED) {
+                listener.accept(this);
+                return;
+            }
+            Consumer<Transaction> next = current == null ? listener : current.andThen(listener);
+            if (LISTENER_UPDATER.compareAndSet(this, current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Called by the processing once the final status is set.
+     */
+    @SuppressWarnings("unchecked")
+    public void markProcessed() {
+        Consumer<Transaction> listener = LISTENER_UPDATER.getAndSet(this, PROCESSED);
+        if (listener != null && listener != PROCESSED) {
+            listener.accept(this);
+        }
     }
 }
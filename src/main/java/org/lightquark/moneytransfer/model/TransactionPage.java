@@ -0,0 +1,24 @@
+package org.lightquark.moneytransfer.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Page of the transaction history of an account, next is the cursor of the following page or null if it is the last.
+ */
+@Getter
+public class TransactionPage {
+
+    private final List<Transaction> transactions;
+    private final Long next;
+
+    @JsonCreator
+    public TransactionPage(@JsonProperty("transactions") List<Transaction> transactions,
+            @JsonProperty("next") Long next) {
+        this.transactions = transactions;
+        this.next = next;
+    }
+}
@@ -0,0 +1,34 @@
+package org.lightquark.moneytransfer.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.math.BigDecimal;
+
+/**
+ * A single entry of a transaction batch.
+ * DEPOSIT and WITHDRAW accept either accountId or sourceAccountId, TRANSFER requires both account ids.
+ */
+@Getter
+@ToString
+public class TransactionRequest {
+
+    private final TransactionType type;
+    private final Long sourceAccountId;
+    private final Long destinationAccountId;
+    private final BigDecimal amount;
+
+    @JsonCreator
+    public TransactionRequest(@JsonProperty("type") TransactionType type,
+            @JsonProperty("accountId") Long accountId,
+            @JsonProperty("sourceAccountId") Long sourceAccountId,
+            @JsonProperty("destinationAccountId") Long destinationAccountId,
+            @JsonProperty("amount") BigDecimal amount) {
+        this.type = type;
+        this.sourceAccountId = sourceAccountId != null ? sourceAccountId : accountId;
+        this.destinationAccountId = destinationAccountId;
+        this.amount = amount;
+    }
+}
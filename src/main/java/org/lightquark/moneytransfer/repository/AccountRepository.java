@@ -1,43 +1,116 @@
 package org.lightquark.moneytransfer.repository;
 
+import lombok.extern.slf4j.Slf4j;
+import org.lightquark.moneytransfer.config.Config;
 import org.lightquark.moneytransfer.model.Account;
+import org.lightquark.moneytransfer.model.AccountPage;
+import org.lightquark.moneytransfer.model.HotAccount;
 
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
-public class AccountRepository {
+/**
+ * Storage of accounts, the implementation is chosen by the account_repository property.
+ */
+@Slf4j
+public abstract class AccountRepository {
 
-    private static final AccountRepository INSTANCE = new AccountRepository();
+    private static final String TYPE_PROPERTY = "account_repository";
+    public static final String TYPE_HASH_MAP = "hash_map";
+    public static final String TYPE_OPEN_ADDRESSING = "open_addressing";
+    public static final String TYPE_MAPPED = "mapped";
+    private static final String LEDGER_FILE_PROPERTY = "account_ledger_file";
+    private static final String DEFAULT_LEDGER_FILE = "account-ledger.dat";
+    // Bounds the work of a page over sparse ids
+    private static final int MAX_SCANNED_IDS = 65536;
 
     public static AccountRepository getInstance() {
-        return INSTANCE;
+        return InstanceHolder.INSTANCE;
     }
 
-    private Map<Long, Account> store = new ConcurrentHashMap<>();
+    public static AccountRepository create(String type) {
+        log.info("Account repository {}", type);
+        switch (type) {
+            case TYPE_HASH_MAP:
+                return new HashMapAccountRepository();
+            case TYPE_OPEN_ADDRESSING:
+                return new OpenAddressingAccountRepository();
+            case TYPE_MAPPED:
+                return new MappedAccountRepository(
+                        Paths.get(Config.getString(LEDGER_FILE_PROPERTY, DEFAULT_LEDGER_FILE)));
+            default:
+                throw new IllegalArgumentException("Unknown account repository " + type);
+        }
+    }
+
+    public abstract Account find(long id);
 
-    public Account find(Long id) {
-        return store.get(id);
+    public abstract List<Account> findAll();
+
+    /**
+     * Walks the ids from the given one on, so only the page is copied. At most {@link #MAX_SCANNED_IDS} ids are
+     * probed per call, so a page takes bounded time however sparse the ids are, e.g. after many deletions: the page
+     * may then be short or even empty and still have a cursor. The accounts created or deleted meanwhile may be
+     * missed or seen, every id is seen once.
+     *
+     * @param from cursor returned with the previous page, 0 for the first account
+     * @return at most limit accounts in the order of ids, with the id the next page starts from,
+     *         null if no account has a greater id
+     */
+    public AccountPage findPage(long from, int limit) {
+        return findPage(from, limit, MAX_SCANNED_IDS);
     }
 
-    public List<Account> findAll() {
-        return new ArrayList<>(store.values());
+    AccountPage findPage(long from, int limit, int maxScannedIds) {
+        List<Account> accounts = new ArrayList<>(Math.min(limit, 1024));
+        long lastId = Account.getLastId();
+        long id = Math.max(from, 1);
+        long scanEnd = lastId - id < maxScannedIds ? lastId : id + maxScannedIds - 1;
+        for (; id <= scanEnd; id++) {
+            Account account = find(id);
+            if (account != null) {
+                if (accounts.size() == limit) {
+                    // The next page starts at the first account after this one
+                    return new AccountPage(accounts, id);
+                }
+                accounts.add(account);
+            }
+        }
+        return new AccountPage(accounts, id <= lastId ? id : null);
     }
 
-    public void save(Account account) {
-        store.putIfAbsent(account.getId(), account);
+    /**
+     * @return the stored account, all later changes must be made through it
+     */
+    public abstract Account save(Account account);
+
+    /**
+     * Creates a new account and saves it.
+     * @return the stored account, all later changes must be made through it
+     */
+    public Account create() {
+        return create(false);
     }
 
-    public boolean delete(Long id) {
-        if (store.get(id) == null) {
-            return false;
-        }
-        store.remove(id);
-        return true;
+    /**
+     * Creates a new account and saves it.
+     * @param hot true for an account receiving many concurrent transfers, see {@link HotAccount}
+     * @return the stored account, all later changes must be made through it
+     */
+    public Account create(boolean hot) {
+        return save(hot ? new HotAccount() : new Account());
     }
 
-    public void clear() {
-        store.clear();
+    public abstract boolean delete(long id);
+
+    public abstract void clear();
+
+    /**
+     * The implementations extend this class, so the instance is created apart from it:
+     * otherwise loading of an implementation would create the instance before the implementation is initialized.
+     */
+    private static final class InstanceHolder {
+        private static final AccountRepository INSTANCE = create(Config.getString(TYPE_PROPERTY, TYPE_HASH_MAP));
     }
 }
@@ -0,0 +1,39 @@
+package org.lightquark.moneytransfer.repository;
+
+import org.lightquark.moneytransfer.model.Account;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class HashMapAccountRepository extends AccountRepository {
+
+    private Map<Long, Account> store = new ConcurrentHashMap<>();
+
+    @Override
+    public Account find(long id) {
+        return store.get(id);
+    }
+
+    @Override
+    public List<Account> findAll() {
+        return new ArrayList<>(store.values());
+    }
+
+    @Override
+    public Account save(Account account) {
+        Account current = store.putIfAbsent(account.getId(), account);
+        return current != null ? current : account;
+    }
+
+    @Override
+    public boolean delete(long id) {
+        return store.remove(id) != null;
+    }
+
+    @Override
+    public void clear() {
+        store.clear();
+    }
+}
@@ -0,0 +1,29 @@
+package org.lightquark.moneytransfer.repository;
+
+import org.lightquark.moneytransfer.model.Transaction;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Unbounded queue which allocates a node per transaction.
+ */
+public class LinkedTransactionQueue implements TransactionQueue {
+
+    private final Queue<Transaction> store = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public void add(Transaction transaction) {
+        store.add(transaction);
+    }
+
+    @Override
+    public Transaction poll() {
+        return store.poll();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return store.isEmpty();
+    }
+}
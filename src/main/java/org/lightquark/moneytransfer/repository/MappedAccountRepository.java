@@ -0,0 +1,345 @@
+package org.lightquark.moneytransfer.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.lightquark.moneytransfer.model.Account;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Keeps the accounts outside of the heap in a memory-mapped file of fixed-width records, the record of an account
+ * is addressed directly by its id. {@link #find(long)} returns a lightweight view over the record, so the heap
+ * does not grow with the count of accounts, and the accounts are available right after a restart.
+ * <p>
+ * The file is mapped by chunks, which are added on demand. The changes reach the page cache immediately,
+ * so they survive a crash of the application, but not a crash of the operating system.
+ * <p>
+ * Views of the same account may be many, so they share the locks: an account uses one of {@link #LOCK_COUNT} locks
+ * chosen by its id.
+ * <p>
+ * The records are read without locks, so their fields are written with release and read with acquire semantics:
+ * a thread which finds the id of a record also sees the fields written before the id.
+ * <p>
+ * The transactions accepted but not processed before a restart are lost with the queue, so on opening the transaction
+ * id generator of every account is moved back to its last processed transaction id. Otherwise the next transactions
+ * of the account would wait for the lost ones forever. A replay of the journal rebuilds the records anyway.
+ */
+@Slf4j
+public class MappedAccountRepository extends AccountRepository {
+
+    private static final long MAGIC = 0x4C454447455231L;
+    private static final int HEADER_SIZE = 64;
+    private static final int HEADER_MAGIC_OFFSET = 0;
+    private static final int HEADER_RECORD_SIZE_OFFSET = 8;
+    private static final int HEADER_MAX_ID_OFFSET = 16;
+
+    private static final int RECORD_SIZE = 32;
+    private static final int ID_OFFSET = 0;
+    private static final int BALANCE_OFFSET = 8;
+    private static final int LAST_TRANSACTION_ID_OFFSET = 16;
+    private static final int TRANSACTION_ID_GENERATOR_OFFSET = 24;
+
+    private static final int CHUNK_SHIFT = 20;
+    private static final long CHUNK_RECORDS = 1L << CHUNK_SHIFT;
+    private static final long CHUNK_SIZE = CHUNK_RECORDS * RECORD_SIZE;
+
+    private static final int LOCK_COUNT = 1024;
+
+    // Atomic access to the fields, which are longs aligned to 8 bytes: the header and the chunks start so
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private volatile MappedByteBuffer[] chunks;
+    private final Lock[] locks = new Lock[LOCK_COUNT];
+
+    public MappedAccountRepository(Path file) {
+        try {
+            channel = FileChannel.open(file, CREATE, READ, WRITE);
+            header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open account ledger " + file, e);
+        }
+        if (header.getLong(HEADER_MAGIC_OFFSET) == 0) {
+            header.putLong(HEADER_MAGIC_OFFSET, MAGIC);
+            header.putInt(HEADER_RECORD_SIZE_OFFSET, RECORD_SIZE);
+        } else if (header.getLong(HEADER_MAGIC_OFFSET) != MAGIC
+                || header.getInt(HEADER_RECORD_SIZE_OFFSET) != RECORD_SIZE) {
+            throw new IllegalStateException("Unsupported format of account ledger " + file);
+        }
+        for (int i = 0; i < LOCK_COUNT; i++) {
+            locks[i] = new ReentrantLock();
+        }
+
+        long maxId = getLong(header, HEADER_MAX_ID_OFFSET);
+        chunks = new MappedByteBuffer[0];
+        if (maxId > 0) {
+            chunkOf(maxId);
+        }
+        Account.reserveIds(maxId);
+        long reconciled = reconcileTransactionIds(maxId);
+        log.info("Opened account ledger {}, last account id {}, {} accounts with unprocessed transactions", file, maxId,
+                reconciled);
+    }
+
+    /**
+     * @return count of the accounts whose generator was ahead of their last transaction id
+     */
+    private long reconcileTransactionIds(long maxId) {
+        long reconciled = 0;
+        for (long id = 1; id <= maxId; id++) {
+            MappedByteBuffer buffer = chunks[(int) ((id - 1) >>> CHUNK_SHIFT)];
+            int offset = offsetOf(id - 1);
+            if (getLong(buffer, offset + ID_OFFSET) != id) {
+                continue;
+            }
+            long lastTransactionId = getLong(buffer, offset + LAST_TRANSACTION_ID_OFFSET);
+            if (getLong(buffer, offset + TRANSACTION_ID_GENERATOR_OFFSET) > lastTransactionId) {
+                putLong(buffer, offset + TRANSACTION_ID_GENERATOR_OFFSET, lastTransactionId);
+                reconciled++;
+            }
+        }
+        return reconciled;
+    }
+
+    @Override
+    public Account find(long id) {
+        if (id <= 0) {
+            return null;
+        }
+        long index = id - 1;
+        MappedByteBuffer[] current = chunks;
+        int chunk = (int) (index >>> CHUNK_SHIFT);
+        if (chunk >= current.length) {
+            return null;
+        }
+        int offset = offsetOf(index);
+        if (getLong(current[chunk], offset + ID_OFFSET) != id) {
+            return null;
+        }
+        return new MappedAccount(id, locks[lockIndex(id)], current[chunk], offset);
+    }
+
+    @Override
+    public List<Account> findAll() {
+        List<Account> accounts = new ArrayList<>();
+        long maxId = getLong(header, HEADER_MAX_ID_OFFSET);
+        for (long id = 1; id <= maxId; id++) {
+            Account account = find(id);
+            if (account != null) {
+                accounts.add(account);
+            }
+        }
+        return accounts;
+    }
+
+    /**
+     * @throws IllegalArgumentException for a hot account, its cells are kept on the heap only
+     */
+    @Override
+    public Account create(boolean hot) {
+        if (hot) {
+            throw new IllegalArgumentException("Hot accounts are not supported by the mapped account repository");
+        }
+        return create();
+    }
+
+    @Override
+    public synchronized Account create() {
+        long id = Account.generateId();
+        MappedByteBuffer buffer = chunkOf(id);
+        int offset = offsetOf(id - 1);
+        putLong(buffer, offset + BALANCE_OFFSET, 0L);
+        putLong(buffer, offset + LAST_TRANSACTION_ID_OFFSET, 0L);
+        putLong(buffer, offset + TRANSACTION_ID_GENERATOR_OFFSET, 0L);
+        // The id is written last, it makes the record visible for find
+        putLong(buffer, offset + ID_OFFSET, id);
+        if (getLong(header, HEADER_MAX_ID_OFFSET) < id) {
+            putLong(header, HEADER_MAX_ID_OFFSET, id);
+        }
+        return new MappedAccount(id, locks[lockIndex(id)], buffer, offset);
+    }
+
+    /**
+     * Copies the state of the account into its record.
+     */
+    @Override
+    public synchronized Account save(Account account) {
+        long id = account.getId();
+        MappedByteBuffer buffer = chunkOf(id);
+        int offset = offsetOf(id - 1);
+        putLong(buffer, offset + BALANCE_OFFSET, account.getBalanceMinor());
+        putLong(buffer, offset + LAST_TRANSACTION_ID_OFFSET, account.getLastTransactionId());
+        putLong(buffer, offset + TRANSACTION_ID_GENERATOR_OFFSET, account.getTransactionIdGenerator().get());
+        putLong(buffer, offset + ID_OFFSET, id);
+        if (getLong(header, HEADER_MAX_ID_OFFSET) < id) {
+            putLong(header, HEADER_MAX_ID_OFFSET, id);
+        }
+        Account.reserveIds(id);
+        return new MappedAccount(id, locks[lockIndex(id)], buffer, offset);
+    }
+
+    @Override
+    public synchronized boolean delete(long id) {
+        if (find(id) == null) {
+            return false;
+        }
+        putLong(chunks[(int) ((id - 1) >>> CHUNK_SHIFT)], offsetOf(id - 1) + ID_OFFSET, 0L);
+        return true;
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (MappedByteBuffer chunk : chunks) {
+            for (int offset = 0; offset < CHUNK_SIZE; offset += RECORD_SIZE) {
+                putLong(chunk, offset + ID_OFFSET, 0L);
+            }
+        }
+    }
+
+    /**
+     * Writes the changed pages to the disk.
+     */
+    public void force() {
+        header.force();
+        for (MappedByteBuffer chunk : chunks) {
+            chunk.force();
+        }
+    }
+
+    private MappedByteBuffer chunkOf(long id) {
+        int chunk = (int) ((id - 1) >>> CHUNK_SHIFT);
+        MappedByteBuffer[] current = chunks;
+        if (chunk < current.length) {
+            return current[chunk];
+        }
+        synchronized (this) {
+            current = chunks;
+            if (chunk >= current.length) {
+                MappedByteBuffer[] extended = Arrays.copyOf(current, chunk + 1);
+                try {
+                    for (int i = current.length; i < extended.length; i++) {
+                        // Mapping beyond the end of the file extends the file
+                        extended[i] = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + i * CHUNK_SIZE,
+                                CHUNK_SIZE);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to extend account ledger", e);
+                }
+                chunks = extended;
+                current = extended;
+            }
+            return current[chunk];
+        }
+    }
+
+    private static long getLong(MappedByteBuffer buffer, int offset) {
+        return (long) LONG.getAcquire(buffer, offset);
+    }
+
+    private static void putLong(MappedByteBuffer buffer, int offset, long value) {
+        LONG.setRelease(buffer, offset, value);
+    }
+
+    private static int offsetOf(long index) {
+        return (int) ((index & (CHUNK_RECORDS - 1)) * RECORD_SIZE);
+    }
+
+    private static int lockIndex(long id) {
+        return (int) (id & (LOCK_COUNT - 1));
+    }
+
+    /**
+     * View over the record of an account. It keeps no state of its own, so any count of views may exist at once.
+     */
+    private static final class MappedAccount extends Account {
+
+        private final MappedByteBuffer buffer;
+        private final int offset;
+
+        private MappedAccount(long id, Lock lock, MappedByteBuffer buffer, int offset) {
+            super(id, lock);
+            this.buffer = buffer;
+            this.offset = offset;
+        }
+
+        @Override
+        public long getLockOrder() {
+            return lockIndex(getId());
+        }
+
+        @Override
+        public long getBalanceMinor() {
+            return getLong(buffer, offset + BALANCE_OFFSET);
+        }
+
+        @Override
+        public void setBalanceMinor(long balance) {
+            putLong(buffer, offset + BALANCE_OFFSET, balance);
+        }
+
+        @Override
+        protected boolean compareAndSetBalanceMinor(long expected, long balance) {
+            // The balance is aligned to 8 bytes, so the view handle updates it atomically in the mapped buffer
+            return LONG.compareAndSet(buffer, offset + BALANCE_OFFSET, expected, balance);
+        }
+
+        @Override
+        public Long getLastTransactionId() {
+            return getLong(buffer, offset + LAST_TRANSACTION_ID_OFFSET);
+        }
+
+        @Override
+        public void setLastTransactionId(Long lastTransactionId) {
+            putLong(buffer, offset + LAST_TRANSACTION_ID_OFFSET, lastTransactionId);
+        }
+
+        @Override
+        public AtomicLong getTransactionIdGenerator() {
+            return new AtomicLong(getLong(buffer, offset + TRANSACTION_ID_GENERATOR_OFFSET));
+        }
+
+        @Override
+        public Long getNextTransactionId() {
+            // The generator is shared by all views of the account, the lock of the account makes the increment atomic
+            Lock lock = getLock();
+            lock.lock();
+            try {
+                long next = getLong(buffer, offset + TRANSACTION_ID_GENERATOR_OFFSET) + 1;
+                putLong(buffer, offset + TRANSACTION_ID_GENERATOR_OFFSET, next);
+                return next;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void reserveTransactionIds(long lastId) {
+            Lock lock = getLock();
+            lock.lock();
+            try {
+                if (getLong(buffer, offset + TRANSACTION_ID_GENERATOR_OFFSET) < lastId) {
+                    putLong(buffer, offset + TRANSACTION_ID_GENERATOR_OFFSET, lastId);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
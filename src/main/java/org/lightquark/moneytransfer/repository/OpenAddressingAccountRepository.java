@@ -0,0 +1,43 @@
+package org.lightquark.moneytransfer.repository;
+
+import org.lightquark.moneytransfer.model.Account;
+import org.lightquark.moneytransfer.util.ConcurrentLongHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds accounts by primitive ids without locks and without boxing, see {@link ConcurrentLongHashMap}.
+ */
+public class OpenAddressingAccountRepository extends AccountRepository {
+
+    private final ConcurrentLongHashMap<Account> store = new ConcurrentLongHashMap<>();
+
+    @Override
+    public Account find(long id) {
+        return store.get(id);
+    }
+
+    @Override
+    public List<Account> findAll() {
+        List<Account> accounts = new ArrayList<>(store.size());
+        store.forEachValue(accounts::add);
+        return accounts;
+    }
+
+    @Override
+    public Account save(Account account) {
+        Account current = store.putIfAbsent(account.getId(), account);
+        return current != null ? current : account;
+    }
+
+    @Override
+    public boolean delete(long id) {
+        return store.remove(id) != null;
+    }
+
+    @Override
+    public void clear() {
+        store.clear();
+    }
+}
@@ -0,0 +1,87 @@
+package org.lightquark.moneytransfer.repository;
+
+import org.lightquark.moneytransfer.model.Transaction;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded queue on top of a ring of preallocated slots, which are reused on every lap, so adding a transaction
+ * allocates nothing.
+ * <p>
+ * A producer claims the next sequence with a single atomic increment, waits until the slot of the sequence is released
+ * by the consumer, stores the transaction and publishes the slot by advancing its sequence.
+ * The consumer is the only one who reads the slots, so it needs no atomic operations at all.
+ */
+public class RingBufferTransactionQueue implements TransactionQueue {
+
+    private final Slot[] slots;
+    private final int mask;
+    private final PaddedSequence claimed = new PaddedSequence();
+    // Written only by the consumer
+    private long consumed;
+
+    public RingBufferTransactionQueue(int capacity) {
+        // A single slot cannot tell a published transaction from a released slot, so two slots is the minimum
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two and at least 2: " + capacity);
+        }
+        slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot(i);
+        }
+        mask = capacity - 1;
+    }
+
+    /**
+     * Blocks the producer while the ring is full.
+     */
+    @Override
+    public void add(Transaction transaction) {
+        long sequence = claimed.getAndIncrement();
+        Slot slot = slots[(int) sequence & mask];
+        // The slot is free when the consumer has released it after the previous lap
+        while (slot.sequence != sequence) {
+            Thread.yield();
+        }
+        slot.transaction = transaction;
+        // Publishes the transaction to the consumer
+        slot.sequence = sequence + 1;
+    }
+
+    @Override
+    public Transaction poll() {
+        Slot slot = slots[(int) consumed & mask];
+        if (slot.sequence != consumed + 1) {
+            return null;
+        }
+        Transaction transaction = slot.transaction;
+        slot.transaction = null;
+        // Releases the slot for the producer of the next lap
+        slot.sequence = consumed + slots.length;
+        consumed++;
+        return transaction;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return slots[(int) consumed & mask].sequence != consumed + 1;
+    }
+
+    private static final class Slot {
+        private volatile long sequence;
+        private Transaction transaction;
+
+        private Slot(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Keeps the claim counter of producers away from the cache lines of the consumer.
+     */
+    @SuppressWarnings("unused")
+    private static final class PaddedSequence extends AtomicLong {
+        private static final long serialVersionUID = 1L;
+        private long p1, p2, p3, p4, p5, p6, p7;
+    }
+}
@@ -0,0 +1,19 @@
+package org.lightquark.moneytransfer.repository;
+
+import org.lightquark.moneytransfer.model.Transaction;
+
+/**
+ * Queue of a single partition of {@link TransactionRepository}.
+ * Implementations must support many concurrent producers and a single consumer (the processing thread of the partition).
+ */
+public interface TransactionQueue {
+
+    void add(Transaction transaction);
+
+    /**
+     * @return the oldest transaction or null, if the queue is empty
+     */
+    Transaction poll();
+
+    boolean isEmpty();
+}
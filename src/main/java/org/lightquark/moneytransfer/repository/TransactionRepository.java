@@ -1,36 +1,207 @@
 package org.lightquark.moneytransfer.repository;
 
 import lombok.extern.slf4j.Slf4j;
+import org.lightquark.moneytransfer.config.Config;
 import org.lightquark.moneytransfer.model.Transaction;
 
-import java.util.Deque;
-import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Pending transactions split into partitions by the source account.
+ * All transactions of one account always land in the same partition, and each partition is drained by exactly one
+ * processing thread, so transactions of an account are processed by a single writer in the order they arrived.
+ */
 @Slf4j
 public class TransactionRepository {
 
-    private static final TransactionRepository INSTANCE = new TransactionRepository();
+    private static final String PARTITION_COUNT_PROPERTY = "transaction_processing_threads";
+    private static final int DEFAULT_PARTITION_COUNT = 1;
+    private static final String QUEUE_TYPE_PROPERTY = "transaction_queue";
+    public static final String QUEUE_TYPE_LINKED = "linked";
+    public static final String QUEUE_TYPE_RING = "ring";
+    private static final String RING_BUFFER_SIZE_PROPERTY = "transaction_ring_buffer_size";
+    private static final int DEFAULT_RING_BUFFER_SIZE = 16384;
+
+    private static final TransactionRepository INSTANCE =
+            new TransactionRepository(Config.getInteger(PARTITION_COUNT_PROPERTY, DEFAULT_PARTITION_COUNT),
+                    Config.getString(QUEUE_TYPE_PROPERTY, QUEUE_TYPE_LINKED));
 
     public static TransactionRepository getInstance() {
         return INSTANCE;
     }
 
-    private Deque<Transaction> store = new ConcurrentLinkedDeque<>();
+    private final Partition[] partitions;
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder dequeued = new LongAdder();
+
+    public TransactionRepository(int partitionCount, String queueType) {
+        log.info("Transaction queue {}, partition's count {}", queueType, partitionCount);
+        partitions = new Partition[Math.max(1, partitionCount)];
+        for (int i = 0; i < partitions.length; i++) {
+            partitions[i] = new Partition(createQueue(queueType));
+        }
+    }
+
+    private static TransactionQueue createQueue(String queueType) {
+        switch (queueType) {
+            case QUEUE_TYPE_LINKED:
+                return new LinkedTransactionQueue();
+            case QUEUE_TYPE_RING:
+                return new RingBufferTransactionQueue(
+                        Config.getInteger(RING_BUFFER_SIZE_PROPERTY, DEFAULT_RING_BUFFER_SIZE));
+            default:
+                throw new IllegalArgumentException("Unknown transaction queue " + queueType);
+        }
+    }
+
+    public int getPartitionCount() {
+        return partitions.length;
+    }
 
-    public Transaction getNext() {
-        return store.pollFirst();
+    public int getPartition(Long accountId) {
+        return accountId == null ? 0 : Math.floorMod(Long.hashCode(accountId), partitions.length);
     }
 
-    public void pushBack(Transaction transaction) {
-        store.addFirst(transaction);
+    public Transaction getNext(int partition) {
+        Partition current = partitions[partition];
+        Transaction transaction = current.store.poll();
+        if (transaction != null) {
+            current.taken++;
+            dequeued.increment();
+        }
+        return transaction;
     }
 
     public void save(Transaction transaction) {
-        store.add(transaction);
+        Partition partition = partitions[getPartition(transaction.getSourceAccountId())];
+        partition.size.incrementAndGet();
+        partition.added.incrementAndGet();
+        enqueued.increment();
+        partition.store.add(transaction);
+        partition.signal();
+    }
+
+    /**
+     * Saves the transactions keeping their order. The counters of every partition are updated only once.
+     */
+    public void saveAll(Collection<Transaction> transactions) {
+        int[] counts = new int[partitions.length];
+        for (Transaction transaction : transactions) {
+            counts[getPartition(transaction.getSourceAccountId())]++;
+        }
+        for (int i = 0; i < partitions.length; i++) {
+            if (counts[i] > 0) {
+                partitions[i].size.addAndGet(counts[i]);
+                partitions[i].added.addAndGet(counts[i]);
+            }
+        }
+        enqueued.add(transactions.size());
+        for (Transaction transaction : transactions) {
+            Partition partition = partitions[getPartition(transaction.getSourceAccountId())];
+            partition.store.add(transaction);
+            // The processing thread is unparked only if it waits, a bounded queue may need it before the batch ends
+            partition.signal();
+        }
+    }
+
+    /**
+     * Parks the processing thread of the partition until a transaction is saved into it or the timeout elapses.
+     */
+    public void await(int partition, long timeoutNanos) {
+        partitions[partition].await(timeoutNanos);
+    }
+
+    /**
+     * Unparks the processing threads of all partitions.
+     */
+    public void signalAll() {
+        for (Partition partition : partitions) {
+            partition.signal();
+        }
+    }
+
+    /**
+     * @return count of the transactions saved into every partition since the launch
+     */
+    public long[] getAddedCounts() {
+        long[] counts = new long[partitions.length];
+        for (int i = 0; i < partitions.length; i++) {
+            counts[i] = partitions[i].added.get();
+        }
+        return counts;
+    }
+
+    /**
+     * Must be called by the processing thread of the partition only.
+     *
+     * @return count of the transactions taken from the partition by {@link #getNext(int)} since the launch
+     */
+    public long getTakenCount(int partition) {
+        return partitions[partition].taken;
     }
 
+    /**
+     * Must be called by the processing thread once the transaction taken by {@link #getNext(int)} is finished.
+     */
+    public void markProcessed(Transaction transaction) {
+        partitions[getPartition(transaction.getSourceAccountId())].size.decrementAndGet();
+    }
+
+    /**
+     * @return count of saved transactions which are not processed yet (including the ones being processed right now)
+     */
     public int getSize() {
-        //This is inefficient operation, but I use it only for logging in the tests
-        return store.size();
+        int size = 0;
+        for (Partition partition : partitions) {
+            size += partition.size.get();
+        }
+        return size;
+    }
+
+    /**
+     * @return count of transactions saved since the launch
+     */
+    public long getEnqueuedCount() {
+        return enqueued.sum();
+    }
+
+    /**
+     * @return count of transactions taken for processing since the launch
+     */
+    public long getDequeuedCount() {
+        return dequeued.sum();
+    }
+
+    private static class Partition {
+        private final TransactionQueue store;
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicLong added = new AtomicLong();
+        // Used by the processing thread only
+        private long taken;
+        private volatile Thread waiter;
+
+        private Partition(TransactionQueue store) {
+            this.store = store;
+        }
+
+        private void await(long timeoutNanos) {
+            waiter = Thread.currentThread();
+            // The store is checked after publishing the waiter, so a concurrent save either is seen here or unparks us
+            if (store.isEmpty()) {
+                LockSupport.parkNanos(this, timeoutNanos);
+            }
+            waiter = null;
+        }
+
+        private void signal() {
+            Thread thread = waiter;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
     }
 }
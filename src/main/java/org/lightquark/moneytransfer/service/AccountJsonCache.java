@@ -0,0 +1,165 @@
+package org.lightquark.moneytransfer.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.lightquark.moneytransfer.config.Config;
+import org.lightquark.moneytransfer.json.JsonEncoder;
+import org.lightquark.moneytransfer.model.Account;
+import org.lightquark.moneytransfer.util.ConcurrentLongHashMap;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * JSON of the accounts encoded once and served as bytes until the account changes.
+ * <p>
+ * The balance, the last transaction id and the transaction id generator are the whole state of an account, and one
+ * of them changes with every transaction of the account, so together they are its version. An entry is valid while
+ * the account has the version the entry was encoded from. A read compares the version, so the processing does not
+ * invalidate anything, and the changes made outside the processing (e.g. creating a transaction) are seen too.
+ * <p>
+ * Up to {@code account_json_cache_size} accounts are kept, over the limit an entry is evicted by CLOCK: a read marks
+ * the entry as referenced, and the hand of the clock passes the marked entries once, clearing the mark.
+ */
+@Slf4j
+public class AccountJsonCache {
+
+    private static final String SIZE_PROPERTY = "account_json_cache_size";
+    private static final int DEFAULT_SIZE = 100_000;
+
+    private static final AccountJsonCache INSTANCE = new AccountJsonCache();
+
+    public static AccountJsonCache getInstance() {
+        return INSTANCE;
+    }
+
+    private final ConcurrentLongHashMap<Slot> slots = new ConcurrentLongHashMap<>();
+    // Entries in the order of the clock, guarded by this
+    private final Slot[] clock;
+    private int hand;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public AccountJsonCache() {
+        this(Config.getInteger(SIZE_PROPERTY, DEFAULT_SIZE));
+    }
+
+    public AccountJsonCache(int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("Invalid account JSON cache size " + size);
+        }
+        log.info("Account JSON cache, size {}", size);
+        this.clock = new Slot[size];
+    }
+
+    public byte[] getJson(Account account) {
+        long balance = account.getBalanceMinor();
+        long lastTransactionId = account.getLastTransactionId();
+        long generatedTransactionId = account.getTransactionIdGenerator().get();
+
+        Slot slot = slots.get(account.getId());
+        if (slot == null) {
+            slot = insert(account.getId());
+        }
+        Encoded encoded = slot.encoded;
+        if (encoded != null && encoded.balance == balance && encoded.lastTransactionId == lastTransactionId
+                && encoded.generatedTransactionId == generatedTransactionId) {
+            // Written only if not set yet, so the reads of a hot entry share its cache line
+            if (!slot.referenced) {
+                slot.referenced = true;
+            }
+            hits.increment();
+            return encoded.json;
+        }
+
+        misses.increment();
+        // Encodes the version read above, the account may be changing meanwhile
+        Account version = new Account(account.getId(), balance, lastTransactionId);
+        version.reserveTransactionIds(generatedTransactionId);
+        encoded = new Encoded(balance, lastTransactionId, generatedTransactionId, JsonEncoder.toBytes(version));
+        slot.encoded = encoded;
+        return encoded.json;
+    }
+
+    private synchronized Slot insert(long accountId) {
+        Slot slot = slots.get(accountId);
+        if (slot != null) {
+            return slot;
+        }
+        while (clock[hand] != null && clock[hand].referenced) {
+            clock[hand].referenced = false;
+            hand = (hand + 1) % clock.length;
+        }
+        Slot evicted = clock[hand];
+        // A removed entry stays on the clock until the hand reaches it, the account may have a newer one meanwhile
+        if (evicted != null && slots.get(evicted.accountId) == evicted) {
+            slots.remove(evicted.accountId);
+            evictions.increment();
+        }
+        slot = new Slot(accountId);
+        clock[hand] = slot;
+        hand = (hand + 1) % clock.length;
+        slots.putIfAbsent(accountId, slot);
+        return slot;
+    }
+
+    /**
+     * Drops the entry of the account, e.g. once it is deleted.
+     */
+    public synchronized void remove(long accountId) {
+        Slot slot = slots.remove(accountId);
+        if (slot != null) {
+            slot.referenced = false;
+        }
+    }
+
+    public synchronized void clear() {
+        slots.clear();
+        Arrays.fill(clock, null);
+        hand = 0;
+    }
+
+    public int getSize() {
+        return slots.size();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Holder of the latest encoding of an account, replaced without touching the map.
+     */
+    private static final class Slot {
+        private final long accountId;
+        private volatile Encoded encoded;
+        // Set by a read, cleared by the hand of the clock
+        private volatile boolean referenced;
+
+        private Slot(long accountId) {
+            this.accountId = accountId;
+        }
+    }
+
+    private static final class Encoded {
+        private final long balance;
+        private final long lastTransactionId;
+        private final long generatedTransactionId;
+        private final byte[] json;
+
+        private Encoded(long balance, long lastTransactionId, long generatedTransactionId, byte[] json) {
+            this.balance = balance;
+            this.lastTransactionId = lastTransactionId;
+            this.generatedTransactionId = generatedTransactionId;
+            this.json = json;
+        }
+    }
+}
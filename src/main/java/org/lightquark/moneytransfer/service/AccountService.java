@@ -1,7 +1,9 @@
 package org.lightquark.moneytransfer.service;
 
 import lombok.extern.slf4j.Slf4j;
+import org.lightquark.moneytransfer.journal.TransactionJournal;
 import org.lightquark.moneytransfer.model.Account;
+import org.lightquark.moneytransfer.model.AccountPage;
 import org.lightquark.moneytransfer.repository.AccountRepository;
 
 import java.util.List;
@@ -16,26 +18,61 @@ public class AccountService {
     }
 
     private AccountRepository accountRepository = AccountRepository.getInstance();
+    private TransactionJournal transactionJournal = TransactionJournal.getInstance();
+    private AccountJsonCache accountJsonCache = AccountJsonCache.getInstance();
 
-    public Account find(Long id) {
+    public Account find(long id) {
         return accountRepository.find(id);
     }
 
+    /**
+     * @return JSON of the account, encoded again only if the account has changed, or null if there is no account
+     */
+    public byte[] findJson(long id) {
+        Account account = accountRepository.find(id);
+        return account == null ? null : accountJsonCache.getJson(account);
+    }
+
     public List<Account> findAll() {
         return accountRepository.findAll();
     }
 
+    /**
+     * @param from cursor returned with the previous page, 0 for the first account
+     */
+    public AccountPage findPage(long from, int limit) {
+        return accountRepository.findPage(from, limit);
+    }
+
+    /**
+     * With the journal enabled blocks until the creation is durable.
+     */
     public Account create() {
-        Account account = new Account();
-        accountRepository.save(account);
+        return create(false);
+    }
+
+    /**
+     * @param hot true for an account receiving many concurrent transfers, see {@link org.lightquark.moneytransfer.model.HotAccount}
+     */
+    public Account create(boolean hot) {
+        Account account = accountRepository.create(hot);
+        if (transactionJournal.isEnabled()) {
+            transactionJournal.appendAccountCreated(account.getId(), hot);
+        }
         return account;
     }
 
-    public boolean delete(Long id) {
-        return accountRepository.delete(id);
+    public boolean delete(long id) {
+        boolean deleted = accountRepository.delete(id);
+        accountJsonCache.remove(id);
+        if (deleted && transactionJournal.isEnabled()) {
+            transactionJournal.appendAccountDeleted(id);
+        }
+        return deleted;
     }
 
     public void clear() {
         accountRepository.clear();
+        accountJsonCache.clear();
     }
 }
@@ -0,0 +1,209 @@
+package org.lightquark.moneytransfer.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.lightquark.moneytransfer.config.Config;
+import org.lightquark.moneytransfer.repository.TransactionRepository;
+import org.lightquark.moneytransfer.util.TokenBucket;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Admission of new transactions, so the producers outrunning the processing are told to retry later instead of
+ * growing the queue of pending transactions until the heap is exhausted. A transaction is admitted if
+ * <ul>
+ * <li>fewer transactions than the max queue depth are pending,</li>
+ * <li>the bucket of the client has a token, if the rate per client is set,</li>
+ * <li>the bucket of the source account has a token, if the rate per account is set.</li>
+ * </ul>
+ * The buckets of the clients and accounts idle for the refill time of a bucket are forgotten, they are full by then
+ * anyway. A zero max queue depth or rate turns the check off. The rates may be changed at runtime, the buckets
+ * start full then.
+ */
+@Slf4j
+public class AdmissionControl {
+
+    public static final long ADMITTED = 0;
+
+    private static final String MAX_QUEUE_DEPTH_PROPERTY = "admission_max_queue_depth";
+    private static final int DEFAULT_MAX_QUEUE_DEPTH = 1_000_000;
+    private static final String RETRY_AFTER_PROPERTY = "admission_retry_after_seconds";
+    private static final int DEFAULT_RETRY_AFTER = 1;
+    private static final String CLIENT_RATE_PROPERTY = "admission_client_rate";
+    private static final String CLIENT_BURST_PROPERTY = "admission_client_burst";
+    private static final String ACCOUNT_RATE_PROPERTY = "admission_account_rate";
+    private static final String ACCOUNT_BURST_PROPERTY = "admission_account_burst";
+    private static final int DEFAULT_RATE = 0;
+    private static final String MAX_BUCKETS_PROPERTY = "admission_max_buckets";
+    private static final int DEFAULT_MAX_BUCKETS = 100_000;
+
+    private static final AdmissionControl INSTANCE = create();
+
+    public static AdmissionControl getInstance() {
+        return INSTANCE;
+    }
+
+    private static AdmissionControl create() {
+        int clientRate = Config.getInteger(CLIENT_RATE_PROPERTY, DEFAULT_RATE);
+        int accountRate = Config.getInteger(ACCOUNT_RATE_PROPERTY, DEFAULT_RATE);
+        TransactionRepository transactionRepository = TransactionRepository.getInstance();
+        return new AdmissionControl(transactionRepository::getSize,
+                Config.getInteger(MAX_QUEUE_DEPTH_PROPERTY, DEFAULT_MAX_QUEUE_DEPTH),
+                Config.getInteger(RETRY_AFTER_PROPERTY, DEFAULT_RETRY_AFTER),
+                clientRate, Config.getInteger(CLIENT_BURST_PROPERTY, clientRate),
+                accountRate, Config.getInteger(ACCOUNT_BURST_PROPERTY, accountRate),
+                Config.getInteger(MAX_BUCKETS_PROPERTY, DEFAULT_MAX_BUCKETS));
+    }
+
+    /**
+     * Reason of a rejection, for the metrics.
+     */
+    public enum Rejection {
+        QUEUE_DEPTH,
+        CLIENT_RATE,
+        ACCOUNT_RATE
+    }
+
+    private final IntSupplier queueDepth;
+    private final int maxQueueDepth;
+    private final int retryAfterSeconds;
+    private final int maxBuckets;
+    // Null while the rate is not limited
+    private volatile RateLimit<String> clientLimit;
+    private volatile RateLimit<Long> accountLimit;
+    private final LongAdder[] rejected = new LongAdder[Rejection.values().length];
+
+    /**
+     * @param queueDepth count of the pending transactions
+     * @param retryAfterSeconds advised to the clients rejected for the queue depth
+     * @param clientRate transactions per second of a client
+     * @param clientBurst transactions a client may send at once after an idle time
+     * @param accountRate transactions per second of a source account
+     * @param accountBurst transactions of a source account at once after an idle time
+     * @param maxBuckets count of the clients and of the accounts whose buckets are kept
+     */
+    public AdmissionControl(IntSupplier queueDepth, int maxQueueDepth, int retryAfterSeconds, int clientRate,
+            int clientBurst, int accountRate, int accountBurst, int maxBuckets) {
+        log.info("Admission control, max queue depth {}, rate per client {} (burst {}), rate per account {} "
+                + "(burst {})", maxQueueDepth, clientRate, clientBurst, accountRate, accountBurst);
+        this.queueDepth = queueDepth;
+        this.maxQueueDepth = maxQueueDepth;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.maxBuckets = maxBuckets;
+        this.clientLimit = rateLimit(clientRate, clientBurst, maxBuckets);
+        this.accountLimit = rateLimit(accountRate, accountBurst, maxBuckets);
+        for (Rejection rejection : Rejection.values()) {
+            rejected[rejection.ordinal()] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param rate transactions per second of a client, zero turns the limit off
+     * @param burst transactions a client may send at once after an idle time
+     */
+    public void setClientRate(int rate, int burst) {
+        clientLimit = rateLimit(rate, burst, maxBuckets);
+    }
+
+    /**
+     * @param rate transactions per second of a source account, zero turns the limit off
+     * @param burst transactions of a source account at once after an idle time
+     */
+    public void setAccountRate(int rate, int burst) {
+        accountLimit = rateLimit(rate, burst, maxBuckets);
+    }
+
+    private static <K> RateLimit<K> rateLimit(int rate, int burst, int maxBuckets) {
+        return rate > 0 ? new RateLimit<>(rate, burst, maxBuckets) : null;
+    }
+
+    /**
+     * Checks the queue depth only, e.g. before reading a batch whose transactions are admitted one by one.
+     *
+     * @return {@link #ADMITTED} or the seconds to wait before a retry
+     */
+    public long checkQueueDepth() {
+        if (maxQueueDepth > 0 && queueDepth.getAsInt() >= maxQueueDepth) {
+            rejected[Rejection.QUEUE_DEPTH.ordinal()].increment();
+            return retryAfterSeconds;
+        }
+        return ADMITTED;
+    }
+
+    /**
+     * Admits a transaction, taking a token of the client and one of the source account.
+     *
+     * @param client identifies the producer, e.g. its address, null if unknown
+     * @param accountId source account, null if unknown
+     * @return {@link #ADMITTED} or the seconds to wait before a retry
+     */
+    public long admit(String client, Long accountId) {
+        long retryAfter = checkQueueDepth();
+        if (retryAfter != ADMITTED) {
+            return retryAfter;
+        }
+        long now = System.nanoTime();
+        RateLimit<String> clients = clientLimit;
+        RateLimit<Long> accounts = accountLimit;
+        TokenBucket clientBucket = null;
+        if (clients != null && client != null) {
+            clientBucket = clients.getBucket(client, now);
+            long waitNanos = clientBucket.tryTake(1, now);
+            if (waitNanos > 0) {
+                rejected[Rejection.CLIENT_RATE.ordinal()].increment();
+                return toSeconds(waitNanos);
+            }
+        }
+        if (accounts != null && accountId != null) {
+            TokenBucket accountBucket = accounts.getBucket(accountId, now);
+            long waitNanos = accountBucket.tryTake(1, now);
+            if (waitNanos > 0) {
+                if (clientBucket != null) {
+                    clientBucket.giveBack(1);
+                }
+                rejected[Rejection.ACCOUNT_RATE.ordinal()].increment();
+                return toSeconds(waitNanos);
+            }
+        }
+        return ADMITTED;
+    }
+
+    public long getRejectedCount(Rejection rejection) {
+        return rejected[rejection.ordinal()].sum();
+    }
+
+    /**
+     * @return the seconds for the Retry-After header, at least one
+     */
+    private static long toSeconds(long nanos) {
+        return Math.max(1, (nanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * Rate and the buckets of the clients or of the accounts, replaced as a whole when the rate changes.
+     */
+    private static final class RateLimit<K> {
+        private final int rate;
+        private final int burst;
+        private final Cache<K, TokenBucket> buckets;
+
+        private RateLimit(int rate, int burst, int maxBuckets) {
+            this.rate = rate;
+            this.burst = burst;
+            // A bucket idle for its refill time is full, so it is the same as a new one
+            long refillNanos = TimeUnit.SECONDS.toNanos(1) / rate * burst;
+            this.buckets = Caffeine.newBuilder()
+                    .maximumSize(maxBuckets)
+                    .expireAfterAccess(Duration.ofNanos(Math.max(refillNanos, TimeUnit.SECONDS.toNanos(1))))
+                    .build();
+        }
+
+        private TokenBucket getBucket(K key, long now) {
+            return buckets.get(key, ignored -> new TokenBucket(rate, burst, now));
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package org.lightquark.moneytransfer.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.lightquark.moneytransfer.config.Config;
+import org.lightquark.moneytransfer.model.Transaction;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Transactions created by the requests with an Idempotency-Key, so a repeated request gets the original transaction
+ * instead of creating a new one. The count of keys is bounded, the least valuable ones are evicted first
+ * (Caffeine's W-TinyLFU), and a key is forgotten once its time to live is over.
+ * <p>
+ * A key maps to the future of the transaction, so the first request creates the transaction outside the cache
+ * and the repeated requests which come meanwhile wait for it.
+ */
+@Slf4j
+public class IdempotencyCache {
+
+    public static final int MAX_KEY_LENGTH = 255;
+
+    private static final String MAX_SIZE_PROPERTY = "idempotency_cache_size";
+    private static final int DEFAULT_MAX_SIZE = 100_000;
+    private static final String TTL_PROPERTY = "idempotency_ttl_seconds";
+    private static final int DEFAULT_TTL = 3600;
+
+    private static final IdempotencyCache INSTANCE = new IdempotencyCache(
+            Config.getInteger(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE),
+            Duration.ofSeconds(Config.getInteger(TTL_PROPERTY, DEFAULT_TTL)));
+
+    public static IdempotencyCache getInstance() {
+        return INSTANCE;
+    }
+
+    private final Cache<String, CompletableFuture<Transaction>> cache;
+    private final LongAdder repeated = new LongAdder();
+
+    public IdempotencyCache(long maxSize, Duration ttl) {
+        log.info("Idempotency cache, max size {}, time to live {}", maxSize, ttl);
+        cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    /**
+     * @param created completed by the caller with the created transaction, or with null if none is created
+     * @return the future of the first request with the key, or null if this request is the first one
+     */
+    public CompletableFuture<Transaction> putIfAbsent(String key, CompletableFuture<Transaction> created) {
+        CompletableFuture<Transaction> original = cache.asMap().putIfAbsent(key, created);
+        if (original != null) {
+            repeated.increment();
+        }
+        return original;
+    }
+
+    /**
+     * Forgets the key of a request which has not created a transaction, so it can be repeated.
+     */
+    public void remove(String key, CompletableFuture<Transaction> created) {
+        cache.asMap().remove(key, created);
+    }
+
+    /**
+     * @return approximate count of the keys
+     */
+    public long getSize() {
+        return cache.estimatedSize();
+    }
+
+    /**
+     * @return count of the requests with an already known key
+     */
+    public long getRepeatedCount() {
+        return repeated.sum();
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+}
@@ -0,0 +1,110 @@
+package org.lightquark.moneytransfer.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Stops the processing at a cut of the pending transactions, e.g. to copy the accounts consistently while the
+ * transactions keep arriving. The cut is a count of transactions taken from every partition: the worker of
+ * a partition stops once it has taken and finished its count and waits there until the action is done.
+ * <p>
+ * The workers check the barrier before taking every transaction, which costs a volatile read while no barrier
+ * is set.
+ */
+@Slf4j
+public class ProcessingBarrier {
+
+    private static final ProcessingBarrier INSTANCE = new ProcessingBarrier();
+
+    public static ProcessingBarrier getInstance() {
+        return INSTANCE;
+    }
+
+    private volatile Round round;
+
+    /**
+     * Runs the action once the worker of every partition has processed the given count of transactions and
+     * stopped. At most one action runs at a time.
+     *
+     * @param takenCounts count of the transactions taken from every partition before the cut
+     * @param wakeUp wakes up the idle workers, so they see the barrier
+     * @return result of the action or null if the workers have not stopped within the timeout, or some transaction
+     *         before the cut waits for a transaction after it, the action is not run then
+     */
+    public synchronized <T> T runAt(long[] takenCounts, Runnable wakeUp, long timeoutNanos, Supplier<T> action) {
+        Round current = new Round(takenCounts);
+        round = current;
+        try {
+            wakeUp.run();
+            if (!current.arrived.await(timeoutNanos, TimeUnit.NANOSECONDS)) {
+                log.info("Processing has not reached the barrier within {} ms, {} partitions are left",
+                        TimeUnit.NANOSECONDS.toMillis(timeoutNanos), current.arrived.getCount());
+                return null;
+            }
+            if (!current.complete) {
+                log.info("Processing has reached the barrier with postponed transactions");
+                return null;
+            }
+            return action.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            // The round is cleared before the release, so a released worker does not stop at it again
+            round = null;
+            current.released.countDown();
+        }
+    }
+
+    /**
+     * Called by the worker of the partition before it takes a transaction.
+     *
+     * @param taken count of the transactions taken from the partition so far
+     * @return true if the worker must not take the next transaction, as it is after the cut
+     */
+    boolean isReached(int partition, long taken) {
+        Round current = round;
+        return current != null && current.takenCounts[partition] <= taken;
+    }
+
+    /**
+     * Called by the worker of the partition once it {@link #isReached reached} the barrier and has no transaction
+     * to retry. Blocks until the action is done.
+     *
+     * @param complete false if the worker keeps a transaction before the cut postponed
+     */
+    void arrive(int partition, boolean complete) {
+        Round current = round;
+        if (current == null || current.takenCounts[partition] == Round.ARRIVED) {
+            return;
+        }
+        current.takenCounts[partition] = Round.ARRIVED;
+        if (!complete) {
+            current.complete = false;
+        }
+        current.arrived.countDown();
+        try {
+            current.released.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Round {
+        // Marks the partition whose worker has arrived, so it takes the transactions after the cut once released
+        private static final long ARRIVED = Long.MAX_VALUE;
+
+        private final long[] takenCounts;
+        private final CountDownLatch arrived;
+        private final CountDownLatch released = new CountDownLatch(1);
+        private volatile boolean complete = true;
+
+        private Round(long[] takenCounts) {
+            this.takenCounts = takenCounts.clone();
+            this.arrived = new CountDownLatch(takenCounts.length);
+        }
+    }
+}
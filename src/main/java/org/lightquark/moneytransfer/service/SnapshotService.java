@@ -0,0 +1,327 @@
+package org.lightquark.moneytransfer.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.lightquark.moneytransfer.config.Config;
+import org.lightquark.moneytransfer.journal.JournalListener;
+import org.lightquark.moneytransfer.journal.JournalReader;
+import org.lightquark.moneytransfer.journal.SnapshotStore;
+import org.lightquark.moneytransfer.journal.TransactionJournal;
+import org.lightquark.moneytransfer.model.Account;
+import org.lightquark.moneytransfer.model.HotAccount;
+import org.lightquark.moneytransfer.model.Transaction;
+import org.lightquark.moneytransfer.model.TransactionStatus;
+import org.lightquark.moneytransfer.model.TransactionType;
+import org.lightquark.moneytransfer.repository.AccountRepository;
+import org.lightquark.moneytransfer.repository.TransactionRepository;
+import org.lightquark.moneytransfer.util.ThreadUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Takes periodic snapshots of the accounts and recovers the accounts on launch from the latest snapshot and
+ * the tail of the journal written after it. Works only with the journal enabled.
+ */
+@Slf4j
+public class SnapshotService {
+
+    private static final String DIRECTORY_PROPERTY = "snapshot_directory";
+    private static final String DEFAULT_DIRECTORY = "snapshots";
+    private static final String INTERVAL_PROPERTY = "snapshot_interval_seconds";
+    private static final int DEFAULT_INTERVAL = 60;
+    private static final String QUIESCE_TIMEOUT_PROPERTY = "snapshot_quiesce_timeout_millis";
+    private static final int DEFAULT_QUIESCE_TIMEOUT = 1000;
+    private static final int REPLAY_BATCH_SIZE = 4096;
+
+    private static final SnapshotService INSTANCE = new SnapshotService(TransactionJournal.getInstance(),
+            new SnapshotStore(Paths.get(Config.getString(DIRECTORY_PROPERTY, DEFAULT_DIRECTORY))),
+            TimeUnit.MILLISECONDS.toNanos(Config.getInteger(QUIESCE_TIMEOUT_PROPERTY, DEFAULT_QUIESCE_TIMEOUT)));
+
+    public static SnapshotService getInstance() {
+        return INSTANCE;
+    }
+
+    private AccountRepository accountRepository = AccountRepository.getInstance();
+    private TransactionRepository transactionRepository = TransactionRepository.getInstance();
+    private ProcessingBarrier processingBarrier = ProcessingBarrier.getInstance();
+    private final TransactionJournal transactionJournal;
+    private final SnapshotStore snapshotStore;
+    private final long quiesceTimeoutNanos;
+    // Journal offset of the latest snapshot written by this service
+    private volatile long snapshotOffset = -1;
+
+    /**
+     * @param transactionJournal the journal whose transactions are passed on to {@link TransactionRepository}
+     * @param quiesceTimeoutNanos how long a snapshot waits for the processing to reach the end of the journal
+     */
+    public SnapshotService(TransactionJournal transactionJournal, SnapshotStore snapshotStore,
+            long quiesceTimeoutNanos) {
+        this.transactionJournal = transactionJournal;
+        this.snapshotStore = snapshotStore;
+        this.quiesceTimeoutNanos = quiesceTimeoutNanos;
+    }
+
+    /**
+     * Schedules the snapshots, a non-positive interval disables them.
+     */
+    public void start() {
+        int interval = Config.getInteger(INTERVAL_PROPERTY, DEFAULT_INTERVAL);
+        if (!transactionJournal.isEnabled() || interval <= 0) {
+            return;
+        }
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                takeSnapshot();
+            } catch (IOException | RuntimeException e) {
+                log.error("Failed taking snapshot", e);
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+        log.info("Snapshots are taken every {} seconds", interval);
+    }
+
+    /**
+     * Takes a snapshot without stopping the intake. The journal is paused only to read its offset and the count of
+     * transactions it has passed on to every partition. Then every processing thread stops once it has processed
+     * its part of them, the accounts are copied and the processing goes on, while the transactions keep being
+     * journaled and queued meanwhile. So the copy holds exactly the transactions journaled before the offset.
+     * The snapshot is skipped if the processing does not reach the offset within the quiesce timeout.
+     *
+     * @return true if the snapshot is taken, there is no new snapshot while the journal has not changed
+     */
+    public boolean takeSnapshot() throws IOException {
+        if (!transactionJournal.isEnabled()) {
+            return false;
+        }
+        long journalOffset = transactionJournal.pause();
+        long[] addedCounts;
+        try {
+            addedCounts = transactionRepository.getAddedCounts();
+        } finally {
+            transactionJournal.resume();
+        }
+        if (journalOffset == snapshotOffset) {
+            return false;
+        }
+        long[] accounts = processingBarrier.runAt(addedCounts, transactionRepository::signalAll, quiesceTimeoutNanos,
+                this::copyAccounts);
+        if (accounts == null) {
+            log.info("Snapshot is skipped, the processing has not reached journal offset {}", journalOffset);
+            return false;
+        }
+        snapshotStore.write(journalOffset, accounts);
+        snapshotOffset = journalOffset;
+        return true;
+    }
+
+    private long[] copyAccounts() {
+        List<Account> all = accountRepository.findAll();
+        long[] accounts = new long[all.size() * SnapshotStore.ACCOUNT_FIELDS];
+        int i = 0;
+        for (Account account : all) {
+            accounts[i++] = account.getId();
+            accounts[i++] = account.getBalanceMinor();
+            accounts[i++] = account.getLastTransactionId();
+            accounts[i++] = account.isHot() ? SnapshotStore.FLAG_HOT : 0;
+        }
+        return accounts;
+    }
+
+    /**
+     * Loads the latest snapshot and replays the journal written after it. The replayed transactions are processed
+     * by {@link TransactionProcessor} in parallel by partitions, so it must be started before. The tail is read
+     * twice, the first pass collects the outcomes journaled for the transactions, see {@link Replay}.
+     */
+    public void recover() throws IOException {
+        if (!transactionJournal.isEnabled()) {
+            return;
+        }
+        long start = System.nanoTime();
+        SnapshotStore.Snapshot snapshot = snapshotStore.readLatest();
+        long journalOffset = 0;
+        if (snapshot != null) {
+            accountRepository.clear();
+            long[] accounts = snapshot.getAccounts();
+            for (int i = 0; i < accounts.length; i += SnapshotStore.ACCOUNT_FIELDS) {
+                accountRepository.save((accounts[i + 3] & SnapshotStore.FLAG_HOT) != 0
+                        ? new HotAccount(accounts[i], accounts[i + 1], accounts[i + 2])
+                        : new Account(accounts[i], accounts[i + 1], accounts[i + 2]));
+                Account.reserveIds(accounts[i]);
+            }
+            journalOffset = snapshot.getJournalOffset();
+            log.info("Loaded snapshot of {} accounts", accounts.length / SnapshotStore.ACCOUNT_FIELDS);
+        } else if (Files.size(transactionJournal.getFile()) > 0) {
+            // Without a snapshot the whole journal is replayed, the accounts kept elsewhere would be counted twice
+            accountRepository.clear();
+        } else {
+            return;
+        }
+
+        TailIndex tailIndex = new TailIndex();
+        JournalReader.read(transactionJournal.getFile(), journalOffset, tailIndex);
+        Replay replay = new Replay(tailIndex);
+        long end = JournalReader.read(transactionJournal.getFile(), journalOffset, replay);
+        replay.fillGaps();
+        replay.flush();
+        for (Account account : accountRepository.findAll()) {
+            account.reserveTransactionIds(account.getLastTransactionId());
+        }
+        log.info("Replayed {} transactions ({} bytes of the journal) in {} ms, {} with the recorded status, "
+                + "{} ids missing", replay.count, end - journalOffset,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), replay.recordedCount, replay.gapCount);
+    }
+
+    /**
+     * Transactions of the journal tail of an account, keyed by the id.
+     */
+    private static final class AccountTail {
+        private final Set<Long> journaled = new HashSet<>();
+        private final Map<Long, Transaction> outcomes = new HashMap<>();
+        // Greatest id passed to the processing or checked for a gap, -1 before the first transaction is replayed
+        private long replayedId = -1;
+    }
+
+    /**
+     * The first pass over the tail, collects the ids of the transactions and their outcomes.
+     */
+    private static final class TailIndex implements JournalListener {
+
+        private final Map<Long, AccountTail> tails = new HashMap<>();
+
+        @Override
+        public void onTransaction(Transaction transaction) {
+            tailOf(transaction.getSourceAccountId()).journaled.add(transaction.getId());
+        }
+
+        @Override
+        public void onOutcome(Transaction transaction) {
+            tailOf(transaction.getSourceAccountId()).outcomes.put(transaction.getId(), transaction);
+        }
+
+        private AccountTail tailOf(Long accountId) {
+            return tails.computeIfAbsent(accountId, id -> new AccountTail());
+        }
+    }
+
+    /**
+     * Passes the transactions to the processing in batches. The account events are applied in the journal order,
+     * so a deletion waits for the transactions before it.
+     * <p>
+     * A transaction with a journaled outcome gets it applied, see {@link Transaction#getRecordedStatus()}, the rest
+     * are decided again. The ids of an account missing from the journal, left by failed writes or by a crash
+     * between taking an id and journaling it, are replayed as invalid, so the transactions after them are not
+     * postponed forever. A failed write has its outcome journaled, other missing ids become empty deposits.
+     */
+    private class Replay implements JournalListener {
+
+        private final List<Transaction> pending = new ArrayList<>(REPLAY_BATCH_SIZE);
+        private final Map<Long, AccountTail> tails;
+        private long count;
+        private long recordedCount;
+        private long gapCount;
+
+        private Replay(TailIndex tailIndex) {
+            this.tails = tailIndex.tails;
+        }
+
+        @Override
+        public void onTransaction(Transaction transaction) {
+            Account account = accountRepository.find(transaction.getSourceAccountId());
+            if (account != null && transaction.getId() <= account.getLastTransactionId()) {
+                return;
+            }
+            AccountTail tail = tails.computeIfAbsent(transaction.getSourceAccountId(), id -> new AccountTail());
+            if (account != null) {
+                fillGaps(account, tail, transaction.getId());
+            }
+            Transaction outcome = tail.outcomes.get(transaction.getId());
+            if (outcome != null) {
+                transaction.setRecordedStatus(outcome.getStatus());
+                recordedCount++;
+            }
+            add(transaction);
+        }
+
+        @Override
+        public void onAccountCreated(long accountId, boolean hot) {
+            if (accountRepository.find(accountId) == null) {
+                accountRepository.save(hot ? new HotAccount(accountId, 0, 0) : new Account(accountId, 0, 0));
+            }
+            Account.reserveIds(accountId);
+        }
+
+        @Override
+        public void onAccountDeleted(long accountId) {
+            flush();
+            accountRepository.delete(accountId);
+        }
+
+        /**
+         * Replays the ids missing before the given one, which are not journaled later either.
+         */
+        private void fillGaps(Account account, AccountTail tail, long id) {
+            if (tail.replayedId < 0) {
+                // Nothing of the account is replayed yet, so its last transaction id is the one of the snapshot
+                tail.replayedId = account.getLastTransactionId();
+            }
+            for (long missing = tail.replayedId + 1; missing < id; missing++) {
+                if (!tail.journaled.contains(missing)) {
+                    Transaction outcome = tail.outcomes.get(missing);
+                    Transaction tombstone = outcome != null ? outcome : new Transaction(missing,
+                            TransactionType.DEPOSIT, TransactionStatus.UNPROCESSED, account.getId(), null, 0);
+                    tombstone.setStatus(TransactionStatus.UNPROCESSED);
+                    tombstone.setRecordedStatus(TransactionStatus.INVALID);
+                    add(tombstone);
+                    gapCount++;
+                }
+            }
+            tail.replayedId = Math.max(tail.replayedId, id);
+        }
+
+        /**
+         * Replays the failed writes after the last journaled transaction of every account, so their ids are not
+         * taken again.
+         */
+        private void fillGaps() {
+            for (Map.Entry<Long, AccountTail> entry : tails.entrySet()) {
+                Account account = accountRepository.find(entry.getKey());
+                AccountTail tail = entry.getValue();
+                long lastId = tail.outcomes.keySet().stream().mapToLong(Long::longValue).max().orElse(0);
+                if (account != null && lastId > 0) {
+                    fillGaps(account, tail, lastId + 1);
+                }
+            }
+        }
+
+        private void add(Transaction transaction) {
+            // The decided status is journaled again, so the next replay does not decide it differently
+            if (transaction.getRecordedStatus() == null && transactionJournal.isEnabled()) {
+                transaction.whenProcessed(transactionJournal::appendOutcome);
+            }
+            pending.add(transaction);
+            count++;
+            if (pending.size() == REPLAY_BATCH_SIZE) {
+                transactionRepository.saveAll(pending);
+                pending.clear();
+            }
+        }
+
+        private void flush() {
+            transactionRepository.saveAll(pending);
+            pending.clear();
+            while (transactionRepository.getSize() > 0) {
+                ThreadUtils.sleep(1);
+            }
+        }
+    }
+}
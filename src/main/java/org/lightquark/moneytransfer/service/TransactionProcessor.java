@@ -2,201 +2,406 @@ package org.lightquark.moneytransfer.service;
 
 import lombok.extern.slf4j.Slf4j;
 import org.lightquark.moneytransfer.config.Config;
+import org.lightquark.moneytransfer.history.TransactionHistory;
+import org.lightquark.moneytransfer.metrics.TransactionMetrics;
 import org.lightquark.moneytransfer.model.Account;
 import org.lightquark.moneytransfer.model.Transaction;
 import org.lightquark.moneytransfer.model.TransactionStatus;
+import org.lightquark.moneytransfer.model.TransactionType;
 import org.lightquark.moneytransfer.repository.TransactionRepository;
+import org.lightquark.moneytransfer.trace.EventRecorder;
+import org.lightquark.moneytransfer.trace.TraceEvent;
+import org.lightquark.moneytransfer.util.BackoffIdleStrategy;
 import org.lightquark.moneytransfer.util.ThreadUtils;
 import org.lightquark.moneytransfer.util.TransactionUtils;
+import org.lightquark.moneytransfer.util.TransferLockManager;
 
-import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Slf4j
 public class TransactionProcessor {
 
-    private static final long WAIT_TIMEOUT = 1000;
-    private static final String THREAD_COUNT_PROPERTY = "transaction_processing_threads";
-    private static final int DEFAULT_THREAD_COUNT = 1;
+    private static final String IDLE_SPINS_PROPERTY = "transaction_idle_spins";
+    private static final int DEFAULT_IDLE_SPINS = 100;
+    private static final String IDLE_YIELDS_PROPERTY = "transaction_idle_yields";
+    private static final int DEFAULT_IDLE_YIELDS = 10;
+    private static final String IDLE_PARK_TIMEOUT_PROPERTY = "transaction_idle_park_timeout";
+    private static final int DEFAULT_IDLE_PARK_TIMEOUT = 1000;
+    // Every partition must be drained by a single thread, so the processing can be started only once
+    private static final AtomicBoolean STARTED = new AtomicBoolean();
+    private static final String RETRY_MIN_DELAY_PROPERTY = "transfer_retry_min_delay_micros";
+    private static final int DEFAULT_RETRY_MIN_DELAY = 100;
+    private static final String RETRY_MAX_DELAY_PROPERTY = "transfer_retry_max_delay_micros";
+    private static final int DEFAULT_RETRY_MAX_DELAY = 10000;
 
     private TransactionRepository transactionRepository = TransactionRepository.getInstance();
     private AccountService accountService = AccountService.getInstance();
+    private TransactionHistory transactionHistory = TransactionHistory.getInstance();
+    private TransferLockManager lockManager = TransferLockManager.getInstance();
+    private TransactionMetrics transactionMetrics = TransactionMetrics.getInstance();
+    private EventRecorder eventRecorder = EventRecorder.getInstance();
+    private ProcessingBarrier processingBarrier = ProcessingBarrier.getInstance();
 
     public void start() {
-        Integer threadCount = Config.getInteger(THREAD_COUNT_PROPERTY, DEFAULT_THREAD_COUNT);
-        log.info("Started processing of transactions. Thread's count {}", threadCount);
-
-        for (int i = 0; i < threadCount; i++) {
-            ThreadUtils.runThread(getRunnable());
+        if (!STARTED.compareAndSet(false, true)) {
+            log.warn("Processing of transactions is already started");
+            return;
         }
-    }
 
-    private Runnable getRunnable() {
-        return () -> {
-            // This process will work until the application is stopped
-            while (true) {
-                Transaction transaction = transactionRepository.getNext();
-                if (transaction == null) {
-                    log.debug("Thread is waiting for transactions {}", ThreadUtils.getThreadInfo());
-                    ThreadUtils.sleep(WAIT_TIMEOUT);
-                } else {
-                    processTransaction(transaction);
-                }
-            }
-        };
+        int partitionCount = transactionRepository.getPartitionCount();
+        log.info("Started processing of transactions. Thread's count {}", partitionCount);
+
+        for (int i = 0; i < partitionCount; i++) {
+            ThreadUtils.runThread(new PartitionWorker(i));
+        }
     }
 
-    private void processTransaction(Transaction transaction) {
-        log.info("Process transaction {}", transaction);
+    /**
+     * @return false if the locks of the accounts are not taken, the transaction stays unprocessed then
+     */
+    private boolean processTransaction(Transaction transaction) {
+        log.debug("Process transaction {}", transaction);
         if (transaction.getStatus() != TransactionStatus.UNPROCESSED) {
-            log.info("Skipping transaction because it is already processed {}", transaction);
-            return;
+            log.debug("Skipping transaction because it is already processed {}", transaction);
+            eventRecorder.record(TraceEvent.SKIPPED, transaction);
+            return true;
+        }
+        if (transaction.getRecordedStatus() != null) {
+            applyRecordedStatus(transaction);
+            return true;
         }
 
         switch (transaction.getType()) {
             case DEPOSIT:
-                deposit(transaction);
-                break;
+                return deposit(transaction);
             case WITHDRAW:
-                withdraw(transaction);
-                break;
+                return withdraw(transaction);
             case TRANSFER:
-                transfer(transaction);
-                break;
+                return transfer(transaction);
+            default:
+                return true;
         }
     }
 
-    private void deposit(Transaction transaction) {
-        if (transaction.getSourceAccountId() == null
-                || transaction.getAmount() == null || BigDecimal.ZERO.compareTo(transaction.getAmount()) >= 0) {
-            log.info("Invalid transaction params {}", transaction);
+    /**
+     * The transaction was decided before a restart, so it is not decided again against the balances of the replay:
+     * a transfer may have been credited in another partition before a withdrawal which relied on it.
+     */
+    private void applyRecordedStatus(Transaction transaction) {
+        if (transaction.getRecordedStatus() == TransactionStatus.COMPLETED) {
+            long amount = transaction.getAmountMinor();
+            Account sourceAccount = accountService.find(transaction.getSourceAccountId());
+            if (sourceAccount != null) {
+                sourceAccount.add(transaction.getType() == TransactionType.DEPOSIT ? amount : -amount);
+            }
+            Account destinationAccount = transaction.getType() == TransactionType.TRANSFER
+                    ? accountService.find(transaction.getDestinationAccountId()) : null;
+            if (destinationAccount != null) {
+                destinationAccount.add(amount);
+            }
+        }
+        transaction.setStatus(transaction.getRecordedStatus());
+        log.debug("Transaction {} is replayed with its recorded status", transaction);
+        eventRecorder.record(TraceEvent.REPLAYED, transaction);
+    }
+
+    private boolean deposit(Transaction transaction) {
+        if (transaction.getSourceAccountId() == null || transaction.getAmountMinor() <= 0) {
+            log.debug("Invalid transaction params {}", transaction);
+            eventRecorder.record(TraceEvent.INVALID_PARAMS, transaction);
             transaction.setStatus(TransactionStatus.INVALID);
-            return;
+            return true;
         }
 
         Account account = accountService.find(transaction.getSourceAccountId());
         if (account == null) {
-            log.info("Invalid account id. Transaction {}", transaction);
+            log.debug("Invalid account id. Transaction {}", transaction);
+            eventRecorder.record(TraceEvent.INVALID_ACCOUNT, transaction);
             transaction.setStatus(TransactionStatus.INVALID);
-            return;
+            return true;
         }
 
-        TransactionUtils.doWithLock(account, transaction, this::processDepositTransaction);
+        // A deposit touches a single balance, so it needs no lock, see Account#credit
+        processDepositTransaction(account, transaction);
+        return true;
     }
 
     private void processDepositTransaction(Account account, Transaction transaction) {
-        if (havePrecedingTransactions(account, transaction)) {
-            return;
-        }
-
-        if (transaction.getAmount() == null || BigDecimal.ZERO.compareTo(transaction.getAmount()) >= 0) {
-            log.info("Invalid amount. Transaction {}", transaction);
+        if (!account.credit(transaction.getAmountMinor())) {
+            log.debug("Balance overflow. Transaction {}, account balance {}", transaction, account.getBalance());
+            eventRecorder.record(TraceEvent.BALANCE_OVERFLOW, transaction, account.getBalanceMinor());
             transaction.setStatus(TransactionStatus.INVALID);
             return;
         }
 
-        account.setBalance(account.getBalance().add(transaction.getAmount()));
-        account.setLastTransactionId(transaction.getId());
         transaction.setStatus(TransactionStatus.COMPLETED);
-        log.info("Transaction {} completed successfully", transaction);
+        log.debug("Transaction {} completed successfully", transaction);
+        eventRecorder.record(TraceEvent.COMPLETED, transaction);
     }
 
-    private void withdraw(Transaction transaction) {
-        if (transaction.getSourceAccountId() == null
-                || transaction.getAmount() == null || BigDecimal.ZERO.compareTo(transaction.getAmount()) >= 0) {
-            log.info("Invalid transaction params {}", transaction);
+    private boolean withdraw(Transaction transaction) {
+        if (transaction.getSourceAccountId() == null || transaction.getAmountMinor() <= 0) {
+            log.debug("Invalid transaction params {}", transaction);
+            eventRecorder.record(TraceEvent.INVALID_PARAMS, transaction);
             transaction.setStatus(TransactionStatus.INVALID);
-            return;
+            return true;
         }
 
         Account account = accountService.find(transaction.getSourceAccountId());
         if (account == null) {
-            log.info("Invalid account id. Transaction {}", transaction);
+            log.debug("Invalid account id. Transaction {}", transaction);
+            eventRecorder.record(TraceEvent.INVALID_ACCOUNT, transaction);
             transaction.setStatus(TransactionStatus.INVALID);
-            return;
+            return true;
         }
 
-        TransactionUtils.doWithLock(account, transaction, this::processWithdrawTransaction);
+        processWithdrawTransaction(account, transaction);
+        return true;
     }
 
     private void processWithdrawTransaction(Account account, Transaction transaction) {
-        if (havePrecedingTransactions(account, transaction)) {
-            return;
-        }
-
-        if (transaction.getAmount() == null || BigDecimal.ZERO.compareTo(transaction.getAmount()) >= 0
-                || account.getBalance().compareTo(transaction.getAmount()) < 0) {
-            log.info("Invalid amount. Transaction {}, account balance {}", transaction, account.getBalance());
+        if (!account.debit(transaction.getAmountMinor())) {
+            log.debug("Invalid amount. Transaction {}, account balance {}", transaction, account.getBalance());
+            eventRecorder.record(TraceEvent.INSUFFICIENT_FUNDS, transaction, account.getBalanceMinor());
             transaction.setStatus(TransactionStatus.INVALID);
             return;
         }
 
-        account.setBalance(account.getBalance().subtract(transaction.getAmount()));
-        account.setLastTransactionId(transaction.getId());
         transaction.setStatus(TransactionStatus.COMPLETED);
-        log.info("Transaction {} completed successfully", transaction);
+        log.debug("Transaction {} completed successfully", transaction);
+        eventRecorder.record(TraceEvent.COMPLETED, transaction);
     }
 
-    private void transfer(Transaction transaction) {
+    private boolean transfer(Transaction transaction) {
         if (transaction.getSourceAccountId() == null || transaction.getDestinationAccountId() == null
                 || transaction.getSourceAccountId().equals(transaction.getDestinationAccountId())
-                || transaction.getAmount() == null || BigDecimal.ZERO.compareTo(transaction.getAmount()) >= 0) {
-            log.info("Invalid transaction params {}", transaction);
+                || transaction.getAmountMinor() <= 0) {
+            log.debug("Invalid transaction params {}", transaction);
+            eventRecorder.record(TraceEvent.INVALID_PARAMS, transaction);
             transaction.setStatus(TransactionStatus.INVALID);
-            return;
+            return true;
         }
 
         Account sourceAccount = accountService.find(transaction.getSourceAccountId());
         if (sourceAccount == null) {
-            log.info("Invalid source account id. Transaction {}", transaction);
+            log.debug("Invalid source account id. Transaction {}", transaction);
+            eventRecorder.record(TraceEvent.INVALID_ACCOUNT, transaction);
             transaction.setStatus(TransactionStatus.INVALID);
-            return;
+            return true;
         }
         // For simplicity, I do not consider the case when sourceAccount is deleted before this line (due to concurrency issues)
         Account destinationAccount = accountService.find(transaction.getDestinationAccountId());
         if (destinationAccount == null) {
-            log.info("Invalid destination account id. Transaction {}", transaction);
+            log.debug("Invalid destination account id. Transaction {}", transaction);
+            eventRecorder.record(TraceEvent.INVALID_DESTINATION_ACCOUNT, transaction);
             transaction.setStatus(TransactionStatus.INVALID);
-            return;
+            return true;
         }
 
-        TransactionUtils.doWithLock(sourceAccount, destinationAccount, transaction, this::processTransferTransaction);
+        if (destinationAccount.isHot()) {
+            // Credits of a hot account take no lock, so only the source account is locked
+            return TransactionUtils.doWithLock(sourceAccount, transaction, (account, lockedTransaction) ->
+                    processTransferTransaction(account, destinationAccount, lockedTransaction));
+        }
+        return TransactionUtils.doWithLock(sourceAccount, destinationAccount, transaction,
+                this::processTransferTransaction);
     }
 
     private void processTransferTransaction(Account sourceAccount, Account destinationAccount,
             Transaction transaction) {
-        if (havePrecedingTransactions(sourceAccount, transaction)) {
+        // Deposits and withdrawals change the balances without the locks, so the balances are changed atomically too
+        if (!sourceAccount.debit(transaction.getAmountMinor())) {
+            log.debug("Invalid amount. Transaction {}, source account balance {}", transaction,
+                    sourceAccount.getBalance());
+            eventRecorder.record(TraceEvent.INSUFFICIENT_FUNDS, transaction, sourceAccount.getBalanceMinor());
+            transaction.setStatus(TransactionStatus.INVALID);
             return;
         }
-
-        if (transaction.getAmount() == null || BigDecimal.ZERO.compareTo(transaction.getAmount()) >= 0
-                || sourceAccount.getBalance().compareTo(transaction.getAmount()) < 0) {
-            log.info("Invalid amount. Transaction {}, source account balance {}", transaction,
-                    sourceAccount.getBalance());
+        if (!destinationAccount.credit(transaction.getAmountMinor())) {
+            log.debug("Balance overflow. Transaction {}, destination account balance {}", transaction,
+                    destinationAccount.getBalance());
+            eventRecorder.record(TraceEvent.BALANCE_OVERFLOW, transaction, destinationAccount.getBalanceMinor());
+            // The amount has just been debited, so it is put back even if credits have raised the balance since
+            sourceAccount.add(transaction.getAmountMinor());
             transaction.setStatus(TransactionStatus.INVALID);
             return;
         }
 
-        sourceAccount.setBalance(sourceAccount.getBalance().subtract(transaction.getAmount()));
-        destinationAccount.setBalance(destinationAccount.getBalance().add(transaction.getAmount()));
-        sourceAccount.setLastTransactionId(transaction.getId());
         transaction.setStatus(TransactionStatus.COMPLETED);
-        log.info("Transaction {} completed successfully", transaction);
+        log.debug("Transaction {} completed successfully", transaction);
+        eventRecorder.record(TraceEvent.COMPLETED, transaction);
     }
 
     /**
-     * Let's imagine that we two transactions: A and B.
-     * Sometimes, due to concurrency issues, we may start processing B before A. This is incorrect,
-     * so we must return B into the storage and release the thread for another transactions.
-     * @return true, if the transaction should be processed later
+     * Drains a single partition of {@link TransactionRepository}. It is the only thread which processes transactions
+     * of the accounts belonging to the partition, so the transactions of an account are never processed concurrently.
      */
-    private boolean havePrecedingTransactions(Account account, Transaction transaction) {
-        if (account.getLastTransactionId() + 1 != transaction.getId()) {
-            log.debug("Firstly, we need to process the previous transactions. Transaction {}, Account {}, thread {}",
-                    transaction, account, ThreadUtils.getThreadInfo());
-            transactionRepository.pushBack(transaction);
+    private class PartitionWorker implements Runnable {
+
+        private final int partition;
+        private final BackoffIdleStrategy idleStrategy = new BackoffIdleStrategy(
+                Config.getInteger(IDLE_SPINS_PROPERTY, DEFAULT_IDLE_SPINS),
+                Config.getInteger(IDLE_YIELDS_PROPERTY, DEFAULT_IDLE_YIELDS));
+        private final long parkTimeout = TimeUnit.MILLISECONDS.toNanos(
+                Config.getInteger(IDLE_PARK_TIMEOUT_PROPERTY, DEFAULT_IDLE_PARK_TIMEOUT));
+        private final Runnable parker = this::park;
+        /**
+         * Let's imagine that we have two transactions of the same account: A and B.
+         * Sometimes, due to concurrency issues, B is saved into the storage before A. We must not process B before A,
+         * so B waits here (keyed by account id and transaction id) until A is processed.
+         */
+        private final Map<Long, Map<Long, Transaction>> postponed = new HashMap<>();
+        /**
+         * Transactions whose locks were not taken. They wait here with a growing delay, and the following transactions
+         * of the same account are postponed meanwhile, so the order is kept.
+         */
+        private final DelayQueue<Retry> retries = new DelayQueue<>();
+        private final long retryMinDelay = TimeUnit.MICROSECONDS.toNanos(
+                Config.getInteger(RETRY_MIN_DELAY_PROPERTY, DEFAULT_RETRY_MIN_DELAY));
+        private final long retryMaxDelay = TimeUnit.MICROSECONDS.toNanos(
+                Config.getInteger(RETRY_MAX_DELAY_PROPERTY, DEFAULT_RETRY_MAX_DELAY));
+
+        PartitionWorker(int partition) {
+            this.partition = partition;
+        }
+
+        @Override
+        public void run() {
+            // This process will work until the application is stopped
+            while (true) {
+                Retry retry = retries.poll();
+                if (retry != null) {
+                    idleStrategy.reset();
+                    processInOrder(retry.transaction, retry.attempt);
+                    continue;
+                }
+                if (processingBarrier.isReached(partition, transactionRepository.getTakenCount(partition))) {
+                    // The transactions before the barrier are retried first
+                    if (retries.isEmpty()) {
+                        processingBarrier.arrive(partition, postponed.isEmpty());
+                    } else {
+                        idleStrategy.idle(parker);
+                    }
+                    continue;
+                }
+                Transaction transaction = transactionRepository.getNext(partition);
+                if (transaction == null) {
+                    idleStrategy.idle(parker);
+                } else {
+                    idleStrategy.reset();
+                    processInOrder(transaction, 0);
+                }
+            }
+        }
+
+        private void park() {
+            log.debug("Thread is waiting for transactions {}", ThreadUtils.getThreadInfo());
+            long timeout = parkTimeout;
+            Retry retry = retries.peek();
+            if (retry != null) {
+                timeout = Math.min(timeout, retry.getDelay(TimeUnit.NANOSECONDS));
+            }
+            if (timeout > 0) {
+                transactionRepository.await(partition, timeout);
+            }
+        }
+
+        /**
+         * @param attempt count of the previous attempts to process the transaction
+         */
+        private void processInOrder(Transaction transaction, int attempt) {
+            Long accountId = transaction.getSourceAccountId();
+            Account account = accountId == null ? null : accountService.find(accountId);
+            if (account == null) {
+                process(transaction);
+                // The account is deleted, so nobody will process the postponed transactions
+                Map<Long, Transaction> accountTransactions = accountId == null ? null : postponed.remove(accountId);
+                if (accountTransactions != null) {
+                    accountTransactions.values().forEach(this::process);
+                }
+                return;
+            }
+
+            if (account.getLastTransactionId() + 1 < transaction.getId()) {
+                log.debug("Firstly, we need to process the previous transactions. Transaction {}, Account {}, thread {}",
+                        transaction, account, ThreadUtils.getThreadInfo());
+                postponed.computeIfAbsent(accountId, id -> new HashMap<>()).put(transaction.getId(), transaction);
+                transactionMetrics.recordPostponed();
+                eventRecorder.record(TraceEvent.POSTPONED, transaction);
+                return;
+            }
+
+            Transaction next = transaction;
+            while (next != null) {
+                if (!process(next)) {
+                    scheduleRetry(next, next == transaction ? attempt + 1 : 1);
+                    return;
+                }
+                account.setLastTransactionId(next.getId());
+                next = pollPostponed(accountId, next.getId() + 1);
+            }
+        }
+
+        private Transaction pollPostponed(Long accountId, Long transactionId) {
+            Map<Long, Transaction> accountTransactions = postponed.get(accountId);
+            if (accountTransactions == null) {
+                return null;
+            }
+            Transaction transaction = accountTransactions.remove(transactionId);
+            if (accountTransactions.isEmpty()) {
+                postponed.remove(accountId);
+            }
+            return transaction;
+        }
+
+        /**
+         * @return false if the transaction must be retried later
+         */
+        private boolean process(Transaction transaction) {
+            long start = System.nanoTime();
+            if (!processTransaction(transaction)) {
+                return false;
+            }
+            transactionMetrics.recordProcessed(transaction, System.nanoTime() - start);
+            transactionHistory.append(transaction);
+            transactionRepository.markProcessed(transaction);
+            transaction.markProcessed();
             return true;
         }
-        return false;
+
+        private void scheduleRetry(Transaction transaction, int attempt) {
+            long delay = Math.min(retryMaxDelay, retryMinDelay << Math.min(attempt - 1, 20));
+            log.debug("Transaction {} is retried in {} ns, attempt {}", transaction, delay, attempt);
+            lockManager.recordRetry();
+            eventRecorder.record(TraceEvent.RETRIED, transaction, attempt);
+            retries.add(new Retry(transaction, attempt, System.nanoTime() + delay));
+        }
     }
 
+    private static final class Retry implements Delayed {
+        private final Transaction transaction;
+        private final int attempt;
+        private final long deadline;
+
+        private Retry(Transaction transaction, int attempt, long deadline) {
+            this.transaction = transaction;
+            this.attempt = attempt;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(deadline, ((Retry) other).deadline);
+        }
+    }
 }
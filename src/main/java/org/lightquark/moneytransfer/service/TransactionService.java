@@ -1,17 +1,34 @@
 package org.lightquark.moneytransfer.service;
 
 import lombok.extern.slf4j.Slf4j;
+import org.lightquark.moneytransfer.config.Config;
+import org.lightquark.moneytransfer.history.TransactionHistory;
+import org.lightquark.moneytransfer.journal.TransactionJournal;
 import org.lightquark.moneytransfer.model.Account;
+import org.lightquark.moneytransfer.model.LockStats;
 import org.lightquark.moneytransfer.model.Transaction;
+import org.lightquark.moneytransfer.model.TransactionPage;
 import org.lightquark.moneytransfer.model.TransactionStatus;
 import org.lightquark.moneytransfer.model.TransactionType;
 import org.lightquark.moneytransfer.repository.TransactionRepository;
+import org.lightquark.moneytransfer.trace.EventRecorder;
+import org.lightquark.moneytransfer.trace.TraceEvent;
+import org.lightquark.moneytransfer.util.MoneyUtils;
+import org.lightquark.moneytransfer.util.TransferLockManager;
 
 import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 @Slf4j
 public class TransactionService {
 
+    private static final String COMPLETION_THREADS_PROPERTY = "transaction_completion_threads";
+    private static final int DEFAULT_COMPLETION_THREADS = 2;
+
     private static final TransactionService INSTANCE = new TransactionService();
 
     public static TransactionService getInstance() {
@@ -19,26 +36,143 @@ public class TransactionService {
     }
 
     private TransactionRepository transactionRepository = TransactionRepository.getInstance();
+    private TransactionJournal transactionJournal = TransactionJournal.getInstance();
+    private TransactionHistory transactionHistory = TransactionHistory.getInstance();
+    private EventRecorder eventRecorder = EventRecorder.getInstance();
+    // Completes the futures of submitted transactions, so the processing threads do not run the callers' code
+    private Executor completionExecutor =
+            Executors.newFixedThreadPool(Config.getInteger(COMPLETION_THREADS_PROPERTY, DEFAULT_COMPLETION_THREADS));
 
     public Transaction deposit(Account account, BigDecimal amount) {
-        Transaction transaction = new Transaction(account.getNextTransactionId(), TransactionType.DEPOSIT,
-                TransactionStatus.UNPROCESSED, account.getId(), null, amount);
-        transactionRepository.save(transaction);
-        return transaction;
+        return deposit(account, MoneyUtils.toMinorUnits(amount));
     }
 
     public Transaction withdraw(Account account, BigDecimal amount) {
-        Transaction transaction = new Transaction(account.getNextTransactionId(), TransactionType.WITHDRAW,
-                TransactionStatus.UNPROCESSED, account.getId(), null, amount);
-        transactionRepository.save(transaction);
-        return transaction;
+        return withdraw(account, MoneyUtils.toMinorUnits(amount));
     }
 
     public Transaction transfer(Account sourceAccount, Account destinationAccount, BigDecimal amount) {
-        Transaction transaction = new Transaction(sourceAccount.getNextTransactionId(), TransactionType.TRANSFER,
-                TransactionStatus.UNPROCESSED, sourceAccount.getId(), destinationAccount.getId(), amount);
-        transactionRepository.save(transaction);
+        return transfer(sourceAccount, destinationAccount, MoneyUtils.toMinorUnits(amount));
+    }
+
+    /*
+     * The amounts below are in minor units, see MoneyUtils
+     */
+
+    public Transaction deposit(Account account, long amount) {
+        Transaction transaction = createDeposit(account, amount);
+        save(transaction);
         return transaction;
     }
 
+    public Transaction withdraw(Account account, long amount) {
+        Transaction transaction = createWithdraw(account, amount);
+        save(transaction);
+        return transaction;
+    }
+
+    public Transaction transfer(Account sourceAccount, Account destinationAccount, long amount) {
+        Transaction transaction = createTransfer(sourceAccount, destinationAccount, amount);
+        save(transaction);
+        return transaction;
+    }
+
+    /*
+     * The create methods below take the next transaction id of the account without saving the transaction.
+     * Every created transaction must be passed to save, saveAll or submit, otherwise the following transactions
+     * of the account wait for it forever.
+     */
+
+    public Transaction createDeposit(Account account, long amount) {
+        return new Transaction(account.getNextTransactionId(), TransactionType.DEPOSIT,
+                TransactionStatus.UNPROCESSED, account.getId(), null, amount);
+    }
+
+    public Transaction createWithdraw(Account account, long amount) {
+        return new Transaction(account.getNextTransactionId(), TransactionType.WITHDRAW,
+                TransactionStatus.UNPROCESSED, account.getId(), null, amount);
+    }
+
+    public Transaction createTransfer(Account sourceAccount, Account destinationAccount, long amount) {
+        return new Transaction(sourceAccount.getNextTransactionId(), TransactionType.TRANSFER,
+                TransactionStatus.UNPROCESSED, sourceAccount.getId(), destinationAccount.getId(), amount);
+    }
+
+    /**
+     * Saves a created transaction, with the journal enabled blocks until it is durable.
+     */
+    public void save(Transaction transaction) {
+        eventRecorder.record(TraceEvent.ACCEPTED, transaction);
+        if (transactionJournal.isEnabled()) {
+            transactionJournal.append(transaction);
+        } else {
+            transactionRepository.save(transaction);
+        }
+    }
+
+    /**
+     * With the journal enabled blocks until the transactions are durable, the journal then saves them for processing.
+     */
+    public void saveAll(Collection<Transaction> transactions) {
+        for (Transaction transaction : transactions) {
+            eventRecorder.record(TraceEvent.ACCEPTED, transaction);
+        }
+        if (transactionJournal.isEnabled()) {
+            transactionJournal.appendAll(transactions);
+        } else {
+            transactionRepository.saveAll(transactions);
+        }
+    }
+
+    /**
+     * Saves the created transactions without waiting for the journal.
+     *
+     * @return completes once the transactions are durable and saved for processing
+     */
+    public CompletableFuture<Void> saveAllAsync(Collection<Transaction> transactions) {
+        for (Transaction transaction : transactions) {
+            eventRecorder.record(TraceEvent.ACCEPTED, transaction);
+        }
+        if (transactionJournal.isEnabled()) {
+            return transactionJournal.appendAllAsync(transactions);
+        }
+        transactionRepository.saveAll(transactions);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Saves a created transaction without waiting for the journal.
+     *
+     * @return completes with the transaction once it reaches its final status
+     */
+    public CompletableFuture<Transaction> submit(Transaction transaction) {
+        CompletableFuture<Transaction> processed = whenProcessed(transaction);
+        eventRecorder.record(TraceEvent.ACCEPTED, transaction);
+        if (transactionJournal.isEnabled()) {
+            transactionJournal.appendAllAsync(Collections.singletonList(transaction));
+        } else {
+            transactionRepository.save(transaction);
+        }
+        return processed;
+    }
+
+    /**
+     * @return completes with the saved transaction once it reaches its final status
+     */
+    public CompletableFuture<Transaction> whenProcessed(Transaction transaction) {
+        CompletableFuture<Transaction> processed = new CompletableFuture<>();
+        transaction.whenProcessed(done -> completionExecutor.execute(() -> processed.complete(done)));
+        return processed;
+    }
+
+    /**
+     * @param from cursor returned with the previous page, 0 for the oldest transaction
+     */
+    public TransactionPage findHistory(long accountId, long from, int limit) {
+        return transactionHistory.find(accountId, from, limit);
+    }
+
+    public LockStats getLockStats() {
+        return TransferLockManager.getInstance().getStats();
+    }
 }
@@ -0,0 +1,27 @@
+package org.lightquark.moneytransfer.tcp;
+
+/**
+ * Outcome of a request of the TCP ingestion, the ordinal is its code in the acknowledgement frame.
+ */
+public enum AckStatus {
+    ACCEPTED,
+    INVALID_TYPE,
+    INVALID_ACCOUNT,
+    INVALID_DESTINATION_ACCOUNT,
+    INVALID_AMOUNT,
+    // Not admitted, see AdmissionControl
+    TOO_MANY_REQUESTS;
+
+    private static final AckStatus[] VALUES = values();
+
+    /**
+     * @return null for an unknown code
+     */
+    public static AckStatus of(byte code) {
+        return code >= 0 && code < VALUES.length ? VALUES[code] : null;
+    }
+
+    public byte getCode() {
+        return (byte) ordinal();
+    }
+}
@@ -0,0 +1,69 @@
+package org.lightquark.moneytransfer.tcp;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.lightquark.moneytransfer.model.TransactionType;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Frames of the TCP ingestion, the numbers are big-endian. A frame is the length of its body (int) and the body:
+ * <pre>
+ * request, 33 bytes:         type (byte: 1 DEPOSIT, 2 WITHDRAW, 3 TRANSFER), correlation id (long),
+ *                            source account id (long), destination account id (long, 0 but for TRANSFER),
+ *                            amount (long, minor units, see MoneyUtils)
+ * acknowledgement, 17 bytes: correlation id (long), status (byte, see {@link AckStatus}),
+ *                            transaction id (long, 0 unless ACCEPTED)
+ * </pre>
+ * A client sends its requests without waiting for the acknowledgements, they come back in the order of the requests
+ * with the correlation ids chosen by the client. A body longer than known is read up to the known fields, so fields
+ * can be appended later.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class BinaryProtocol {
+
+    public static final int LENGTH_SIZE = Integer.BYTES;
+    public static final int REQUEST_SIZE = 1 + 4 * Long.BYTES;
+    public static final int ACK_SIZE = 2 * Long.BYTES + 1;
+    public static final int MAX_FRAME_SIZE = 1024;
+
+    private static final TransactionType[] TYPES =
+            {null, TransactionType.DEPOSIT, TransactionType.WITHDRAW, TransactionType.TRANSFER};
+
+    public static void putRequest(ByteBuffer buffer, TransactionType type, long correlationId, long sourceAccountId,
+            long destinationAccountId, long amount) {
+        buffer.putInt(REQUEST_SIZE);
+        buffer.put(typeCode(type));
+        buffer.putLong(correlationId);
+        buffer.putLong(sourceAccountId);
+        buffer.putLong(destinationAccountId);
+        buffer.putLong(amount);
+    }
+
+    public static void putAck(ByteBuffer buffer, long correlationId, AckStatus status, long transactionId) {
+        buffer.putInt(ACK_SIZE);
+        buffer.putLong(correlationId);
+        buffer.put(status.getCode());
+        buffer.putLong(transactionId);
+    }
+
+    /**
+     * @return null for an unknown code
+     */
+    public static TransactionType type(byte code) {
+        return code > 0 && code < TYPES.length ? TYPES[code] : null;
+    }
+
+    public static byte typeCode(TransactionType type) {
+        switch (type) {
+            case DEPOSIT:
+                return 1;
+            case WITHDRAW:
+                return 2;
+            case TRANSFER:
+                return 3;
+            default:
+                throw new IllegalArgumentException("Unknown transaction type " + type);
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package org.lightquark.moneytransfer.tcp;
+
+import lombok.extern.slf4j.Slf4j;
+import org.lightquark.moneytransfer.config.Config;
+import org.lightquark.moneytransfer.model.Account;
+import org.lightquark.moneytransfer.model.Transaction;
+import org.lightquark.moneytransfer.model.TransactionType;
+import org.lightquark.moneytransfer.service.AccountService;
+import org.lightquark.moneytransfer.service.AdmissionControl;
+import org.lightquark.moneytransfer.service.TransactionService;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Binary TCP ingestion of deposits, withdrawals and transfers for the producers of many transactions, next to the
+ * REST API. See {@link BinaryProtocol} for the frames.
+ * <p>
+ * A single thread serves every connection with a selector. The requests of a read are validated as the REST
+ * requests are and admitted by {@link AdmissionControl} with the address of the client. The accepted transactions
+ * are saved at once with {@link TransactionService#saveAllAsync} and acknowledged once they are saved, so with
+ * the journal enabled an acknowledged transaction is durable. The selector goes on serving the other connections
+ * meanwhile, the connection is not read until then, so the requests coming meanwhile make its next group.
+ * A connection whose acknowledgements are not taken by the client is not read until they are.
+ * <p>
+ * A failure of a connection, including an unexpected exception, closes only that connection.
+ */
+@Slf4j
+public class TcpIngestionServer {
+
+    private static final String ENABLED_PROPERTY = "tcp_enabled";
+    private static final String PORT_PROPERTY = "tcp_port";
+    private static final int DEFAULT_PORT = 8081;
+    private static final String BUFFER_SIZE_PROPERTY = "tcp_connection_buffer_size";
+    private static final int DEFAULT_BUFFER_SIZE = 65536;
+
+    private TransactionService transactionService = TransactionService.getInstance();
+    private AccountService accountService = AccountService.getInstance();
+    private AdmissionControl admissionControl = AdmissionControl.getInstance();
+
+    private final int port;
+    private final int bufferSize;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private volatile boolean running;
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    // Transactions accepted by the read being handled, used by the selector thread only
+    private final List<Transaction> accepted = new ArrayList<>();
+    // Connections whose transactions are saved, handed back to the selector thread to send the acknowledgements
+    private final Queue<Connection> saved = new ConcurrentLinkedQueue<>();
+
+    public TcpIngestionServer() {
+        this(Config.getInteger(PORT_PROPERTY, DEFAULT_PORT),
+                Config.getInteger(BUFFER_SIZE_PROPERTY, DEFAULT_BUFFER_SIZE));
+    }
+
+    /**
+     * @param port 0 for any free port, see {@link #getPort()}
+     * @param bufferSize size of the input and of the output buffer of a connection
+     */
+    public TcpIngestionServer(int port, int bufferSize) {
+        if (bufferSize < BinaryProtocol.LENGTH_SIZE + BinaryProtocol.MAX_FRAME_SIZE) {
+            throw new IllegalArgumentException("Buffer size must fit a frame: " + bufferSize);
+        }
+        this.port = port;
+        this.bufferSize = bufferSize;
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(Config.getString(ENABLED_PROPERTY, "false"));
+    }
+
+    public void start() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        // A platform thread, the selector would pin the carrier of a virtual one
+        Thread thread = new Thread(this::selectLoop, "tcp-ingestion");
+        thread.start();
+        log.info("TCP ingestion is listening on port {}", getPort());
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public void stop() {
+        running = false;
+        selector.wakeup();
+        try {
+            stopped.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void selectLoop() {
+        try {
+            while (running) {
+                selector.select();
+                Connection connection;
+                while ((connection = saved.poll()) != null) {
+                    resume(connection);
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    handle(key);
+                }
+            }
+        } catch (IOException e) {
+            log.error("TCP ingestion failed with exception {}", e.getMessage(), e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                close(key);
+            }
+            close(selector);
+            stopped.countDown();
+        }
+    }
+
+    private void handle(SelectionKey key) {
+        try {
+            if (!key.isValid()) {
+                return;
+            }
+            if (key.isAcceptable()) {
+                accept();
+                return;
+            }
+            Connection connection = (Connection) key.attachment();
+            if (key.isWritable()) {
+                connection.write();
+            }
+            if (key.isValid() && key.isReadable()) {
+                connection.read();
+            }
+        } catch (IOException e) {
+            log.info("TCP connection {} is closed: {}", key.attachment(), e.getMessage());
+            close(key);
+        } catch (RuntimeException e) {
+            log.error("TCP connection {} failed with exception {}", key.attachment(), e.getMessage(), e);
+            close(key);
+        }
+    }
+
+    private void resume(Connection connection) {
+        try {
+            connection.resume();
+        } catch (IOException e) {
+            log.info("TCP connection {} is closed: {}", connection, e.getMessage());
+            close(connection.key);
+        } catch (RuntimeException e) {
+            log.error("TCP connection {} failed with exception {}", connection, e.getMessage(), e);
+            close(connection.key);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        key.attach(new Connection(channel, key));
+        log.info("TCP connection {} is accepted", key.attachment());
+    }
+
+    /**
+     * Creates the transaction of a request, the same checks as of the REST requests.
+     */
+    private AckStatus create(String client, TransactionType type, long sourceAccountId, long destinationAccountId,
+            long amount) {
+        if (type == null) {
+            return AckStatus.INVALID_TYPE;
+        }
+        if (admissionControl.admit(client, sourceAccountId) != AdmissionControl.ADMITTED) {
+            return AckStatus.TOO_MANY_REQUESTS;
+        }
+        Account sourceAccount = accountService.find(sourceAccountId);
+        if (sourceAccount == null) {
+            return AckStatus.INVALID_ACCOUNT;
+        }
+        if (amount <= 0) {
+            return AckStatus.INVALID_AMOUNT;
+        }
+        switch (type) {
+            case DEPOSIT:
+                accepted.add(transactionService.createDeposit(sourceAccount, amount));
+                return AckStatus.ACCEPTED;
+            case WITHDRAW:
+                if (sourceAccount.getBalanceMinor() < amount) {
+                    return AckStatus.INVALID_AMOUNT;
+                }
+                accepted.add(transactionService.createWithdraw(sourceAccount, amount));
+                return AckStatus.ACCEPTED;
+            case TRANSFER:
+                if (destinationAccountId == sourceAccountId) {
+                    return AckStatus.INVALID_DESTINATION_ACCOUNT;
+                }
+                Account destinationAccount = accountService.find(destinationAccountId);
+                if (destinationAccount == null) {
+                    return AckStatus.INVALID_DESTINATION_ACCOUNT;
+                }
+                if (sourceAccount.getBalanceMinor() < amount) {
+                    return AckStatus.INVALID_AMOUNT;
+                }
+                accepted.add(transactionService.createTransfer(sourceAccount, destinationAccount, amount));
+                return AckStatus.ACCEPTED;
+            default:
+                return AckStatus.INVALID_TYPE;
+        }
+    }
+
+    private static void close(SelectionKey key) {
+        key.cancel();
+        close(key.channel());
+    }
+
+    private static void close(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            log.info("Failed closing {}: {}", closeable, e.getMessage());
+        }
+    }
+
+    private final class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final String client;
+        private final ByteBuffer in = ByteBuffer.allocate(bufferSize);
+        // Acknowledgements not sent yet, in the write mode
+        private final ByteBuffer out = ByteBuffer.allocate(bufferSize);
+        // True while the transactions of the last read are being saved, used by the selector thread only
+        private boolean saving;
+        private volatile Throwable failure;
+
+        private Connection(SocketChannel channel, SelectionKey key) throws IOException {
+            this.channel = channel;
+            this.key = key;
+            this.client = ((InetSocketAddress) channel.getRemoteAddress()).getAddress().getHostAddress();
+        }
+
+        private void read() throws IOException {
+            if (channel.read(in) < 0) {
+                log.info("TCP connection {} is closed by the client", this);
+                close(key);
+                return;
+            }
+            handleFrames();
+        }
+
+        private void write() throws IOException {
+            if (flush()) {
+                // The frames left while the output was full
+                handleFrames();
+            }
+        }
+
+        /**
+         * Sends the acknowledgements once the transactions of the last read are saved.
+         */
+        private void resume() throws IOException {
+            saving = false;
+            if (!key.isValid()) {
+                return;
+            }
+            if (failure != null) {
+                log.error("Transactions from TCP connection {} are not saved: {}", this, failure.getMessage());
+                close(key);
+                return;
+            }
+            write();
+        }
+
+        /**
+         * Handles the complete frames of the input as long as the output has room for their acknowledgements.
+         * The acknowledgements are sent once the accepted transactions are saved.
+         */
+        private void handleFrames() throws IOException {
+            in.flip();
+            try {
+                while (in.remaining() >= BinaryProtocol.LENGTH_SIZE
+                        && out.remaining() >= BinaryProtocol.LENGTH_SIZE + BinaryProtocol.ACK_SIZE) {
+                    int length = in.getInt(in.position());
+                    if (length < BinaryProtocol.REQUEST_SIZE || length > BinaryProtocol.MAX_FRAME_SIZE) {
+                        throw new ProtocolException("Invalid frame length " + length);
+                    }
+                    if (in.remaining() < BinaryProtocol.LENGTH_SIZE + length) {
+                        break;
+                    }
+                    int next = in.position() + BinaryProtocol.LENGTH_SIZE + length;
+                    in.position(in.position() + BinaryProtocol.LENGTH_SIZE);
+                    TransactionType type = BinaryProtocol.type(in.get());
+                    long correlationId = in.getLong();
+                    long sourceAccountId = in.getLong();
+                    long destinationAccountId = in.getLong();
+                    long amount = in.getLong();
+                    in.position(next);
+
+                    AckStatus status = create(client, type, sourceAccountId, destinationAccountId, amount);
+                    long transactionId = status == AckStatus.ACCEPTED ? accepted.get(accepted.size() - 1).getId() : 0L;
+                    BinaryProtocol.putAck(out, correlationId, status, transactionId);
+                }
+            } finally {
+                in.compact();
+                // The created transactions have taken the ids of their accounts, so they must be saved in any case
+                if (!accepted.isEmpty()) {
+                    List<Transaction> transactions = new ArrayList<>(accepted);
+                    accepted.clear();
+                    saving = true;
+                    key.interestOps(0);
+                    transactionService.saveAllAsync(transactions).whenComplete((ignored, e) -> {
+                        failure = e;
+                        saved.add(this);
+                        selector.wakeup();
+                    });
+                    log.debug("Added {} transactions from TCP connection {}", transactions.size(), this);
+                }
+            }
+            if (!saving) {
+                flush();
+            }
+        }
+
+        /**
+         * @return true if every acknowledgement is sent, otherwise the connection is not read until they are
+         */
+        private boolean flush() throws IOException {
+            out.flip();
+            channel.write(out);
+            boolean flushed = !out.hasRemaining();
+            out.compact();
+            key.interestOps(flushed ? SelectionKey.OP_READ : SelectionKey.OP_WRITE);
+            return flushed;
+        }
+
+        @Override
+        public String toString() {
+            try {
+                return String.valueOf(channel.getRemoteAddress());
+            } catch (IOException e) {
+                return channel.toString();
+            }
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package org.lightquark.moneytransfer.trace;
+
+import lombok.extern.slf4j.Slf4j;
+import org.lightquark.moneytransfer.config.Config;
+import org.lightquark.moneytransfer.model.Transaction;
+import org.lightquark.moneytransfer.util.BackoffIdleStrategy;
+import org.lightquark.moneytransfer.util.ThreadUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Binary trace of the processing of transactions, a cheap replacement of a log line per transaction.
+ * <p>
+ * An event is stored into a preallocated slot of a ring, claimed with a single compare-and-set, so recording neither
+ * allocates nor formats nor blocks. A single drain thread writes the slots to the trace file in the layout of
+ * {@link TraceRecord}, see {@link TraceDecoder} for reading it. When the drain falls behind and the ring is full,
+ * the events are dropped and counted.
+ */
+@Slf4j
+public class EventRecorder {
+
+    private static final String ENABLED_PROPERTY = "trace_enabled";
+    private static final String FILE_PROPERTY = "trace_file";
+    private static final String DEFAULT_FILE = "transaction-trace.dat";
+    private static final String BUFFER_RECORDS_PROPERTY = "trace_buffer_records";
+    private static final int DEFAULT_BUFFER_RECORDS = 65536;
+
+    private static final int WRITE_BATCH_RECORDS = 256;
+    private static final long DRAIN_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final EventRecorder INSTANCE = create();
+
+    public static EventRecorder getInstance() {
+        return INSTANCE;
+    }
+
+    private static EventRecorder create() {
+        if (!Boolean.parseBoolean(Config.getString(ENABLED_PROPERTY, "false"))) {
+            return new EventRecorder();
+        }
+        EventRecorder recorder = new EventRecorder(Paths.get(Config.getString(FILE_PROPERTY, DEFAULT_FILE)),
+                Config.getInteger(BUFFER_RECORDS_PROPERTY, DEFAULT_BUFFER_RECORDS));
+        recorder.start();
+        return recorder;
+    }
+
+    private final FileChannel channel;
+    private final Slot[] slots;
+    private final int mask;
+    private final PaddedSequence claimed = new PaddedSequence();
+    // Written only by the drain thread
+    private long drained;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(TraceRecord.SIZE * WRITE_BATCH_RECORDS);
+    private final LongAdder dropped = new LongAdder();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private volatile boolean running = true;
+
+    /**
+     * Disabled recorder, the events are ignored.
+     */
+    private EventRecorder() {
+        this.channel = null;
+        this.slots = null;
+        this.mask = 0;
+    }
+
+    /**
+     * Opens the trace file for appending, every opening writes a {@link TraceEvent#START} record.
+     *
+     * @param capacity count of the slots of the ring, a power of two
+     */
+    public EventRecorder(Path file, int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two and at least 2: " + capacity);
+        }
+        log.info("Event trace {}, buffer of {} records", file, capacity);
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            // A torn record at the end left by a crash is cut off
+            channel.truncate(channel.size() - channel.size() % TraceRecord.SIZE);
+            channel.position(channel.size());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed opening trace " + file, e);
+        }
+        slots = new Slot[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new Slot(i);
+        }
+        mask = capacity - 1;
+
+        TraceRecord start = new TraceRecord();
+        start.event = TraceEvent.START;
+        start.time = System.nanoTime();
+        start.detail = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        start.threadId = Thread.currentThread().threadId();
+        start.write(buffer);
+    }
+
+    public void start() {
+        ThreadUtils.runThread(this::drainLoop);
+    }
+
+    public boolean isEnabled() {
+        return channel != null;
+    }
+
+    public void record(TraceEvent event, Transaction transaction) {
+        record(event, transaction, 0);
+    }
+
+    /**
+     * @param detail see {@link TraceRecord}
+     */
+    public void record(TraceEvent event, Transaction transaction, long detail) {
+        if (channel == null) {
+            return;
+        }
+        long sequence = claim();
+        if (sequence < 0) {
+            dropped.increment();
+            return;
+        }
+        Slot slot = slots[(int) sequence & mask];
+        TraceRecord record = slot.record;
+        record.time = System.nanoTime();
+        record.event = event;
+        record.type = transaction.getType();
+        record.threadId = Thread.currentThread().threadId();
+        record.transactionId = transaction.getId();
+        record.sourceAccountId = toId(transaction.getSourceAccountId());
+        record.destinationAccountId = toId(transaction.getDestinationAccountId());
+        record.amount = transaction.getAmountMinor();
+        record.detail = detail;
+        // Publishes the record to the drain thread
+        slot.sequence = sequence + 1;
+    }
+
+    /**
+     * @return count of the events dropped because the ring was full
+     */
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Writes the recorded events and closes the trace file. The events recorded after that are dropped.
+     */
+    public void close() throws InterruptedException {
+        running = false;
+        stopped.await();
+    }
+
+    /**
+     * @return the claimed sequence or -1 if the ring is full
+     */
+    private long claim() {
+        while (true) {
+            long sequence = claimed.get();
+            // The slot is free when the drain thread has released it after the previous lap
+            if (slots[(int) sequence & mask].sequence != sequence) {
+                return -1;
+            }
+            if (claimed.compareAndSet(sequence, sequence + 1)) {
+                return sequence;
+            }
+        }
+    }
+
+    private void drainLoop() {
+        BackoffIdleStrategy idleStrategy = new BackoffIdleStrategy(100, 10);
+        Runnable parker = () -> LockSupport.parkNanos(DRAIN_PARK_NANOS);
+        try {
+            while (running) {
+                if (drain()) {
+                    idleStrategy.reset();
+                } else {
+                    write();
+                    idleStrategy.idle(parker);
+                }
+            }
+            // The records claimed so far may be still being filled in
+            long end = claimed.get();
+            while (drained < end) {
+                if (!drain()) {
+                    Thread.yield();
+                }
+            }
+            write();
+            channel.close();
+        } catch (IOException e) {
+            log.error("Failed writing trace, the events are not recorded anymore", e);
+            running = false;
+        } finally {
+            stopped.countDown();
+        }
+    }
+
+    /**
+     * @return false if there are no published records
+     */
+    private boolean drain() throws IOException {
+        Slot slot = slots[(int) drained & mask];
+        if (slot.sequence != drained + 1) {
+            return false;
+        }
+        do {
+            if (!buffer.hasRemaining()) {
+                write();
+            }
+            slot.record.write(buffer);
+            // Releases the slot for the next lap
+            slot.sequence = drained + slots.length;
+            drained++;
+            slot = slots[(int) drained & mask];
+        } while (slot.sequence == drained + 1);
+        return true;
+    }
+
+    private void write() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static long toId(Long id) {
+        return id == null ? 0 : id;
+    }
+
+    private static final class Slot {
+        private volatile long sequence;
+        private final TraceRecord record = new TraceRecord();
+
+        private Slot(long sequence) {
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Keeps the claim counter of the recording threads away from the cache lines of the drain thread.
+     */
+    @SuppressWarnings("unused")
+    private static final class PaddedSequence extends AtomicLong {
+        private static final long serialVersionUID = 1L;
+        private long p1, p2, p3, p4, p5, p6, p7;
+    }
+}
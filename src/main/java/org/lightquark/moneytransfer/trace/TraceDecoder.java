@@ -0,0 +1,96 @@
+package org.lightquark.moneytransfer.trace;
+
+import org.lightquark.moneytransfer.util.MoneyUtils;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+
+/**
+ * Offline tool printing a trace file written by {@link EventRecorder} as a line of text per event:
+ * <pre>
+ * java -cp money-transfer-0.0.1-SNAPSHOT-jar-with-dependencies.jar \
+ *     org.lightquark.moneytransfer.trace.TraceDecoder transaction-trace.dat
+ * </pre>
+ */
+public class TraceDecoder {
+
+    private static final int READ_BATCH_RECORDS = 1024;
+
+    private final TraceRecord record = new TraceRecord();
+    // Wall clock time minus the monotonic time, taken from the latest START record
+    private long epochOffset;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: TraceDecoder <trace file>");
+            System.exit(1);
+        }
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        new TraceDecoder().decode(Paths.get(args[0]), out);
+        out.flush();
+    }
+
+    /**
+     * Writes a line per record, a torn record at the end is skipped.
+     *
+     * @return count of the decoded records
+     */
+    public long decode(Path file, Writer out) throws IOException {
+        long count = 0;
+        ByteBuffer buffer = ByteBuffer.allocate(TraceRecord.SIZE * READ_BATCH_RECORDS);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) > 0 || buffer.position() >= TraceRecord.SIZE) {
+                buffer.flip();
+                while (buffer.remaining() >= TraceRecord.SIZE) {
+                    record.read(buffer);
+                    decode(out);
+                    count++;
+                }
+                buffer.compact();
+            }
+        }
+        return count;
+    }
+
+    private void decode(Writer out) throws IOException {
+        if (record.event == TraceEvent.START) {
+            epochOffset = record.detail - record.time;
+            out.write(Instant.ofEpochSecond(0, record.detail) + " START thread " + record.threadId + "\n");
+            return;
+        }
+        StringBuilder line = new StringBuilder(128)
+                .append(Instant.ofEpochSecond(0, record.time + epochOffset))
+                .append(' ').append(record.event)
+                .append(" thread ").append(record.threadId)
+                .append(" transaction ").append(record.transactionId);
+        if (record.type != null) {
+            line.append(' ').append(record.type);
+        }
+        line.append(" source ").append(record.sourceAccountId);
+        if (record.destinationAccountId != 0) {
+            line.append(" destination ").append(record.destinationAccountId);
+        }
+        line.append(" amount ").append(MoneyUtils.toDecimal(record.amount));
+        switch (record.event) {
+            case INSUFFICIENT_FUNDS:
+            case BALANCE_OVERFLOW:
+                line.append(" balance ").append(MoneyUtils.toDecimal(record.detail));
+                break;
+            case RETRIED:
+                line.append(" attempt ").append(record.detail);
+                break;
+            default:
+                break;
+        }
+        out.write(line.append('\n').toString());
+    }
+}
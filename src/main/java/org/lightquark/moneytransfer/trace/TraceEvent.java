@@ -0,0 +1,25 @@
+package org.lightquark.moneytransfer.trace;
+
+/**
+ * Events of the trace. The ordinal is the code written to the trace file, so new events are added only at the end.
+ */
+public enum TraceEvent {
+    /**
+     * Written once the recorder is opened, binds the monotonic clock of the records to the wall clock.
+     */
+    START,
+    ACCEPTED,
+    POSTPONED,
+    RETRIED,
+    SKIPPED,
+    COMPLETED,
+    INVALID_PARAMS,
+    INVALID_ACCOUNT,
+    INVALID_DESTINATION_ACCOUNT,
+    INSUFFICIENT_FUNDS,
+    BALANCE_OVERFLOW,
+    /**
+     * The status journaled before a restart is applied to the replayed transaction.
+     */
+    REPLAYED
+}
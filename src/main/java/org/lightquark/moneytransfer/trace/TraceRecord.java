@@ -0,0 +1,70 @@
+package org.lightquark.moneytransfer.trace;
+
+import org.lightquark.moneytransfer.model.TransactionType;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Mutable trace record, reused for every event, and its fixed width binary layout:
+ * <pre>
+ *  0 long  System.nanoTime() of the event
+ *  8 byte  event, see {@link TraceEvent}
+ *  9 byte  transaction type, -1 if none
+ * 10 short reserved
+ * 12 int   reserved
+ * 16 long  thread id
+ * 24 long  transaction id
+ * 32 long  source account id, 0 if none
+ * 40 long  destination account id, 0 if none
+ * 48 long  amount in minor units
+ * 56 long  detail: the account balance for INSUFFICIENT_FUNDS and BALANCE_OVERFLOW, the attempt for RETRIED,
+ *          the wall clock time in nanoseconds since the epoch for START
+ * </pre>
+ */
+final class TraceRecord {
+
+    static final int SIZE = 64;
+
+    private static final TraceEvent[] EVENTS = TraceEvent.values();
+    private static final TransactionType[] TYPES = TransactionType.values();
+    private static final byte NO_TYPE = -1;
+
+    long time;
+    TraceEvent event;
+    TransactionType type;
+    long threadId;
+    long transactionId;
+    long sourceAccountId;
+    long destinationAccountId;
+    long amount;
+    long detail;
+
+    void write(ByteBuffer buffer) {
+        buffer.putLong(time);
+        buffer.put((byte) event.ordinal());
+        buffer.put(type == null ? NO_TYPE : (byte) type.ordinal());
+        buffer.putShort((short) 0);
+        buffer.putInt(0);
+        buffer.putLong(threadId);
+        buffer.putLong(transactionId);
+        buffer.putLong(sourceAccountId);
+        buffer.putLong(destinationAccountId);
+        buffer.putLong(amount);
+        buffer.putLong(detail);
+    }
+
+    void read(ByteBuffer buffer) {
+        time = buffer.getLong();
+        event = EVENTS[buffer.get()];
+        byte typeOrdinal = buffer.get();
+        type = typeOrdinal == NO_TYPE ? null : TYPES[typeOrdinal];
+        buffer.getShort();
+        buffer.getInt();
+        threadId = buffer.getLong();
+        transactionId = buffer.getLong();
+        sourceAccountId = buffer.getLong();
+        destinationAccountId = buffer.getLong();
+        amount = buffer.getLong();
+        detail = buffer.getLong();
+    }
+}
@@ -0,0 +1,43 @@
+package org.lightquark.moneytransfer.util;
+
+/**
+ * Decides what a thread does while there is no work: it spins at first, then yields and finally parks.
+ * Spinning and yielding keep the latency low when the work arrives soon, parking saves CPU when the thread is idle.
+ * The instance is not thread-safe, each thread must use its own one.
+ */
+public class BackoffIdleStrategy {
+
+    private final int maxSpins;
+    private final int maxYields;
+
+    private int spins;
+    private int yields;
+
+    public BackoffIdleStrategy(int maxSpins, int maxYields) {
+        this.maxSpins = maxSpins;
+        this.maxYields = maxYields;
+    }
+
+    /**
+     * Must be called every time the thread finds no work.
+     * @param parker parks the thread until the new work arrives, used once spins and yields are exhausted
+     */
+    public void idle(Runnable parker) {
+        if (spins < maxSpins) {
+            spins++;
+        } else if (yields < maxYields) {
+            yields++;
+            Thread.yield();
+        } else {
+            parker.run();
+        }
+    }
+
+    /**
+     * Must be called every time the thread finds some work.
+     */
+    public void reset() {
+        spins = 0;
+        yields = 0;
+    }
+}
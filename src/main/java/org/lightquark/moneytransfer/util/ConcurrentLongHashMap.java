@@ -0,0 +1,182 @@
+package org.lightquark.moneytransfer.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * Concurrent hash map with primitive long keys and open addressing (linear probing), so lookups neither box the key
+ * nor follow a chain of nodes.
+ * <p>
+ * Reads take no locks. Writes are serialized by the monitor of the map: they are expected to be much rarer than reads.
+ * A removed entry keeps its key in the table until the next resize, so probing readers never miss a following entry.
+ * Key 0 is reserved for empty slots.
+ */
+public class ConcurrentLongHashMap<V> {
+
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final float LOAD_FACTOR = 0.5f;
+    private static final long EMPTY = 0L;
+
+    private volatile Table<V> table;
+    private volatile int size;
+    // Slots with a key, including the removed entries
+    private int used;
+
+    public ConcurrentLongHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public ConcurrentLongHashMap(int expectedSize) {
+        table = new Table<>(capacityFor(expectedSize));
+    }
+
+    public V get(long key) {
+        Table<V> t = table;
+        int index = t.indexOf(key);
+        while (true) {
+            long k = t.keys.get(index);
+            if (k == key) {
+                return t.values.get(index);
+            }
+            if (k == EMPTY) {
+                return null;
+            }
+            index = (index + 1) & t.mask;
+        }
+    }
+
+    /**
+     * @return the current value, if the key is already present, otherwise null
+     */
+    public synchronized V putIfAbsent(long key, V value) {
+        checkKey(key);
+        Table<V> t = table;
+        int index = t.indexOf(key);
+        while (true) {
+            long k = t.keys.get(index);
+            if (k == key) {
+                V current = t.values.get(index);
+                if (current == null) {
+                    t.values.set(index, value);
+                    size++;
+                }
+                return current;
+            }
+            if (k == EMPTY) {
+                // The key is published before the value, readers treat a key without a value as absent
+                t.keys.set(index, key);
+                t.values.set(index, value);
+                size++;
+                if (++used > t.threshold) {
+                    resize();
+                }
+                return null;
+            }
+            index = (index + 1) & t.mask;
+        }
+    }
+
+    /**
+     * @return the removed value or null, if the key is absent
+     */
+    public synchronized V remove(long key) {
+        Table<V> t = table;
+        int index = t.indexOf(key);
+        while (true) {
+            long k = t.keys.get(index);
+            if (k == key) {
+                V current = t.values.get(index);
+                if (current != null) {
+                    t.values.set(index, null);
+                    size--;
+                }
+                return current;
+            }
+            if (k == EMPTY) {
+                return null;
+            }
+            index = (index + 1) & t.mask;
+        }
+    }
+
+    public synchronized void clear() {
+        table = new Table<>(DEFAULT_CAPACITY);
+        size = 0;
+        used = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Weakly consistent: the entries changed during the iteration may be missed.
+     */
+    public void forEachValue(Consumer<V> consumer) {
+        Table<V> t = table;
+        for (int i = 0; i < t.values.length(); i++) {
+            V value = t.values.get(i);
+            if (value != null) {
+                consumer.accept(value);
+            }
+        }
+    }
+
+    private void resize() {
+        Table<V> current = table;
+        // Removed entries are dropped, so the table may keep its capacity
+        Table<V> resized = new Table<>(capacityFor(size + 1));
+        for (int i = 0; i < current.values.length(); i++) {
+            V value = current.values.get(i);
+            if (value != null) {
+                resized.insert(current.keys.get(i), value);
+            }
+        }
+        used = size;
+        table = resized;
+    }
+
+    private static void checkKey(long key) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("Key " + EMPTY + " is reserved");
+        }
+    }
+
+    private static int capacityFor(int expectedSize) {
+        long required = (long) Math.ceil(Math.max(expectedSize, DEFAULT_CAPACITY) / LOAD_FACTOR);
+        if (required > (1 << 30)) {
+            throw new IllegalArgumentException("Too many entries " + expectedSize);
+        }
+        return Integer.highestOneBit((int) required - 1) << 1;
+    }
+
+    private static final class Table<V> {
+        private final AtomicLongArray keys;
+        private final AtomicReferenceArray<V> values;
+        private final int mask;
+        private final int threshold;
+
+        private Table(int capacity) {
+            keys = new AtomicLongArray(capacity);
+            values = new AtomicReferenceArray<>(capacity);
+            mask = capacity - 1;
+            threshold = (int) (capacity * LOAD_FACTOR);
+        }
+
+        private int indexOf(long key) {
+            // Fibonacci hashing spreads the sequential ids over the whole table
+            long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & mask;
+        }
+
+        private void insert(long key, V value) {
+            int index = indexOf(key);
+            while (keys.get(index) != EMPTY) {
+                index = (index + 1) & mask;
+            }
+            keys.set(index, key);
+            values.set(index, value);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package org.lightquark.moneytransfer.util;
+
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.lightquark.moneytransfer.config.Config;
+
+import java.math.BigDecimal;
+
+/**
+ * Money is kept as a long count of minor units (e.g. cents), the count of fraction digits is configurable.
+ * BigDecimal is used only at the boundaries: REST params and JSON.
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+public final class MoneyUtils {
+
+    private static final String SCALE_PROPERTY = "money_scale";
+    private static final int DEFAULT_SCALE = 2;
+
+    public static final int SCALE = Config.getInteger(SCALE_PROPERTY, DEFAULT_SCALE);
+
+    /**
+     * @throws ArithmeticException if the amount has more fraction digits than the scale or does not fit into long
+     */
+    public static long toMinorUnits(BigDecimal amount) {
+        return amount.movePointRight(SCALE).longValueExact();
+    }
+
+    /**
+     * @return the amount without trailing zeros in the fraction, e.g. 10 for 1000 minor units
+     */
+    public static BigDecimal toDecimal(long minorUnits) {
+        BigDecimal amount = BigDecimal.valueOf(minorUnits, SCALE).stripTrailingZeros();
+        return amount.scale() < 0 ? amount.setScale(0) : amount;
+    }
+
+    /**
+     * @return true, if the sum of the non-negative balance and the positive amount does not overflow
+     */
+    public static boolean canAdd(long balance, long amount) {
+        return balance <= Long.MAX_VALUE - amount;
+    }
+}
@@ -3,19 +3,35 @@ package org.lightquark.moneytransfer.util;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.lightquark.moneytransfer.config.Config;
 
 @Slf4j
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public final class ThreadUtils {
 
+    private static final String VIRTUAL_THREADS_PROPERTY = "virtual_threads";
+    private static final boolean VIRTUAL_THREADS =
+            Boolean.parseBoolean(Config.getString(VIRTUAL_THREADS_PROPERTY, "false"));
+
+    /**
+     * @return true if the service threads and the handling of requests run on virtual threads
+     */
+    public static boolean isVirtualThreads() {
+        return VIRTUAL_THREADS;
+    }
+
     public static void runThread(Runnable runnable) {
+        if (VIRTUAL_THREADS) {
+            Thread.ofVirtual().start(runnable);
+            return;
+        }
         final Thread thread = new Thread(runnable);
         thread.start();
     }
 
     public static String getThreadInfo() {
         Thread thread = Thread.currentThread();
-        return String.format("%s %s", thread.getId(), thread.getName());
+        return String.format("%s %s", thread.threadId(), thread.getName());
     }
 
     public static void sleep(long timeout) {
@@ -0,0 +1,57 @@
+package org.lightquark.moneytransfer.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket refilled at a constant rate up to its capacity, lock-free and thread-safe.
+ * <p>
+ * Instead of the count of tokens, the bucket keeps the time it gets full again (the generic cell rate algorithm):
+ * taking tokens moves the time forward by their refill time, and they can be taken as long as the bucket does not
+ * get full later than the refill time of the whole capacity from now. So a take is a single compare-and-set and
+ * no thread refills anything.
+ */
+public class TokenBucket {
+
+    private final long tokenNanos;
+    private final long capacityNanos;
+    private final AtomicLong fullAt;
+
+    /**
+     * @param rate tokens refilled per second
+     * @param capacity max count of tokens, the burst allowed after an idle time
+     */
+    public TokenBucket(int rate, int capacity, long now) {
+        if (rate <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("Rate and capacity must be positive: " + rate + ", " + capacity);
+        }
+        this.tokenNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        this.capacityNanos = tokenNanos * capacity;
+        this.fullAt = new AtomicLong(now);
+    }
+
+    /**
+     * @param now System.nanoTime()
+     * @return 0 if the tokens are taken, otherwise the nanos until they can be
+     */
+    public long tryTake(int tokens, long now) {
+        while (true) {
+            long current = fullAt.get();
+            long next = Math.max(current, now) + tokens * tokenNanos;
+            long excess = next - now - capacityNanos;
+            if (excess > 0) {
+                return excess;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Returns the tokens taken by a request which is rejected afterwards.
+     */
+    public void giveBack(int tokens) {
+        fullAt.addAndGet(-tokens * tokenNanos);
+    }
+}
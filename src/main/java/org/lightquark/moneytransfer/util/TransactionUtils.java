@@ -6,49 +6,46 @@ import lombok.extern.slf4j.Slf4j;
 import org.lightquark.moneytransfer.model.Account;
 import org.lightquark.moneytransfer.model.Transaction;
 
-import java.util.concurrent.locks.Lock;
 import java.util.function.BiConsumer;
 
-import static java.util.concurrent.TimeUnit.MILLISECONDS;
-
 @Slf4j
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public final class TransactionUtils {
 
-    private static final long LOCK_TIMEOUT = 1000L;
+    private static final TransferLockManager LOCK_MANAGER = TransferLockManager.getInstance();
 
-    public static void doWithLock(Account account, Transaction transaction, BiConsumer<Account, Transaction> consumer) {
-        Lock lock = account.getLock();
+    /**
+     * @return false if the lock is not taken and the consumer is not called, see {@link TransferLockManager}
+     */
+    public static boolean doWithLock(Account account, Transaction transaction,
+            BiConsumer<Account, Transaction> consumer) {
+        if (!LOCK_MANAGER.lock(account)) {
+            log.debug("Failed to lock account {}. Transaction {}", account, transaction);
+            return false;
+        }
         try {
-            if (lock.tryLock(LOCK_TIMEOUT, MILLISECONDS)) {
-                try {
-                    consumer.accept(account, transaction);
-                } finally {
-                    lock.unlock();
-                }
-            }
-        } catch (InterruptedException e) {
-            log.error("Failed to modify entity {}. Transaction {}", account, transaction, e);
+            consumer.accept(account, transaction);
+        } finally {
+            LOCK_MANAGER.unlock(account);
         }
+        return true;
     }
 
-    public static void doWithLock(Account sourceAccount, Account destinationAccount, Transaction transaction,
+    /**
+     * @return false if the locks are not taken and the consumer is not called, see {@link TransferLockManager}
+     */
+    public static boolean doWithLock(Account sourceAccount, Account destinationAccount, Transaction transaction,
             TriConsumer<Account, Account, Transaction> consumer) {
-        Lock sourceLock = sourceAccount.getLock();
-        Lock destinationLock = sourceAccount.getLock();
+        if (!LOCK_MANAGER.lock(sourceAccount, destinationAccount)) {
+            log.debug("Failed to lock accounts {} {}. Transaction {}", sourceAccount, destinationAccount, transaction);
+            return false;
+        }
         try {
-            if (sourceLock.tryLock(1000L, MILLISECONDS) && destinationLock.tryLock(1000L, MILLISECONDS)) {
-                try {
-                    consumer.accept(sourceAccount, destinationAccount, transaction);
-                } finally {
-                    sourceLock.unlock();
-                    destinationLock.unlock();
-                }
-            }
-        } catch (InterruptedException e) {
-            log.error("Failed to modify entities {} {}. Transaction {}",
-                    sourceAccount, destinationAccount, transaction, e);
+            consumer.accept(sourceAccount, destinationAccount, transaction);
+        } finally {
+            LOCK_MANAGER.unlock(sourceAccount, destinationAccount);
         }
+        return true;
     }
 
 }
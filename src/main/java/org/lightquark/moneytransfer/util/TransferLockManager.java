@@ -0,0 +1,139 @@
+package org.lightquark.moneytransfer.util;
+
+import lombok.extern.slf4j.Slf4j;
+import org.lightquark.moneytransfer.config.Config;
+import org.lightquark.moneytransfer.model.Account;
+import org.lightquark.moneytransfer.model.LockStats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Takes the locks of accounts. The locks of two accounts are always taken in the global order of
+ * {@link Account#getLockOrder()}, so two transfers between the same accounts in opposite directions never deadlock.
+ * <p>
+ * A busy lock is retried a bounded count of times without blocking, then the thread parks on it for
+ * a short timeout. When the timeout elapses, nothing stays locked and the caller is expected to retry later.
+ */
+@Slf4j
+public class TransferLockManager {
+
+    private static final String SPINS_PROPERTY = "transfer_lock_spins";
+    private static final int DEFAULT_SPINS = 64;
+    private static final String TIMEOUT_PROPERTY = "transfer_lock_timeout_millis";
+    private static final int DEFAULT_TIMEOUT = 10;
+
+    private static final TransferLockManager INSTANCE = new TransferLockManager(
+            Config.getInteger(SPINS_PROPERTY, DEFAULT_SPINS),
+            TimeUnit.MILLISECONDS.toNanos(Config.getInteger(TIMEOUT_PROPERTY, DEFAULT_TIMEOUT)));
+
+    public static TransferLockManager getInstance() {
+        return INSTANCE;
+    }
+
+    private final int spins;
+    private final long timeoutNanos;
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder parks = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    // Time spent on busy locks, the locks taken at the first try are not timed
+    private final LongAdder waitNanos = new LongAdder();
+
+    TransferLockManager(int spins, long timeoutNanos) {
+        this.spins = spins;
+        this.timeoutNanos = timeoutNanos;
+    }
+
+    /**
+     * @return true if the lock is taken, it must be released by {@link #unlock(Account)}
+     */
+    public boolean lock(Account account) {
+        return acquire(account.getLock());
+    }
+
+    public void unlock(Account account) {
+        account.getLock().unlock();
+    }
+
+    /**
+     * @return true if the locks of both accounts are taken, they must be released by {@link #unlock(Account, Account)}
+     */
+    public boolean lock(Account first, Account second) {
+        Lock firstLock = first.getLock();
+        Lock secondLock = second.getLock();
+        if (firstLock == secondLock) {
+            return acquire(firstLock);
+        }
+        if (second.getLockOrder() < first.getLockOrder()) {
+            Lock lock = firstLock;
+            firstLock = secondLock;
+            secondLock = lock;
+        }
+        if (!acquire(firstLock)) {
+            return false;
+        }
+        if (!acquire(secondLock)) {
+            firstLock.unlock();
+            return false;
+        }
+        return true;
+    }
+
+    public void unlock(Account first, Account second) {
+        Lock firstLock = first.getLock();
+        Lock secondLock = second.getLock();
+        if (firstLock != secondLock) {
+            secondLock.unlock();
+        }
+        firstLock.unlock();
+    }
+
+    /**
+     * Counts a transaction put off because its locks were not taken.
+     */
+    public void recordRetry() {
+        retries.increment();
+    }
+
+    public LockStats getStats() {
+        return new LockStats(acquisitions.sum(), waits.sum(), parks.sum(), timeouts.sum(), retries.sum(),
+                waitNanos.sum());
+    }
+
+    private boolean acquire(Lock lock) {
+        acquisitions.increment();
+        if (lock.tryLock()) {
+            return true;
+        }
+        waits.increment();
+        long start = System.nanoTime();
+        try {
+            return acquireBusy(lock);
+        } finally {
+            waitNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    private boolean acquireBusy(Lock lock) {
+        for (int i = 0; i < spins; i++) {
+            if (lock.tryLock()) {
+                return true;
+            }
+        }
+        parks.increment();
+        try {
+            if (lock.tryLock(timeoutNanos, TimeUnit.NANOSECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            log.error("Interrupted while waiting for lock {}", lock, e);
+            Thread.currentThread().interrupt();
+        }
+        timeouts.increment();
+        return false;
+    }
+}
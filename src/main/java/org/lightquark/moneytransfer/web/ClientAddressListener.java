@@ -0,0 +1,18 @@
+package org.lightquark.moneytransfer.web;
+
+import org.eclipse.jetty.server.HttpChannel;
+import org.eclipse.jetty.server.Request;
+
+/**
+ * Puts the address of the client into an attribute of every request, so the resources read it as a property of
+ * the request context without depending on the servlet API of the container.
+ */
+public class ClientAddressListener implements HttpChannel.Listener {
+
+    public static final String CLIENT_ADDRESS_ATTRIBUTE = "org.lightquark.moneytransfer.clientAddress";
+
+    @Override
+    public void onRequestBegin(Request request) {
+        request.setAttribute(CLIENT_ADDRESS_ATTRIBUTE, request.getRemoteAddr());
+    }
+}
@@ -2,12 +2,18 @@ package org.lightquark.moneytransfer.web;
 
 import lombok.extern.slf4j.Slf4j;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.glassfish.jersey.jackson.JacksonFeature;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.glassfish.jersey.servlet.ServletContainer;
 import org.lightquark.moneytransfer.config.Config;
+import org.lightquark.moneytransfer.json.JsonCodecFeature;
+import org.lightquark.moneytransfer.util.ThreadUtils;
+
+import java.util.concurrent.Executors;
 
 @Slf4j
 public class JettyWebServer {
@@ -54,11 +60,26 @@ public class JettyWebServer {
     }
 
     private Server createServer() {
-        Server server = new Server(Config.getInteger(PORT_PROPERTY, DEFAULT_PORT));
+        QueuedThreadPool threadPool = new QueuedThreadPool();
+        if (ThreadUtils.isVirtualThreads()) {
+            // The pool keeps its threads for the selectors and acceptors, the requests are handled on virtual threads
+            threadPool.setVirtualThreadsExecutor(Executors.newVirtualThreadPerTaskExecutor());
+            log.info("Requests are handled on virtual threads");
+        }
+        Server server = new Server(threadPool);
+        ServerConnector connector = new ServerConnector(server);
+        connector.setPort(Config.getInteger(PORT_PROPERTY, DEFAULT_PORT));
+        // The rate limits of the clients are keyed by their addresses
+        connector.addBean(new ClientAddressListener());
+        server.addConnector(connector);
         ResourceConfig config = new ResourceConfig();
         config.packages(CONTROLLER_PATH);
+        // Account and Transaction entities are written by their own providers, the rest by Jackson
+        config.register(JsonCodecFeature.class);
         config.register(JacksonFeature.class);
         ServletHolder servlet = new ServletHolder(new ServletContainer(config));
+        // Responses of transactions awaiting the processing are suspended
+        servlet.setAsyncSupported(true);
         ServletContextHandler context = new ServletContextHandler(server, CONTEXT_PATH);
         context.addServlet(servlet, CONTEXT_PATH);
         return server;
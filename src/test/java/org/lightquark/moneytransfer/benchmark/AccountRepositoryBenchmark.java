@@ -0,0 +1,61 @@
+package org.lightquark.moneytransfer.benchmark;
+
+import org.lightquark.moneytransfer.model.Account;
+import org.lightquark.moneytransfer.repository.AccountRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lookup latency of the account repositories. Accounts are looked up in random order, as the processor does.
+ * See {@link AccountRepositoryFootprint} for the memory used by the repositories.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms8g", "-Xmx8g"})
+public class AccountRepositoryBenchmark {
+
+    @Param({AccountRepository.TYPE_HASH_MAP, AccountRepository.TYPE_OPEN_ADDRESSING})
+    private String type;
+
+    @Param({"1000000", "10000000"})
+    private int size;
+
+    private AccountRepository repository;
+    private long[] ids;
+
+    @Setup
+    public void setUp() {
+        repository = AccountRepository.create(type);
+        ids = new long[size];
+        for (int i = 0; i < size; i++) {
+            Account account = new Account();
+            repository.save(account);
+            ids[i] = account.getId();
+        }
+    }
+
+    @Benchmark
+    public Account find() {
+        return repository.find(ids[ThreadLocalRandom.current().nextInt(ids.length)]);
+    }
+
+    @Benchmark
+    public Account findMissing() {
+        return repository.find(-1 - ThreadLocalRandom.current().nextInt(ids.length));
+    }
+}
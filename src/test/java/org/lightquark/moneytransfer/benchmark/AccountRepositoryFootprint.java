@@ -0,0 +1,37 @@
+package org.lightquark.moneytransfer.benchmark;
+
+import org.lightquark.moneytransfer.model.Account;
+import org.lightquark.moneytransfer.repository.AccountRepository;
+import org.openjdk.jol.info.GraphLayout;
+
+/**
+ * Prints the memory used by the structure of every account repository, without the accounts themselves.
+ * Run with: mvn -P benchmark verify -Dbenchmark.main=org.lightquark.moneytransfer.benchmark.AccountRepositoryFootprint
+ */
+public final class AccountRepositoryFootprint {
+
+    private static final int[] SIZES = {1_000_000, 10_000_000};
+    private static final String[] TYPES = {AccountRepository.TYPE_HASH_MAP, AccountRepository.TYPE_OPEN_ADDRESSING};
+
+    private AccountRepositoryFootprint() {
+    }
+
+    public static void main(String[] args) {
+        for (int size : SIZES) {
+            for (String type : TYPES) {
+                AccountRepository repository = AccountRepository.create(type);
+                Account[] accounts = new Account[size];
+                for (int i = 0; i < size; i++) {
+                    accounts[i] = new Account();
+                    repository.save(accounts[i]);
+                }
+
+                long total = GraphLayout.parseInstance(repository).totalSize();
+                long own = GraphLayout.parseInstance(repository).subtract(GraphLayout.parseInstance((Object) accounts))
+                        .totalSize();
+                System.out.printf("%-16s %,12d accounts: %,15d bytes in total, %,15d bytes of the structure "
+                        + "(%.1f bytes per account)%n", type, size, total, own, (double) own / size);
+            }
+        }
+    }
+}
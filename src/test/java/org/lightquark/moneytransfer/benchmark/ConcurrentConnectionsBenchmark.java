@@ -0,0 +1,192 @@
+package org.lightquark.moneytransfer.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.lightquark.moneytransfer.MoneyTransferApplication;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the platform and the virtual threads modes (virtual_threads in application.properties) with 10k
+ * concurrent connections, each of them sending deposits one after another. The journal is enabled, so the handling
+ * of a request blocks until the group commit, which is where the count of request threads matters.
+ * <p>
+ * Every mode runs the service in its own JVM on the same host, so raise the limit of open files first (ulimit -n).
+ * Run with: mvn -P benchmark verify
+ *     -Dbenchmark.main=org.lightquark.moneytransfer.benchmark.ConcurrentConnectionsBenchmark
+ */
+public final class ConcurrentConnectionsBenchmark {
+
+    private static final int CONNECTIONS = 10_000;
+    private static final int ACCOUNTS = 1_000;
+    private static final int PORT = 8095;
+    private static final long WARMUP_SECONDS = 10;
+    private static final long MEASUREMENT_SECONDS = 30;
+    private static final long STARTUP_TIMEOUT_SECONDS = 30;
+    private static final String BASE_URI = "http://localhost:" + PORT + "/";
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private ConcurrentConnectionsBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (boolean virtualThreads : new boolean[] {false, true}) {
+            Path directory = Files.createTempDirectory("connections-benchmark");
+            Process server = startServer(virtualThreads, directory);
+            try {
+                awaitStarted();
+                run(virtualThreads);
+            } finally {
+                server.destroy();
+                server.waitFor(STARTUP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    private static Process startServer(boolean virtualThreads, Path directory) throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        return new ProcessBuilder(java, "-Xms2g", "-Xmx2g",
+                "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn",
+                "-Dserver_port=" + PORT,
+                "-Dvirtual_threads=" + virtualThreads,
+                "-Djournal_enabled=true",
+                "-Djournal_file=" + directory.resolve("transaction-journal.dat"),
+                "-Dsnapshot_directory=" + directory.resolve("snapshots"),
+                "-cp", System.getProperty("java.class.path"),
+                MoneyTransferApplication.class.getName())
+                .redirectErrorStream(true)
+                .redirectOutput(directory.resolve("server.log").toFile())
+                .start();
+    }
+
+    private static void awaitStarted() throws InterruptedException {
+        HttpClient client = HttpClient.newHttpClient();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(STARTUP_TIMEOUT_SECONDS);
+        while (System.nanoTime() - deadline < 0) {
+            try {
+                HttpResponse<Void> response = client.send(
+                        HttpRequest.newBuilder(URI.create(BASE_URI + "transaction/locks")).build(),
+                        HttpResponse.BodyHandlers.discarding());
+                if (response.statusCode() == 200) {
+                    return;
+                }
+            } catch (IOException e) {
+                // Not listening yet
+            }
+            Thread.sleep(100);
+        }
+        throw new IllegalStateException("Service is not started within " + STARTUP_TIMEOUT_SECONDS + " seconds");
+    }
+
+    private static void run(boolean virtualThreads) throws Exception {
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).executor(executor)
+                .connectTimeout(Duration.ofSeconds(STARTUP_TIMEOUT_SECONDS)).build();
+        long[] accounts = new long[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            HttpResponse<String> response = client.send(request("account/create"),
+                    HttpResponse.BodyHandlers.ofString());
+            accounts[i] = OBJECT_MAPPER.readTree(response.body()).get("id").asLong();
+        }
+
+        long start = System.nanoTime();
+        long measurementStart = start + TimeUnit.SECONDS.toNanos(WARMUP_SECONDS);
+        long end = measurementStart + TimeUnit.SECONDS.toNanos(MEASUREMENT_SECONDS);
+        List<Future<Connection>> futures = new ArrayList<>(CONNECTIONS);
+        for (int i = 0; i < CONNECTIONS; i++) {
+            futures.add(executor.submit(() -> new Connection().run(client, accounts, measurementStart, end)));
+        }
+        long[] latencies = new long[0];
+        long errors = 0;
+        for (Future<Connection> future : futures) {
+            Connection connection = future.get();
+            int offset = latencies.length;
+            latencies = Arrays.copyOf(latencies, offset + connection.count);
+            System.arraycopy(connection.latencies, 0, latencies, offset, connection.count);
+            errors += connection.errors;
+        }
+        executor.shutdown();
+        Arrays.sort(latencies);
+
+        System.out.printf("%-9s threads, %,d connections: %,10.0f requests/s, %,d errors, latency ms: "
+                        + "mean %.2f, p50 %.2f, p99 %.2f, p99.9 %.2f, max %.2f%n",
+                virtualThreads ? "virtual" : "platform", CONNECTIONS, latencies.length / (double) MEASUREMENT_SECONDS,
+                errors, mean(latencies), percentile(latencies, 0.5), percentile(latencies, 0.99),
+                percentile(latencies, 0.999), percentile(latencies, 1.0));
+    }
+
+    private static HttpRequest request(String path) {
+        return HttpRequest.newBuilder(URI.create(BASE_URI + path)).PUT(HttpRequest.BodyPublishers.noBody()).build();
+    }
+
+    private static double mean(long[] latencies) {
+        double sum = 0;
+        for (long latency : latencies) {
+            sum += latency;
+        }
+        return latencies.length == 0 ? 0 : sum / latencies.length / 1e6;
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1)] / 1e6;
+    }
+
+    /**
+     * A client sending its requests one after another, the latencies after the warmup are kept.
+     */
+    private static final class Connection {
+        private long[] latencies = new long[1024];
+        private int count;
+        private long errors;
+
+        private Connection run(HttpClient client, long[] accounts, long measurementStart, long end) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long now = System.nanoTime();
+            while (now - end < 0) {
+                long account = accounts[random.nextInt(accounts.length)];
+                boolean ok;
+                try {
+                    ok = client.send(request("transaction/deposit?accountId=" + account + "&amount=1"),
+                            HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+                } catch (IOException e) {
+                    ok = false;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+                long sent = now;
+                now = System.nanoTime();
+                if (sent - measurementStart < 0) {
+                    continue;
+                }
+                if (!ok) {
+                    errors++;
+                } else {
+                    if (count == latencies.length) {
+                        latencies = Arrays.copyOf(latencies, count * 2);
+                    }
+                    latencies[count++] = now - sent;
+                }
+            }
+            return this;
+        }
+    }
+}
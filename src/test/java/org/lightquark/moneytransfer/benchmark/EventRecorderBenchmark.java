@@ -0,0 +1,61 @@
+package org.lightquark.moneytransfer.benchmark;
+
+import org.lightquark.moneytransfer.model.Transaction;
+import org.lightquark.moneytransfer.model.TransactionStatus;
+import org.lightquark.moneytransfer.model.TransactionType;
+import org.lightquark.moneytransfer.trace.EventRecorder;
+import org.lightquark.moneytransfer.trace.TraceEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording a trace event for the recording thread, the drain thread writes the file meanwhile.
+ * The dropped events are reported after the trial, a recording faster than the disk drops some.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class EventRecorderBenchmark {
+
+    private Path file;
+    private EventRecorder recorder;
+    private Transaction transaction;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Files.createTempFile("transaction-trace", ".dat");
+        recorder = new EventRecorder(file, 65536);
+        recorder.start();
+        transaction = new Transaction(1L, TransactionType.TRANSFER, TransactionStatus.COMPLETED, 1L, 2L, 100L);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        recorder.close();
+        System.out.println("Dropped events: " + recorder.getDroppedCount());
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void record() {
+        recorder.record(TraceEvent.COMPLETED, transaction);
+    }
+}
@@ -0,0 +1,109 @@
+package org.lightquark.moneytransfer.benchmark;
+
+import org.lightquark.moneytransfer.client.Acknowledgement;
+import org.lightquark.moneytransfer.client.TcpTransactionClient;
+import org.lightquark.moneytransfer.config.Config;
+import org.lightquark.moneytransfer.model.Account;
+import org.lightquark.moneytransfer.service.AccountService;
+import org.lightquark.moneytransfer.service.TransactionProcessor;
+import org.lightquark.moneytransfer.tcp.TcpIngestionServer;
+import org.lightquark.moneytransfer.web.JettyWebServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of accepting deposits over the REST API against the TCP ingestion, with the service in the same JVM.
+ * A batch of deposits of random accounts is sent and the benchmark waits until every one of them is answered:
+ * the REST requests are sent concurrently over a pool of HTTP/1.1 connections, the TCP ones are pipelined over
+ * a single connection. The journal is off as in the test configuration, the logging is limited to warnings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g", "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn"})
+public class IngestionThroughputBenchmark {
+
+    private static final int BATCH_SIZE = 256;
+    private static final int ACCOUNTS = 10_000;
+
+    private final AccountService accountService = AccountService.getInstance();
+    private JettyWebServer webServer;
+    private TcpIngestionServer tcpServer;
+    private HttpClient httpClient;
+    private TcpTransactionClient tcpClient;
+    private String depositUri;
+    private long[] accountIds;
+
+    @Setup
+    public void setUp() throws IOException {
+        new TransactionProcessor().start();
+        webServer = new JettyWebServer();
+        webServer.startForTests();
+        tcpServer = new TcpIngestionServer(0, Config.getInteger("tcp_connection_buffer_size", 65536));
+        tcpServer.start();
+        httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        tcpClient = new TcpTransactionClient("localhost", tcpServer.getPort());
+        depositUri = "http://localhost:" + Config.getInteger("server_port", 8080) + "/transaction/deposit";
+
+        accountService.clear();
+        accountIds = new long[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            Account account = accountService.create();
+            accountIds[i] = account.getId();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        tcpClient.close();
+        tcpServer.stop();
+        webServer.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void rest() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        CompletableFuture<?>[] responses = new CompletableFuture<?>[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            URI uri = URI.create(depositUri + "?accountId=" + accountIds[random.nextInt(ACCOUNTS)] + "&amount=0.01");
+            responses[i] = httpClient.sendAsync(HttpRequest.newBuilder(uri).PUT(HttpRequest.BodyPublishers.noBody())
+                    .build(), HttpResponse.BodyHandlers.ofByteArray());
+        }
+        CompletableFuture.allOf(responses).join();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public Acknowledgement tcp() throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        CompletableFuture<Acknowledgement> last = null;
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            last = tcpClient.deposit(accountIds[random.nextInt(ACCOUNTS)], 1L);
+        }
+        tcpClient.flush();
+        // The acknowledgements come in the order of the requests
+        return last.join();
+    }
+}
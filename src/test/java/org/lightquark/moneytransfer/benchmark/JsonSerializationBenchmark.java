@@ -0,0 +1,135 @@
+package org.lightquark.moneytransfer.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.lightquark.moneytransfer.json.JsonDecoder;
+import org.lightquark.moneytransfer.json.JsonEncoder;
+import org.lightquark.moneytransfer.model.Account;
+import org.lightquark.moneytransfer.model.Transaction;
+import org.lightquark.moneytransfer.model.TransactionStatus;
+import org.lightquark.moneytransfer.model.TransactionType;
+import org.lightquark.moneytransfer.service.AccountJsonCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson serialization of the entities returned by the REST endpoints, with a default mapper as the Jersey
+ * Jackson feature uses, against {@link JsonEncoder} and {@link JsonDecoder}. The *ToStream and encode* variants
+ * write into a reused stream, as the providers write into the response.
+ * <p>
+ * The main method adds the GC profiler, which reports the bytes allocated per operation (gc.alloc.rate.norm).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonSerializationBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectWriter accountWriter = objectMapper.writerFor(Account.class);
+    private final ObjectWriter transactionWriter = objectMapper.writerFor(Transaction.class);
+    private final ObjectReader transactionReader = objectMapper.readerFor(Transaction.class);
+    private final AccountJsonCache accountJsonCache = new AccountJsonCache();
+
+    private Account account;
+    private Transaction transaction;
+    private byte[] transactionJson;
+    private final ByteArrayOutputStream stream = new ByteArrayOutputStream(1024);
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        account = new Account(123_456L, 1_234_567_89L, 42L);
+        transaction = new Transaction(43L, TransactionType.TRANSFER, TransactionStatus.COMPLETED, 123_456L,
+                654_321L, 10_050L);
+        transactionJson = transactionWriter.writeValueAsBytes(transaction);
+    }
+
+    @Benchmark
+    public byte[] writeAccount() throws IOException {
+        return accountWriter.writeValueAsBytes(account);
+    }
+
+    /**
+     * Account read between changes of the account, see {@link AccountJsonCache}.
+     */
+    @Benchmark
+    public byte[] writeCachedAccount() {
+        return accountJsonCache.getJson(account);
+    }
+
+    @Benchmark
+    public byte[] writeTransaction() throws IOException {
+        return transactionWriter.writeValueAsBytes(transaction);
+    }
+
+    @Benchmark
+    public Transaction readTransaction() throws IOException {
+        return transactionReader.readValue(transactionJson);
+    }
+
+    @Benchmark
+    public int writeAccountToStream() throws IOException {
+        stream.reset();
+        accountWriter.writeValue(stream, account);
+        return stream.size();
+    }
+
+    @Benchmark
+    public int encodeAccount() throws IOException {
+        stream.reset();
+        try (JsonEncoder encoder = JsonEncoder.open(stream)) {
+            encoder.writeAccount(account);
+        }
+        return stream.size();
+    }
+
+    @Benchmark
+    public int writeTransactionToStream() throws IOException {
+        stream.reset();
+        transactionWriter.writeValue(stream, transaction);
+        return stream.size();
+    }
+
+    @Benchmark
+    public int encodeTransaction() throws IOException {
+        stream.reset();
+        try (JsonEncoder encoder = JsonEncoder.open(stream)) {
+            encoder.writeTransaction(transaction);
+        }
+        return stream.size();
+    }
+
+    @Benchmark
+    public Transaction decodeTransaction() throws IOException {
+        return JsonDecoder.readTransaction(new ByteArrayInputStream(transactionJson));
+    }
+}
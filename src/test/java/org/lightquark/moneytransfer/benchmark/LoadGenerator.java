@@ -0,0 +1,287 @@
+package org.lightquark.moneytransfer.benchmark;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.lightquark.moneytransfer.config.Config;
+import org.lightquark.moneytransfer.model.Account;
+import org.lightquark.moneytransfer.service.AccountService;
+import org.lightquark.moneytransfer.service.TransactionProcessor;
+import org.lightquark.moneytransfer.web.JettyWebServer;
+
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load test of the REST API. The service is started in this JVM with the test configuration, then
+ * the requests are sent at a fixed arrival rate whatever the responses are, and every latency is measured from
+ * the time the request was due, not from the time it was sent. A slow service therefore cannot lower the load
+ * or hide the requests which would have waited behind the slow ones (coordinated omission).
+ * <p>
+ * The transactions are sent without await to measure the submit latency, and with ?await= to measure the latency
+ * until the final status, see {@link #AWAIT_SHARE}. Accounts are picked uniformly or by a Zipf distribution.
+ * <p>
+ * Options are comma separated key=value pairs, see {@link #DEFAULT_OPTIONS}:
+ * <pre>
+ * mvn -P benchmark verify -Dbenchmark.main=org.lightquark.moneytransfer.benchmark.LoadGenerator
+ *     -Dbenchmark.include=rate=5000,duration=60,skew=zipf
+ * </pre>
+ * The percentiles are printed in milliseconds, the full distributions are written to target/load-*.hgrm.
+ */
+public final class LoadGenerator {
+
+    private static final String RATE = "rate";
+    private static final String WARMUP = "warmup";
+    private static final String DURATION = "duration";
+    private static final String ACCOUNTS = "accounts";
+    private static final String SKEW = "skew";
+    private static final String ZIPF_EXPONENT = "zipf_exponent";
+    private static final String AWAIT_SHARE = "await_share";
+    private static final String AWAIT_TIMEOUT = "await_timeout";
+    private static final String DEPOSIT_WEIGHT = "deposit_weight";
+    private static final String WITHDRAW_WEIGHT = "withdraw_weight";
+    private static final String TRANSFER_WEIGHT = "transfer_weight";
+    private static final String READ_WEIGHT = "read_weight";
+    private static final String SKEW_UNIFORM = "uniform";
+    private static final String SKEW_ZIPF = "zipf";
+    private static final String DEFAULT_OPTIONS = RATE + "=1000," + WARMUP + "=10," + DURATION + "=60,"
+            + ACCOUNTS + "=10000," + SKEW + "=" + SKEW_UNIFORM + "," + ZIPF_EXPONENT + "=1.0,"
+            + AWAIT_SHARE + "=0.5," + AWAIT_TIMEOUT + "=10000," + DEPOSIT_WEIGHT + "=30," + WITHDRAW_WEIGHT + "=20,"
+            + TRANSFER_WEIGHT + "=40," + READ_WEIGHT + "=10";
+
+    private static final long INITIAL_BALANCE = 1_000_000_000_000L;
+    private static final long DRAIN_TIMEOUT_SECONDS = 30;
+    private static final String COMPLETED = "\"status\":\"COMPLETED\"";
+
+    private final Map<String, String> options;
+    private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(DRAIN_TIMEOUT_SECONDS)).build();
+    private final String baseUri = "http://localhost:" + Config.getInteger("server_port", 8080) + "/";
+    private final AccountPicker picker;
+    private final long[] accounts;
+    private final double awaitShare;
+    private final long awaitTimeout;
+    // Cumulative weights of deposit, withdraw, transfer and read
+    private final int[] weights;
+
+    private final Recorder submitLatency = new Recorder(3);
+    private final Recorder completionLatency = new Recorder(3);
+    private final Recorder readLatency = new Recorder(3);
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong notCompleted = new AtomicLong();
+
+    private LoadGenerator(Map<String, String> options) {
+        this.options = options;
+        int accountCount = Integer.parseInt(options.get(ACCOUNTS));
+        String skew = options.get(SKEW);
+        if (SKEW_ZIPF.equals(skew)) {
+            picker = new ZipfPicker(accountCount, Double.parseDouble(options.get(ZIPF_EXPONENT)));
+        } else if (SKEW_UNIFORM.equals(skew)) {
+            picker = random -> random.nextInt(accountCount);
+        } else {
+            throw new IllegalArgumentException("Unknown skew " + skew);
+        }
+        accounts = new long[accountCount];
+        awaitShare = Double.parseDouble(options.get(AWAIT_SHARE));
+        awaitTimeout = Long.parseLong(options.get(AWAIT_TIMEOUT));
+        weights = new int[4];
+        String[] keys = {DEPOSIT_WEIGHT, WITHDRAW_WEIGHT, TRANSFER_WEIGHT, READ_WEIGHT};
+        for (int i = 0; i < keys.length; i++) {
+            weights[i] = (i == 0 ? 0 : weights[i - 1]) + Integer.parseInt(options.get(keys[i]));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        // Before any logger is created, the service logs every transaction at the info level
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn");
+        Map<String, String> options = parseOptions(DEFAULT_OPTIONS);
+        for (String arg : args) {
+            options.putAll(parseOptions(arg));
+        }
+
+        new TransactionProcessor().start();
+        JettyWebServer webServer = new JettyWebServer();
+        webServer.startForTests();
+        try {
+            new LoadGenerator(options).run();
+        } finally {
+            webServer.stop();
+        }
+        // The processing threads run until the JVM exits
+        System.exit(0);
+    }
+
+    /**
+     * Arguments without a key=value pair are ignored, e.g. the default benchmark include pattern.
+     */
+    private static Map<String, String> parseOptions(String arg) {
+        Map<String, String> options = new HashMap<>();
+        for (String option : arg.split(",")) {
+            int separator = option.indexOf('=');
+            if (separator > 0) {
+                options.put(option.substring(0, separator).trim(), option.substring(separator + 1).trim());
+            }
+        }
+        return options;
+    }
+
+    private void run() throws FileNotFoundException, InterruptedException {
+        AccountService accountService = AccountService.getInstance();
+        for (int i = 0; i < accounts.length; i++) {
+            Account account = accountService.create();
+            account.credit(INITIAL_BALANCE);
+            accounts[i] = account.getId();
+        }
+
+        long rate = Long.parseLong(options.get(RATE));
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long measurementStart = start + TimeUnit.SECONDS.toNanos(Long.parseLong(options.get(WARMUP)));
+        long end = measurementStart + TimeUnit.SECONDS.toNanos(Long.parseLong(options.get(DURATION)));
+        System.out.printf("Sending %,d requests/s for %s s after %s s of warmup, options %s%n",
+                rate, options.get(DURATION), options.get(WARMUP), options);
+
+        long sent = 0;
+        long due = start;
+        while (due - end < 0) {
+            long now = System.nanoTime();
+            if (now - due < 0) {
+                LockSupport.parkNanos(due - now);
+                continue;
+            }
+            boolean measured = due - measurementStart >= 0;
+            // A late sender catches up with the requests already due, each keeps its own due time
+            send(due, measured);
+            if (measured) {
+                sent++;
+            }
+            due += interval;
+        }
+
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(DRAIN_TIMEOUT_SECONDS);
+        while (inFlight.get() > 0 && System.nanoTime() - drainDeadline < 0) {
+            Thread.sleep(10);
+        }
+
+        double seconds = Double.parseDouble(options.get(DURATION));
+        System.out.printf("Sent %,d requests (%,.0f/s), %,d errors, %,d awaited transactions not completed, "
+                        + "%,d requests still in flight%n", sent, sent / seconds, errors.get(), notCompleted.get(),
+                inFlight.get());
+        report("submit", submitLatency.getIntervalHistogram());
+        report("completion", completionLatency.getIntervalHistogram());
+        report("read", readLatency.getIntervalHistogram());
+    }
+
+    /**
+     * @param measured false for the requests of the warmup, they are not counted
+     */
+    private void send(long due, boolean measured) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int operation = random.nextInt(weights[weights.length - 1]);
+        long account = accounts[picker.pick(random)];
+        String path;
+        Recorder recorder;
+        if (operation < weights[0]) {
+            path = "transaction/deposit?accountId=" + account + "&amount=1";
+        } else if (operation < weights[1]) {
+            path = "transaction/withdraw?accountId=" + account + "&amount=1";
+        } else if (operation < weights[2]) {
+            int destination = picker.pick(random);
+            if (accounts[destination] == account) {
+                destination = (destination + 1) % accounts.length;
+            }
+            path = "transaction/transfer?sourceAccountId=" + account + "&destinationAccountId="
+                    + accounts[destination] + "&amount=1";
+        } else {
+            path = "account/" + account;
+        }
+
+        HttpRequest.Builder request = HttpRequest.newBuilder().timeout(Duration.ofSeconds(DRAIN_TIMEOUT_SECONDS));
+        boolean awaited = false;
+        if (path.startsWith("account/")) {
+            recorder = readLatency;
+            request.uri(URI.create(baseUri + path)).GET();
+        } else {
+            awaited = random.nextDouble() < awaitShare;
+            recorder = awaited ? completionLatency : submitLatency;
+            request.uri(URI.create(baseUri + path + (awaited ? "&await=" + awaitTimeout : "")))
+                    .PUT(HttpRequest.BodyPublishers.noBody());
+        }
+
+        boolean completion = awaited;
+        inFlight.incrementAndGet();
+        client.sendAsync(request.build(), HttpResponse.BodyHandlers.ofString()).whenComplete((response, e) -> {
+            long latency = System.nanoTime() - due;
+            inFlight.decrementAndGet();
+            if (!measured) {
+                return;
+            }
+            if (e != null || response.statusCode() >= 300) {
+                errors.incrementAndGet();
+            } else if (completion && (response.statusCode() != 200 || !response.body().contains(COMPLETED))) {
+                notCompleted.incrementAndGet();
+            } else {
+                recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(latency));
+            }
+        });
+    }
+
+    private static void report(String name, Histogram histogram) throws FileNotFoundException {
+        System.out.printf("%-10s %,10d requests, latency ms: mean %.2f, p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, "
+                        + "p99.99 %.2f, max %.2f%n", name, histogram.getTotalCount(), histogram.getMean() / 1000,
+                percentile(histogram, 50), percentile(histogram, 90), percentile(histogram, 99),
+                percentile(histogram, 99.9), percentile(histogram, 99.99), histogram.getMaxValue() / 1000.0);
+        Path file = Paths.get("target", "load-" + name + ".hgrm");
+        try (PrintStream out = new PrintStream(file.toFile())) {
+            histogram.outputPercentileDistribution(out, 1000.0);
+        }
+    }
+
+    private static double percentile(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    @FunctionalInterface
+    private interface AccountPicker {
+        int pick(ThreadLocalRandom random);
+    }
+
+    /**
+     * Picks the account of rank k with a probability proportional to 1 / k^exponent.
+     */
+    private static final class ZipfPicker implements AccountPicker {
+        private final double[] cumulative;
+
+        private ZipfPicker(int count, double exponent) {
+            cumulative = new double[count];
+            double sum = 0;
+            for (int i = 0; i < count; i++) {
+                sum += 1 / Math.pow(i + 1, exponent);
+                cumulative[i] = sum;
+            }
+            for (int i = 0; i < count; i++) {
+                cumulative[i] /= sum;
+            }
+        }
+
+        @Override
+        public int pick(ThreadLocalRandom random) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble());
+            return Math.min(index < 0 ? -index - 1 : index, cumulative.length - 1);
+        }
+    }
+}
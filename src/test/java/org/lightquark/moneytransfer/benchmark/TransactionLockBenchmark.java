@@ -0,0 +1,93 @@
+package org.lightquark.moneytransfer.benchmark;
+
+import org.lightquark.moneytransfer.model.Account;
+import org.lightquark.moneytransfer.model.Transaction;
+import org.lightquark.moneytransfer.model.TransactionStatus;
+import org.lightquark.moneytransfer.model.TransactionType;
+import org.lightquark.moneytransfer.util.TransactionUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cost of {@link TransactionUtils#doWithLock} for one and two accounts, with the accounts of every thread
+ * (uncontended) and with the accounts shared by all the threads (contended). The contended transfers take
+ * the accounts in both orders, as opposite transfers do.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransactionLockBenchmark {
+
+    private static final int CONTENDED_THREADS = 4;
+
+    @State(Scope.Thread)
+    public static class OwnAccounts {
+        private final Account source = new Account();
+        private final Account destination = new Account();
+        private final Transaction transaction = new Transaction(1L, TransactionType.TRANSFER,
+                TransactionStatus.UNPROCESSED, source.getId(), destination.getId(), 100L);
+    }
+
+    @State(Scope.Benchmark)
+    public static class SharedAccounts {
+        private final Account source = new Account();
+        private final Account destination = new Account();
+        private final Transaction transaction = new Transaction(1L, TransactionType.TRANSFER,
+                TransactionStatus.UNPROCESSED, source.getId(), destination.getId(), 100L);
+    }
+
+    @State(Scope.Thread)
+    public static class Direction {
+        private static final AtomicInteger THREADS = new AtomicInteger();
+
+        private boolean reversed;
+
+        @Setup
+        public void setUp() {
+            reversed = THREADS.getAndIncrement() % 2 == 1;
+        }
+    }
+
+    @Benchmark
+    public boolean single(OwnAccounts accounts, Blackhole blackhole) {
+        return TransactionUtils.doWithLock(accounts.source, accounts.transaction,
+                (account, transaction) -> blackhole.consume(transaction));
+    }
+
+    @Benchmark
+    public boolean dual(OwnAccounts accounts, Blackhole blackhole) {
+        return TransactionUtils.doWithLock(accounts.source, accounts.destination, accounts.transaction,
+                (source, destination, transaction) -> blackhole.consume(transaction));
+    }
+
+    @Benchmark
+    @Threads(CONTENDED_THREADS)
+    public boolean singleContended(SharedAccounts accounts, Blackhole blackhole) {
+        return TransactionUtils.doWithLock(accounts.source, accounts.transaction,
+                (account, transaction) -> blackhole.consume(transaction));
+    }
+
+    @Benchmark
+    @Threads(CONTENDED_THREADS)
+    public boolean dualContended(SharedAccounts accounts, Direction direction, Blackhole blackhole) {
+        Account first = direction.reversed ? accounts.destination : accounts.source;
+        Account second = direction.reversed ? accounts.source : accounts.destination;
+        return TransactionUtils.doWithLock(first, second, accounts.transaction,
+                (source, destination, transaction) -> blackhole.consume(transaction));
+    }
+}
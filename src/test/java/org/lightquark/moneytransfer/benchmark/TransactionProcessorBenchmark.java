@@ -0,0 +1,89 @@
+package org.lightquark.moneytransfer.benchmark;
+
+import org.lightquark.moneytransfer.model.Account;
+import org.lightquark.moneytransfer.model.Transaction;
+import org.lightquark.moneytransfer.model.TransactionType;
+import org.lightquark.moneytransfer.repository.TransactionRepository;
+import org.lightquark.moneytransfer.service.AccountService;
+import org.lightquark.moneytransfer.service.TransactionProcessor;
+import org.lightquark.moneytransfer.service.TransactionService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the whole processing of deposits, withdrawals and transfers: a batch of transactions of random
+ * accounts is saved and the benchmark waits until {@link TransactionProcessor} has processed all of them.
+ * The journal is off as in the test configuration, the logging is limited to warnings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g", "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn"})
+public class TransactionProcessorBenchmark {
+
+    private static final int BATCH_SIZE = 1024;
+    private static final int ACCOUNTS = 10_000;
+    private static final long INITIAL_BALANCE = 1_000_000_000_000L;
+
+    @Param({"DEPOSIT", "WITHDRAW", "TRANSFER"})
+    private TransactionType type;
+
+    private final AccountService accountService = AccountService.getInstance();
+    private final TransactionService transactionService = TransactionService.getInstance();
+    private final TransactionRepository transactionRepository = TransactionRepository.getInstance();
+    private Account[] accounts;
+
+    @Setup
+    public void setUp() {
+        new TransactionProcessor().start();
+        accountService.clear();
+        accounts = new Account[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts[i] = accountService.create();
+            accounts[i].credit(INITIAL_BALANCE);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void process() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<Transaction> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            int index = random.nextInt(ACCOUNTS);
+            Account account = accounts[index];
+            switch (type) {
+                case DEPOSIT:
+                    batch.add(transactionService.createDeposit(account, 1L));
+                    break;
+                case WITHDRAW:
+                    batch.add(transactionService.createWithdraw(account, 1L));
+                    break;
+                default:
+                    Account destination = accounts[(index + 1 + random.nextInt(ACCOUNTS - 1)) % ACCOUNTS];
+                    batch.add(transactionService.createTransfer(account, destination, 1L));
+            }
+        }
+        transactionService.saveAll(batch);
+        while (transactionRepository.getSize() > 0) {
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.lightquark.moneytransfer.benchmark;
+
+import org.lightquark.moneytransfer.model.Transaction;
+import org.lightquark.moneytransfer.model.TransactionStatus;
+import org.lightquark.moneytransfer.model.TransactionType;
+import org.lightquark.moneytransfer.repository.TransactionRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of a partition of {@link TransactionRepository} with several threads saving into it while its single
+ * processing thread drains it with getNext. The draining thread is not a benchmark thread: a bounded queue blocks
+ * the saving threads until it is drained, so the draining must go on until every benchmark thread is done.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class TransactionRepositoryBenchmark {
+
+    private static final int SAVING_THREADS = 3;
+
+    @Param({TransactionRepository.QUEUE_TYPE_LINKED, TransactionRepository.QUEUE_TYPE_RING})
+    private String queueType;
+
+    private TransactionRepository repository;
+    private Transaction transaction;
+    private Thread drainer;
+    private volatile boolean draining;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        repository = new TransactionRepository(1, queueType);
+        transaction = new Transaction(1L, TransactionType.DEPOSIT, TransactionStatus.UNPROCESSED, 1L, null, 100L);
+    }
+
+    @Setup(Level.Iteration)
+    public void startDraining() {
+        draining = true;
+        drainer = new Thread(() -> {
+            while (draining || repository.getSize() > 0) {
+                Transaction next = repository.getNext(0);
+                if (next != null) {
+                    repository.markProcessed(next);
+                }
+            }
+        });
+        drainer.start();
+    }
+
+    @TearDown(Level.Iteration)
+    public void stopDraining() throws InterruptedException {
+        draining = false;
+        drainer.join();
+    }
+
+    @Benchmark
+    @Threads(SAVING_THREADS)
+    public void save() {
+        repository.save(transaction);
+    }
+}
@@ -3,7 +3,16 @@ package org.lightquark.moneytransfer.controller;
 import org.junit.Assert;
 import org.junit.Test;
 import org.lightquark.moneytransfer.model.Account;
+import org.lightquark.moneytransfer.model.AccountPage;
+import org.lightquark.moneytransfer.model.TransactionPage;
+import org.lightquark.moneytransfer.repository.TransactionRepository;
+import org.lightquark.moneytransfer.service.TransactionProcessor;
+import org.lightquark.moneytransfer.service.TransactionService;
+import org.lightquark.moneytransfer.util.ThreadUtils;
 
+import java.math.BigDecimal;
+
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
 public class AccountControllerTest extends BaseControllerTest {
@@ -46,6 +55,42 @@ public class AccountControllerTest extends BaseControllerTest {
         Assert.assertEquals(10, accounts.length);
     }
 
+    @Test
+    public void shouldFindAllAccounts_whenPaged() {
+
+        for (int i = 0; i < 5; i++) {
+            accountService.create();
+        }
+
+        int count = 0;
+        String cursor = "0";
+        while (cursor != null) {
+            AccountPage page = assertOkResponse(get("account/all", "from", cursor, "limit", "2"))
+                    .readEntity(AccountPage.class);
+            Assert.assertTrue(page.getAccounts().size() <= 2);
+            count += page.getAccounts().size();
+            cursor = page.getNext() == null ? null : page.getNext().toString();
+        }
+        Assert.assertEquals(5, count);
+
+        assertBadRequestResponse(get("account/all", "limit", "0"));
+    }
+
+    @Test
+    public void shouldStreamAllAccounts_whenNdjsonIsAccepted() {
+
+        for (int i = 0; i < 3; i++) {
+            accountService.create();
+        }
+
+        Response response = assertOkResponse(get("account/all",
+                MediaType.valueOf(TransactionController.APPLICATION_NDJSON)));
+
+        String[] lines = response.readEntity(String.class).split("\n");
+        Assert.assertEquals(3, lines.length);
+        Assert.assertTrue(lines[0].startsWith("{\"id\":"));
+    }
+
     @Test
     public void shouldCreateAccount() {
 
@@ -55,6 +100,15 @@ public class AccountControllerTest extends BaseControllerTest {
         Assert.assertNotNull(created);
     }
 
+    @Test
+    public void shouldCreateHotAccount() {
+
+        Response response = assertOkResponse(put("account/create", "hot", "true"));
+
+        Account created = response.readEntity(Account.class);
+        Assert.assertTrue(accountService.find(created.getId()).isHot());
+    }
+
     @Test
     public void shouldDeleteAccount() {
 
@@ -78,4 +132,32 @@ public class AccountControllerTest extends BaseControllerTest {
 
         assertBadRequestResponse(delete("account/" + invalidId.toString()));
     }
+
+    @Test
+    public void shouldFindAccountTransactions_byPages() {
+
+        new TransactionProcessor().start();
+        Account account = accountService.create();
+        for (int i = 1; i <= 5; i++) {
+            TransactionService.getInstance().deposit(account, BigDecimal.valueOf(i));
+        }
+        while (TransactionRepository.getInstance().getSize() > 0) {
+            ThreadUtils.sleep(10L);
+        }
+
+        String path = "account/" + account.getId() + "/transactions";
+        TransactionPage first = assertOkResponse(get(path, "limit", "3")).readEntity(TransactionPage.class);
+        Assert.assertEquals(3, first.getTransactions().size());
+        Assert.assertEquals(BigDecimal.ONE, first.getTransactions().get(0).getAmount());
+        Assert.assertEquals(Long.valueOf(3L), first.getNext());
+
+        TransactionPage second = assertOkResponse(get(path, "from", first.getNext().toString(), "limit", "3"))
+                .readEntity(TransactionPage.class);
+        Assert.assertEquals(2, second.getTransactions().size());
+        Assert.assertEquals(BigDecimal.valueOf(5), second.getTransactions().get(1).getAmount());
+        Assert.assertNull(second.getNext());
+
+        assertBadRequestResponse(get(path, "limit", "0"));
+        assertBadRequestResponse(get("account/" + (account.getId() + 1) + "/transactions"));
+    }
 }
@@ -4,6 +4,7 @@ import org.junit.AfterClass;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.BeforeClass;
+import org.lightquark.moneytransfer.json.JsonCodecFeature;
 import org.lightquark.moneytransfer.service.AccountService;
 import org.lightquark.moneytransfer.web.JettyWebServer;
 
@@ -11,6 +12,7 @@ import javax.ws.rs.client.Client;
 import javax.ws.rs.client.ClientBuilder;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
 public abstract class BaseControllerTest {
@@ -26,7 +28,7 @@ public abstract class BaseControllerTest {
     public static void beforeClass() {
         webServer = new JettyWebServer();
         webServer.startForTests();
-        client = ClientBuilder.newClient();
+        client = ClientBuilder.newClient().register(JsonCodecFeature.class);
         webTarget = client.target(LOCALHOST_URI);
     }
 
@@ -58,10 +60,22 @@ public abstract class BaseControllerTest {
         return createTargetWithQueryParams(path, params).request().get();
     }
 
+    static Response get(String path, MediaType accepted, String... params) {
+        return createTargetWithQueryParams(path, params).request(accepted).get();
+    }
+
     static Response put(String path, String... params) {
         return createTargetWithQueryParams(path, params).request().put(Entity.text(""));
     }
 
+    static Response putWithHeader(String path, String header, String value, String... params) {
+        return createTargetWithQueryParams(path, params).request().header(header, value).put(Entity.text(""));
+    }
+
+    static Response post(String path, String body, String mediaType) {
+        return createTargetWithQueryParams(path).request().post(Entity.entity(body, mediaType));
+    }
+
     static Response delete(String path, String... params) {
         return createTargetWithQueryParams(path, params).request().delete();
     }
@@ -0,0 +1,32 @@
+package org.lightquark.moneytransfer.controller;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.lightquark.moneytransfer.model.Account;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+public class MetricsControllerTest extends BaseControllerTest {
+
+    private static final String METRICS_URI = "metrics";
+
+    @Test
+    public void shouldReturnMetricsInPrometheusFormat() {
+        Account account = accountService.create();
+        Assert.assertNotNull(account);
+        assertOkResponse(put("transaction/deposit", "accountId", account.getId().toString(), "amount", "10"));
+
+        Response response = assertOkResponse(get(METRICS_URI));
+        Assert.assertTrue(response.getMediaType().isCompatible(MediaType.TEXT_PLAIN_TYPE));
+
+        String metrics = response.readEntity(String.class);
+        Assert.assertTrue(metrics.contains("# TYPE moneytransfer_queue_depth gauge\n"));
+        Assert.assertFalse(metrics.contains("moneytransfer_transactions_enqueued_total 0\n"));
+        Assert.assertTrue(metrics.contains(
+                "moneytransfer_transactions_processed_total{type=\"DEPOSIT\",status=\"COMPLETED\"} "));
+        Assert.assertTrue(metrics.contains(
+                "moneytransfer_transaction_processing_seconds_bucket{type=\"TRANSFER\",le=\"+Inf\"} "));
+        Assert.assertEquals(1, metrics.split("# TYPE moneytransfer_transaction_processing_seconds ").length - 1);
+    }
+}
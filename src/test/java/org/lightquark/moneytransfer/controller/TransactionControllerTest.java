@@ -1,13 +1,26 @@
 package org.lightquark.moneytransfer.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Assert;
 import org.junit.Test;
 import org.lightquark.moneytransfer.model.Account;
+import org.lightquark.moneytransfer.model.BatchItemResult;
 import org.lightquark.moneytransfer.model.Transaction;
+import org.lightquark.moneytransfer.model.TransactionStatus;
 import org.lightquark.moneytransfer.model.TransactionType;
+import org.lightquark.moneytransfer.service.AdmissionControl;
+import org.lightquark.moneytransfer.service.TransactionProcessor;
 
+import java.io.IOException;
 import java.math.BigDecimal;
-
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
 public class TransactionControllerTest extends BaseControllerTest {
@@ -15,11 +28,15 @@ public class TransactionControllerTest extends BaseControllerTest {
     private static final String TRANSACTION_DEPOSIT_URI = "transaction/deposit";
     private static final String TRANSACTION_WITHDRAW_URI = "transaction/withdraw";
     private static final String TRANSACTION_TRANSFER_URI = "transaction/transfer";
+    private static final String TRANSACTION_BATCH_URI = "transaction/batch";
+    private static final String IDEMPOTENCY_KEY = TransactionController.IDEMPOTENCY_KEY_HEADER;
 
     private static final BigDecimal AMOUNT_BIG = BigDecimal.valueOf(1_000_000_000L);
     private static final BigDecimal AMOUNT_POSITIVE = BigDecimal.valueOf(10);
     private static final BigDecimal AMOUNT_ZERO = BigDecimal.ZERO;
     private static final BigDecimal AMOUNT_NEGATIVE = BigDecimal.valueOf(-10);
+    private static final BigDecimal AMOUNT_FRACTION = new BigDecimal("10.25");
+    private static final BigDecimal AMOUNT_TOO_PRECISE = new BigDecimal("10.001");
 
     /////////////////////////////////////////////////////////////////
     // Deposit transactions
@@ -42,6 +59,31 @@ public class TransactionControllerTest extends BaseControllerTest {
         Assert.assertEquals(AMOUNT_POSITIVE, returned.getAmount());
     }
 
+    @Test
+    public void shouldCreateDepositTransaction_whenFractionAmount() {
+
+        Account account = accountService.create();
+        Assert.assertNotNull(account);
+
+        Response response = assertOkResponse(put(TRANSACTION_DEPOSIT_URI,
+                "accountId", account.getId().toString(),
+                "amount", AMOUNT_FRACTION.toString()));
+
+        Transaction returned = response.readEntity(Transaction.class);
+        Assert.assertNotNull(returned);
+        Assert.assertEquals(AMOUNT_FRACTION, returned.getAmount());
+    }
+
+    @Test
+    public void shouldNotCreateDepositTransaction_whenAmountIsTooPrecise() {
+        Account account = accountService.create();
+        Assert.assertNotNull(account);
+
+        assertBadRequestResponse(put(TRANSACTION_DEPOSIT_URI,
+                "accountId", account.getId().toString(),
+                "amount", AMOUNT_TOO_PRECISE.toString()));
+    }
+
     @Test
     public void shouldNotCreateDepositTransaction_whenMissedParams() {
         Account account = accountService.create();
@@ -88,6 +130,87 @@ public class TransactionControllerTest extends BaseControllerTest {
                 "amount", AMOUNT_NEGATIVE.toString()));
     }
 
+    @Test
+    public void shouldReturnCompletedDepositTransaction_whenAwait() {
+        new TransactionProcessor().start();
+        Account account = accountService.create();
+        Assert.assertNotNull(account);
+
+        Response response = assertOkResponse(put(TRANSACTION_DEPOSIT_URI,
+                "accountId", account.getId().toString(),
+                "amount", AMOUNT_POSITIVE.toString(),
+                "await", "5000"));
+
+        Transaction returned = response.readEntity(Transaction.class);
+        Assert.assertEquals(TransactionStatus.COMPLETED, returned.getStatus());
+        Assert.assertEquals(0, AMOUNT_POSITIVE.compareTo(account.getBalance()));
+    }
+
+    @Test
+    public void shouldNotCreateDepositTransaction_whenInvalidAwait() {
+        Account account = accountService.create();
+        Assert.assertNotNull(account);
+
+        assertBadRequestResponse(put(TRANSACTION_DEPOSIT_URI,
+                "accountId", account.getId().toString(),
+                "amount", AMOUNT_POSITIVE.toString(),
+                "await", "0"));
+        Assert.assertEquals(0L, account.getTransactionIdGenerator().get());
+    }
+
+    @Test
+    public void shouldReturnOriginalTransaction_whenIdempotencyKeyIsRepeated() {
+        Account account = accountService.create();
+        Assert.assertNotNull(account);
+        String key = UUID.randomUUID().toString();
+
+        Transaction first = assertOkResponse(putWithHeader(TRANSACTION_DEPOSIT_URI, IDEMPOTENCY_KEY, key,
+                "accountId", account.getId().toString(),
+                "amount", AMOUNT_POSITIVE.toString())).readEntity(Transaction.class);
+        Transaction repeated = assertOkResponse(putWithHeader(TRANSACTION_DEPOSIT_URI, IDEMPOTENCY_KEY, key,
+                "accountId", account.getId().toString(),
+                "amount", AMOUNT_POSITIVE.toString())).readEntity(Transaction.class);
+
+        Assert.assertEquals(first.getId(), repeated.getId());
+        Assert.assertEquals(1L, account.getTransactionIdGenerator().get());
+    }
+
+    @Test
+    public void shouldRejectIdempotencyKey_whenReusedForOtherParams() {
+        Account account = accountService.create();
+        Assert.assertNotNull(account);
+        String key = UUID.randomUUID().toString();
+
+        assertOkResponse(putWithHeader(TRANSACTION_DEPOSIT_URI, IDEMPOTENCY_KEY, key,
+                "accountId", account.getId().toString(),
+                "amount", AMOUNT_POSITIVE.toString()));
+        Response response = putWithHeader(TRANSACTION_WITHDRAW_URI, IDEMPOTENCY_KEY, key,
+                "accountId", account.getId().toString(),
+                "amount", AMOUNT_POSITIVE.toString());
+
+        Assert.assertEquals(422, response.getStatus());
+        Assert.assertEquals(1L, account.getTransactionIdGenerator().get());
+    }
+
+    @Test
+    public void shouldCreateSingleTransaction_whenIdempotencyKeyIsRepeatedConcurrently() throws Exception {
+        Account account = accountService.create();
+        Assert.assertNotNull(account);
+        String key = UUID.randomUUID().toString();
+
+        List<CompletableFuture<Long>> requests = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            requests.add(CompletableFuture.supplyAsync(() -> assertOkResponse(putWithHeader(
+                    TRANSACTION_DEPOSIT_URI, IDEMPOTENCY_KEY, key,
+                    "accountId", account.getId().toString(),
+                    "amount", AMOUNT_POSITIVE.toString())).readEntity(Transaction.class).getId()));
+        }
+        for (CompletableFuture<Long> request : requests) {
+            Assert.assertEquals(Long.valueOf(1L), request.get(10, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(1L, account.getTransactionIdGenerator().get());
+    }
+
     /////////////////////////////////////////////////////////////////
     // Withdraw transactions
     /////////////////////////////////////////////////////////////////
@@ -296,4 +419,122 @@ public class TransactionControllerTest extends BaseControllerTest {
                 "amount", AMOUNT_POSITIVE.toString()));
     }
 
+    /////////////////////////////////////////////////////////////////
+    // Batch of transactions
+    /////////////////////////////////////////////////////////////////
+
+    @Test
+    public void shouldCreateBatchOfTransactions_whenJsonArray() throws IOException {
+
+        Account sourceAccount = accountService.create();
+        Assert.assertNotNull(sourceAccount);
+        sourceAccount.setBalance(AMOUNT_BIG);
+        Account destinationAccount = accountService.create();
+        Assert.assertNotNull(destinationAccount);
+
+        String body = "["
+                + "{\"type\":\"DEPOSIT\",\"accountId\":" + destinationAccount.getId() + ",\"amount\":10},"
+                + "{\"type\":\"WITHDRAW\",\"accountId\":" + sourceAccount.getId() + ",\"amount\":10},"
+                + "{\"type\":\"TRANSFER\",\"sourceAccountId\":" + sourceAccount.getId()
+                + ",\"destinationAccountId\":" + destinationAccount.getId() + ",\"amount\":10}"
+                + "]";
+
+        BatchItemResult[] results = readBatchResults(
+                assertOkResponse(post(TRANSACTION_BATCH_URI, body, MediaType.APPLICATION_JSON)));
+        Assert.assertEquals(3, results.length);
+        Assert.assertEquals(TransactionType.DEPOSIT, results[0].getTransaction().getType());
+        Assert.assertEquals(destinationAccount.getId(), results[0].getTransaction().getSourceAccountId());
+        Assert.assertEquals(TransactionType.WITHDRAW, results[1].getTransaction().getType());
+        Assert.assertEquals(TransactionType.TRANSFER, results[2].getTransaction().getType());
+        Assert.assertEquals(destinationAccount.getId(), results[2].getTransaction().getDestinationAccountId());
+        Assert.assertEquals(AMOUNT_POSITIVE, results[2].getTransaction().getAmount());
+        for (int i = 0; i < results.length; i++) {
+            Assert.assertEquals(i, results[i].getIndex());
+            Assert.assertTrue(results[i].isAccepted());
+        }
+    }
+
+    @Test
+    public void shouldRejectInvalidEntriesOfBatch_whenNdjson() throws IOException {
+
+        Account account = accountService.create();
+        Assert.assertNotNull(account);
+
+        Long invalidId = 1 + account.getId();
+
+        String body = "{\"type\":\"DEPOSIT\",\"accountId\":" + account.getId() + ",\"amount\":10}\n"
+                + "{\"type\":\"DEPOSIT\",\"accountId\":" + invalidId + ",\"amount\":10}\n"
+                + "{\"type\":\"DEPOSIT\",\"accountId\":" + account.getId() + ",\"amount\":-10}\n"
+                + "{\"type\":\"UNKNOWN\",\"accountId\":" + account.getId() + ",\"amount\":10}\n"
+                + "{\"type\":\"WITHDRAW\",\"accountId\":" + account.getId() + ",\"amount\":10}\n"
+                + "{\"type\":\"DEPOSIT\",\"accountId\":" + account.getId() + ",\"amount\":10}\n";
+
+        BatchItemResult[] results = readBatchResults(
+                assertOkResponse(post(TRANSACTION_BATCH_URI, body, TransactionController.APPLICATION_NDJSON)));
+        Assert.assertEquals(6, results.length);
+        Assert.assertTrue(results[0].isAccepted());
+        Assert.assertFalse(results[1].isAccepted());
+        Assert.assertFalse(results[2].isAccepted());
+        Assert.assertFalse(results[3].isAccepted());
+        Assert.assertFalse(results[4].isAccepted());
+        Assert.assertTrue(results[5].isAccepted());
+        Assert.assertEquals(results[0].getTransaction().getId() + 1, (long) results[5].getTransaction().getId());
+    }
+
+    @Test
+    public void shouldCreateBatchOfTransactions_whenLongerThanChunk() throws IOException {
+
+        Account account = accountService.create();
+        Assert.assertNotNull(account);
+
+        int count = 1000;
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            long accountId = i % 100 == 99 ? account.getId() + 1 : account.getId();
+            body.append("{\"type\":\"DEPOSIT\",\"accountId\":").append(accountId).append(",\"amount\":1}\n");
+        }
+
+        BatchItemResult[] results = readBatchResults(assertOkResponse(
+                post(TRANSACTION_BATCH_URI, body.toString(), TransactionController.APPLICATION_NDJSON)));
+        Assert.assertEquals(count, results.length);
+        for (int i = 0; i < count; i++) {
+            Assert.assertEquals(i, results[i].getIndex());
+            Assert.assertEquals(i % 100 != 99, results[i].isAccepted());
+        }
+    }
+
+    @Test
+    public void shouldRejectDeposit_whenClientIsOverRateLimit() {
+
+        Account account = accountService.create();
+        Assert.assertNotNull(account);
+
+        AdmissionControl admissionControl = AdmissionControl.getInstance();
+        admissionControl.setClientRate(1, 3);
+        try {
+            for (int i = 0; i < 3; i++) {
+                assertOkResponse(put(TRANSACTION_DEPOSIT_URI,
+                        "accountId", account.getId().toString(),
+                        "amount", AMOUNT_POSITIVE.toString()));
+            }
+            Response response = put(TRANSACTION_DEPOSIT_URI,
+                    "accountId", account.getId().toString(),
+                    "amount", AMOUNT_POSITIVE.toString());
+            Assert.assertEquals(Response.Status.TOO_MANY_REQUESTS.getStatusCode(), response.getStatus());
+            Assert.assertEquals("1", response.getHeaderString(HttpHeaders.RETRY_AFTER));
+        } finally {
+            admissionControl.setClientRate(0, 0);
+        }
+    }
+
+    private static BatchItemResult[] readBatchResults(Response response) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        String[] lines = response.readEntity(String.class).split("\n");
+        BatchItemResult[] results = new BatchItemResult[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            results[i] = objectMapper.readValue(lines[i], BatchItemResult.class);
+        }
+        return results;
+    }
+
 }
@@ -0,0 +1,106 @@
+package org.lightquark.moneytransfer.history;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.lightquark.moneytransfer.model.Transaction;
+import org.lightquark.moneytransfer.model.TransactionPage;
+import org.lightquark.moneytransfer.model.TransactionStatus;
+import org.lightquark.moneytransfer.model.TransactionType;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class TransactionHistoryTest {
+
+    private static final int SEGMENT_SIZE = 8;
+    private static final int BLOCK_SIZE = 3;
+    private static final int WRITERS = 4;
+    private static final int WRITER_TRANSACTIONS = 5000;
+
+    @Test
+    public void shouldPageHistoryOfAccount_acrossSealedSegments() {
+        TransactionHistory history = new TransactionHistory(SEGMENT_SIZE, BLOCK_SIZE, Runnable::run);
+        List<Transaction> expected = new ArrayList<>();
+        for (long id = 1; id <= 50; id++) {
+            Transaction deposit = new Transaction(id, TransactionType.DEPOSIT, TransactionStatus.COMPLETED,
+                    1L, null, id * 100);
+            history.append(deposit);
+            expected.add(deposit);
+            history.append(new Transaction(id, TransactionType.WITHDRAW, TransactionStatus.INVALID, 2L, null, 1));
+        }
+
+        List<Transaction> read = new ArrayList<>();
+        Long cursor = 0L;
+        while (cursor != null) {
+            TransactionPage page = history.find(1L, cursor, 7);
+            Assert.assertTrue(page.getTransactions().size() <= 7);
+            read.addAll(page.getTransactions());
+            cursor = page.getNext();
+        }
+        Assert.assertEquals(expected, read);
+        Assert.assertEquals(5000, read.get(49).getAmountMinor());
+        Assert.assertEquals(TransactionStatus.COMPLETED, read.get(0).getStatus());
+
+        TransactionPage last = history.find(2L, 49, 10);
+        Assert.assertEquals(1, last.getTransactions().size());
+        Assert.assertEquals(TransactionStatus.INVALID, last.getTransactions().get(0).getStatus());
+        Assert.assertNull(last.getNext());
+        Assert.assertTrue(history.find(3L, 0, 10).getTransactions().isEmpty());
+    }
+
+    @Test
+    public void shouldIndexTransferForBothAccounts() {
+        TransactionHistory history = new TransactionHistory(SEGMENT_SIZE, BLOCK_SIZE, Runnable::run);
+        Transaction transfer = new Transaction(1L, TransactionType.TRANSFER, TransactionStatus.COMPLETED,
+                1L, 2L, 250);
+        history.append(transfer);
+
+        Assert.assertEquals(transfer, history.find(1L, 0, 10).getTransactions().get(0));
+        Transaction incoming = history.find(2L, 0, 10).getTransactions().get(0);
+        Assert.assertEquals(Long.valueOf(1L), incoming.getSourceAccountId());
+        Assert.assertEquals(Long.valueOf(2L), incoming.getDestinationAccountId());
+    }
+
+    @Test
+    public void shouldKeepHistoryOfEveryAccount_whenAppendedByWorkersAtOnce() throws Exception {
+        TransactionHistory history = new TransactionHistory(SEGMENT_SIZE, BLOCK_SIZE, Runnable::run);
+
+        // Every writer deposits to its own account and transfers from it to the account of the next writer
+        List<CompletableFuture<Void>> writers = new ArrayList<>();
+        for (int writer = 0; writer < WRITERS; writer++) {
+            long account = writer + 1;
+            long next = (writer + 1) % WRITERS + 1;
+            writers.add(CompletableFuture.runAsync(() -> {
+                for (long i = 0; i < WRITER_TRANSACTIONS; i++) {
+                    long id = account * WRITER_TRANSACTIONS * 2 + i * 2;
+                    history.append(new Transaction(id, TransactionType.DEPOSIT, TransactionStatus.COMPLETED,
+                            account, null, i));
+                    history.append(new Transaction(id + 1, TransactionType.TRANSFER, TransactionStatus.COMPLETED,
+                            account, next, i));
+                }
+            }));
+        }
+        CompletableFuture.allOf(writers.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+
+        for (long account = 1; account <= WRITERS; account++) {
+            List<Transaction> read = history.find(account, 0, Integer.MAX_VALUE).getTransactions();
+            Assert.assertEquals(WRITER_TRANSACTIONS * 3, read.size());
+            Set<Long> ids = new HashSet<>();
+            long previousOwn = -1;
+            for (Transaction transaction : read) {
+                Assert.assertTrue(ids.add(transaction.getId()));
+                if (transaction.getSourceAccountId() == account) {
+                    // The records of a writer keep its order
+                    Assert.assertTrue(transaction.getId() > previousOwn);
+                    previousOwn = transaction.getId();
+                } else {
+                    Assert.assertEquals(Long.valueOf(account), transaction.getDestinationAccountId());
+                }
+            }
+        }
+    }
+}
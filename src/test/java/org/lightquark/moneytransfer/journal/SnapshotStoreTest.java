@@ -0,0 +1,46 @@
+package org.lightquark.moneytransfer.journal;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+public class SnapshotStoreTest {
+
+    private Path directory;
+
+    @Before
+    public void before() throws IOException {
+        directory = Files.createTempDirectory("snapshots");
+    }
+
+    @After
+    public void after() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    @Test
+    public void shouldReadLatestSnapshot() throws IOException {
+        SnapshotStore store = new SnapshotStore(directory);
+        Assert.assertNull(store.readLatest());
+
+        store.write(480, new long[] {1, 1000, 3, 0});
+        store.write(9600, new long[] {1, 1500, 7, 0, 2, 0, 0, SnapshotStore.FLAG_HOT});
+        store.write(960, new long[] {1, 1200, 4, 0});
+
+        SnapshotStore.Snapshot snapshot = store.readLatest();
+        Assert.assertEquals(9600, snapshot.getJournalOffset());
+        Assert.assertArrayEquals(new long[] {1, 1500, 7, 0, 2, 0, 0, SnapshotStore.FLAG_HOT}, snapshot.getAccounts());
+        try (Stream<Path> files = Files.list(directory)) {
+            Assert.assertEquals(2, files.count());
+        }
+    }
+}
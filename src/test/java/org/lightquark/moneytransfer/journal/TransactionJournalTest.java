@@ -0,0 +1,301 @@
+package org.lightquark.moneytransfer.journal;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.lightquark.moneytransfer.model.Account;
+import org.lightquark.moneytransfer.model.Transaction;
+import org.lightquark.moneytransfer.model.TransactionStatus;
+import org.lightquark.moneytransfer.model.TransactionType;
+import org.lightquark.moneytransfer.repository.TransactionRepository;
+import org.lightquark.moneytransfer.service.AccountService;
+import org.lightquark.moneytransfer.service.SnapshotService;
+import org.lightquark.moneytransfer.service.TransactionProcessor;
+import org.lightquark.moneytransfer.service.TransactionService;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+public class TransactionJournalTest {
+
+    private static final int THREADS = 8;
+    private static final int APPENDS_PER_THREAD = 200;
+
+    private Path file;
+
+    @Before
+    public void before() throws IOException {
+        file = Files.createTempFile("transaction-journal", ".dat");
+    }
+
+    @After
+    public void after() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void shouldGroupAppendsAndPassThemOnInOrder() throws Exception {
+        List<Transaction> durable = Collections.synchronizedList(new ArrayList<>());
+        TransactionJournal journal = new TransactionJournal(file, 64, TimeUnit.MILLISECONDS.toNanos(1),
+                durable::addAll);
+        journal.start();
+
+        List<CompletableFuture<Void>> appenders = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            long accountId = thread + 1;
+            appenders.add(CompletableFuture.runAsync(() -> {
+                for (long id = 1; id <= APPENDS_PER_THREAD; id++) {
+                    journal.append(deposit(id, accountId));
+                }
+            }));
+        }
+        CompletableFuture.allOf(appenders.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+
+        Assert.assertEquals(THREADS * APPENDS_PER_THREAD, durable.size());
+        Assert.assertEquals(THREADS * APPENDS_PER_THREAD, journal.getStats().getRecordCount());
+        Assert.assertTrue(journal.getStats().getMaxBatchSize() <= 64);
+
+        List<Transaction> read = new ArrayList<>();
+        long end = JournalReader.read(file, 0, read::add);
+        Assert.assertEquals(Files.size(file), end);
+        Assert.assertEquals(durable, read);
+        long[] lastIds = new long[THREADS + 1];
+        for (Transaction transaction : read) {
+            int accountId = transaction.getSourceAccountId().intValue();
+            Assert.assertEquals(lastIds[accountId] + 1, transaction.getId().longValue());
+            lastIds[accountId] = transaction.getId();
+        }
+    }
+
+    @Test
+    public void shouldCutTornRecord_whenReopened() throws Exception {
+        TransactionJournal journal = new TransactionJournal(file, 16, 0, transactions -> { });
+        journal.start();
+        journal.append(deposit(1, 1));
+        journal.append(new Transaction(2L, TransactionType.TRANSFER, TransactionStatus.UNPROCESSED, 1L, 2L, 250));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[] {1, 2, 3}));
+        }
+
+        TransactionJournal reopened = new TransactionJournal(file, 16, 0, transactions -> { });
+        reopened.start();
+        reopened.append(deposit(3, 1));
+
+        List<Transaction> read = new ArrayList<>();
+        JournalReader.read(file, 0, read::add);
+        Assert.assertEquals(3, read.size());
+        Transaction transfer = read.get(1);
+        Assert.assertEquals(TransactionType.TRANSFER, transfer.getType());
+        Assert.assertEquals(Long.valueOf(2L), transfer.getDestinationAccountId());
+        Assert.assertEquals(250, transfer.getAmountMinor());
+        Assert.assertNull(read.get(2).getDestinationAccountId());
+    }
+
+    @Test
+    public void shouldCutOffFailedWrite_whenForceFails() throws Exception {
+        FailingFileChannel channel = new FailingFileChannel(FileChannel.open(file, StandardOpenOption.READ,
+                StandardOpenOption.WRITE));
+        List<Transaction> passedOn = Collections.synchronizedList(new ArrayList<>());
+        TransactionJournal journal = new TransactionJournal(file, channel, 16, 0, passedOn::addAll);
+        journal.start();
+        journal.append(deposit(1, 1));
+
+        channel.failForce = true;
+        Transaction failed = deposit(2, 1);
+        try {
+            journal.append(failed);
+            Assert.fail("The append must fail");
+        } catch (JournalException e) {
+            Assert.assertEquals(TransactionStatus.INVALID, failed.getStatus());
+        }
+        journal.append(deposit(3, 1));
+
+        List<Transaction> read = new ArrayList<>();
+        long end = JournalReader.read(file, 0, read::add);
+        Assert.assertEquals(Files.size(file), end);
+        Assert.assertEquals(2, read.size());
+        Assert.assertEquals(Long.valueOf(1L), read.get(0).getId());
+        Assert.assertEquals(Long.valueOf(3L), read.get(1).getId());
+        Assert.assertEquals(3, passedOn.size());
+    }
+
+    // Without the outcome of the failed write its id would be missing and the replay would wait for it forever
+    @Test(timeout = 60_000)
+    public void shouldRecoverTransactionsAfterFailedWrite() throws Exception {
+        new TransactionProcessor().start();
+        AccountService accountService = AccountService.getInstance();
+        TransactionService transactionService = TransactionService.getInstance();
+        Path directory = Files.createTempDirectory("snapshots");
+        accountService.clear();
+        try {
+            FailingFileChannel channel = new FailingFileChannel(FileChannel.open(file, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE));
+            TransactionJournal journal = new TransactionJournal(file, channel, 16, 0,
+                    TransactionRepository.getInstance()::saveAll);
+            journal.start();
+            SnapshotService snapshotService = new SnapshotService(journal, new SnapshotStore(directory),
+                    TimeUnit.SECONDS.toNanos(10));
+            Account account = accountService.create();
+            account.setBalanceMinor(100);
+            Assert.assertTrue(snapshotService.takeSnapshot());
+
+            appendProcessed(journal, transactionService.createDeposit(account, 50));
+            // The outcome of the deposit is written before the failing force
+            journal.appendAll(Collections.emptyList());
+            channel.failForce = true;
+            Transaction failed = transactionService.createWithdraw(account, 10);
+            try {
+                appendProcessed(journal, failed);
+                Assert.fail("The append must fail");
+            } catch (JournalException e) {
+                transactionService.whenProcessed(failed).get(10, TimeUnit.SECONDS);
+            }
+            appendProcessed(journal, transactionService.createWithdraw(account, 30));
+            journal.appendAll(Collections.emptyList());
+            Assert.assertEquals(120, account.getBalanceMinor());
+
+            snapshotService.recover();
+            Account recovered = accountService.find(account.getId());
+            Assert.assertEquals(120, recovered.getBalanceMinor());
+            Assert.assertEquals(Long.valueOf(3L), recovered.getLastTransactionId());
+            Assert.assertEquals(Long.valueOf(4L), recovered.getNextTransactionId());
+        } finally {
+            accountService.clear();
+            try (Stream<Path> files = Files.list(directory)) {
+                files.forEach(snapshot -> snapshot.toFile().delete());
+            }
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    /**
+     * Blocks until the transaction is processed, so its outcome is appended to the journal.
+     */
+    private static void appendProcessed(TransactionJournal journal, Transaction transaction) throws Exception {
+        journal.append(transaction);
+        TransactionService.getInstance().whenProcessed(transaction).get(10, TimeUnit.SECONDS);
+    }
+
+    private static Transaction deposit(long id, long accountId) {
+        return new Transaction(id, TransactionType.DEPOSIT, TransactionStatus.UNPROCESSED, accountId, null, 100);
+    }
+
+    /**
+     * Writes the records to the file and then fails the force once, as a disk error in the middle of a write.
+     */
+    private static class FailingFileChannel extends FileChannel {
+
+        private final FileChannel delegate;
+        private volatile boolean failForce;
+
+        private FailingFileChannel(FileChannel delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            if (failForce) {
+                failForce = false;
+                throw new IOException("Force failed");
+            }
+            delegate.force(metaData);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return delegate.read(dst);
+        }
+
+        @Override
+        public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+            return delegate.read(dsts, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return delegate.write(src);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+            return delegate.write(srcs, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return delegate.position();
+        }
+
+        @Override
+        public FileChannel position(long newPosition) throws IOException {
+            delegate.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return delegate.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            delegate.truncate(size);
+            return this;
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return delegate.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel src, long position, long count) throws IOException {
+            return delegate.transferFrom(src, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer dst, long position) throws IOException {
+            return delegate.read(dst, position);
+        }
+
+        @Override
+        public int write(ByteBuffer src, long position) throws IOException {
+            return delegate.write(src, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return delegate.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return delegate.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return delegate.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package org.lightquark.moneytransfer.json;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Assert;
+import org.junit.Test;
+import org.lightquark.moneytransfer.model.Account;
+import org.lightquark.moneytransfer.model.AccountPage;
+import org.lightquark.moneytransfer.model.HotAccount;
+import org.lightquark.moneytransfer.model.Transaction;
+import org.lightquark.moneytransfer.model.TransactionPage;
+import org.lightquark.moneytransfer.model.TransactionStatus;
+import org.lightquark.moneytransfer.model.TransactionType;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class JsonEncoderTest {
+
+    private static final long[] AMOUNTS = {0L, 1L, 10L, 100L, 1025L, 1_000_000L, -5L, -1200L, Long.MAX_VALUE,
+            Long.MIN_VALUE};
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void shouldWriteAccountAsJackson() throws IOException {
+        for (long balance : AMOUNTS) {
+            Account account = new Account(5L, balance, 3L);
+            account.reserveTransactionIds(7L);
+            Assert.assertEquals(objectMapper.writeValueAsString(account), encode(account));
+        }
+        HotAccount hotAccount = new HotAccount(6L, 1000L, 0L);
+        Assert.assertEquals(objectMapper.writeValueAsString(hotAccount), encode(hotAccount));
+    }
+
+    @Test
+    public void shouldWriteTransactionAsJackson() throws IOException {
+        for (long amount : AMOUNTS) {
+            Transaction transaction = new Transaction(7L, TransactionType.TRANSFER, TransactionStatus.COMPLETED, 1L,
+                    2L, amount);
+            Assert.assertEquals(objectMapper.writeValueAsString(transaction), encode(transaction));
+        }
+        Transaction empty = new Transaction(null, null, null, null, null, 0L);
+        Assert.assertEquals(objectMapper.writeValueAsString(empty), encode(empty));
+    }
+
+    @Test
+    public void shouldWritePagesAsJackson() throws IOException {
+        AccountPage accountPage = new AccountPage(Arrays.asList(new Account(1L, 10L, 0L), new Account(2L, 20L, 1L)),
+                3L);
+        Assert.assertEquals(objectMapper.writeValueAsString(accountPage), encode(accountPage));
+        TransactionPage transactionPage = new TransactionPage(Arrays.asList(
+                new Transaction(1L, TransactionType.DEPOSIT, TransactionStatus.COMPLETED, 1L, null, 100L),
+                new Transaction(2L, TransactionType.WITHDRAW, TransactionStatus.INVALID, 1L, null, 50L)), null);
+        Assert.assertEquals(objectMapper.writeValueAsString(transactionPage), encode(transactionPage));
+    }
+
+    @Test
+    public void shouldReadWrittenEntities() throws IOException {
+        Account account = new Account(5L, 1025L, 3L);
+        account.reserveTransactionIds(7L);
+        Account readAccount = JsonDecoder.readAccount(stream(encode(account)));
+        Assert.assertEquals(account.getId(), readAccount.getId());
+        Assert.assertEquals(1025L, readAccount.getBalanceMinor());
+        Assert.assertEquals(Long.valueOf(3L), readAccount.getLastTransactionId());
+        Assert.assertEquals(7L, readAccount.getTransactionIdGenerator().get());
+
+        Transaction transaction = new Transaction(7L, TransactionType.TRANSFER, TransactionStatus.COMPLETED, 1L,
+                null, 1L);
+        Transaction readTransaction = JsonDecoder.readTransaction(stream(
+                "{\"unknown\":{\"a\":[1]}," + encode(transaction).substring(1)));
+        Assert.assertEquals(transaction.toString(), readTransaction.toString());
+
+        TransactionPage page = JsonDecoder.readTransactionPage(stream(encode(
+                new TransactionPage(Arrays.asList(transaction, transaction), 8L))));
+        Assert.assertEquals(2, page.getTransactions().size());
+        Assert.assertEquals(Long.valueOf(8L), page.getNext());
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldNotReadAmountBeyondScale() throws IOException {
+        JsonDecoder.readTransaction(stream("{\"id\":1,\"amount\":0.001}"));
+    }
+
+    private static String encode(Object value) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonEncoder encoder = JsonEncoder.open(out)) {
+            if (value instanceof Account) {
+                encoder.writeAccount((Account) value);
+            } else if (value instanceof Transaction) {
+                encoder.writeTransaction((Transaction) value);
+            } else if (value instanceof AccountPage) {
+                encoder.writeAccountPage((AccountPage) value);
+            } else {
+                encoder.writeTransactionPage((TransactionPage) value);
+            }
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private static ByteArrayInputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
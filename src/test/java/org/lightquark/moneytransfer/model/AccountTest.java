@@ -0,0 +1,95 @@
+package org.lightquark.moneytransfer.model;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AccountTest {
+
+    private static final int THREADS = 4;
+    private static final int REPEAT_COUNT = 100_000;
+
+    @Test
+    public void shouldNotLoseConcurrentCredits() throws Exception {
+        assertConcurrentCredits(new Account());
+    }
+
+    @Test
+    public void shouldNotLoseConcurrentCredits_whenAccountIsHot() throws Exception {
+        assertConcurrentCredits(new HotAccount());
+    }
+
+    private static void assertConcurrentCredits(Account account) throws Exception {
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                for (int j = 0; j < REPEAT_COUNT; j++) {
+                    account.credit(3);
+                    account.debit(1);
+                }
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+
+        Assert.assertEquals(2L * THREADS * REPEAT_COUNT, account.getBalanceMinor());
+    }
+
+    @Test
+    public void shouldFoldCells_whenHotAccountIsDebited() {
+        Account account = new HotAccount();
+        account.credit(70);
+        account.credit(30);
+
+        Assert.assertFalse(account.debit(101));
+        Assert.assertTrue(account.debit(60));
+        Assert.assertEquals(40, account.getBalanceMinor());
+        account.setBalanceMinor(5);
+        Assert.assertEquals(5, account.getBalanceMinor());
+    }
+
+    @Test
+    public void shouldKeepBalance_whenDebitOrCreditIsRejected() {
+        Account account = new Account();
+        account.setBalanceMinor(100);
+
+        Assert.assertFalse(account.debit(101));
+        Assert.assertTrue(account.debit(100));
+        Assert.assertEquals(0, account.getBalanceMinor());
+
+        account.setBalanceMinor(Long.MAX_VALUE - 1);
+        Assert.assertFalse(account.credit(2));
+        Assert.assertEquals(Long.MAX_VALUE - 1, account.getBalanceMinor());
+    }
+
+    @Test
+    public void shouldRejectCredits_whenCellsOfHotAccountWouldOverflowTogether() throws Exception {
+        Account account = new HotAccount();
+        account.setBalanceMinor(Long.MAX_VALUE - 1000);
+
+        // Every cell alone has room for the credits, the balance has room for a quarter of them
+        AtomicInteger credited = new AtomicInteger();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    if (account.credit(1)) {
+                        credited.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+
+        Assert.assertEquals(1000, credited.get());
+        Assert.assertEquals(Long.MAX_VALUE, account.getBalanceMinor());
+        Assert.assertFalse(account.credit(1));
+        Assert.assertTrue(account.debit(10));
+        Assert.assertTrue(account.credit(10));
+        Assert.assertEquals(Long.MAX_VALUE, account.getBalanceMinor());
+    }
+}
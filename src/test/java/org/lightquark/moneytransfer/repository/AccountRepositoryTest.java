@@ -0,0 +1,65 @@
+package org.lightquark.moneytransfer.repository;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.lightquark.moneytransfer.model.Account;
+import org.lightquark.moneytransfer.model.AccountPage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class AccountRepositoryTest {
+
+    private static final int ACCOUNTS = 100;
+    private static final int MAX_SCANNED_IDS = 16;
+
+    @Test
+    public void shouldReturnCursor_whenScanBoundIsReached() {
+        AccountRepository repository = new OpenAddressingAccountRepository();
+        List<Account> kept = new ArrayList<>();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            Account account = repository.create();
+            // The middle of the ids is deleted, so the scan crosses ranges without accounts
+            if (i < 10 || i >= 70) {
+                kept.add(account);
+            } else {
+                repository.delete(account.getId());
+            }
+        }
+
+        List<Account> read = new ArrayList<>();
+        boolean emptyPage = false;
+        Long cursor = kept.get(0).getId();
+        while (cursor != null) {
+            AccountPage page = repository.findPage(cursor, 5, MAX_SCANNED_IDS);
+            Assert.assertTrue(page.getAccounts().size() <= 5);
+            emptyPage |= page.getAccounts().isEmpty();
+            read.addAll(page.getAccounts());
+            if (page.getNext() != null) {
+                Assert.assertTrue(page.getNext() > cursor);
+                Assert.assertTrue(page.getNext() - cursor <= MAX_SCANNED_IDS);
+            }
+            cursor = page.getNext();
+        }
+        Assert.assertEquals(kept, read);
+        Assert.assertTrue(emptyPage);
+    }
+
+    @Test
+    public void shouldStartNextPageAtFollowingAccount_whenPageIsFull() {
+        AccountRepository repository = new OpenAddressingAccountRepository();
+        Account first = repository.create();
+        Account deleted = repository.create();
+        Account third = repository.create();
+        repository.delete(deleted.getId());
+
+        AccountPage page = repository.findPage(first.getId(), 1);
+        Assert.assertEquals(1, page.getAccounts().size());
+        Assert.assertEquals(third.getId(), page.getNext());
+
+        AccountPage last = repository.findPage(page.getNext(), 1);
+        Assert.assertEquals(third, last.getAccounts().get(0));
+        Assert.assertNull(last.getNext());
+        Assert.assertTrue(repository.findPage(third.getId() + 1, 1).getAccounts().isEmpty());
+    }
+}
@@ -0,0 +1,124 @@
+package org.lightquark.moneytransfer.repository;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.lightquark.moneytransfer.model.Account;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class MappedAccountRepositoryTest {
+
+    private static final int THREADS = 4;
+    private static final int REPEAT_COUNT = 10_000;
+
+    private Path file;
+
+    @Before
+    public void before() throws IOException {
+        file = Files.createTempFile("account-ledger", ".dat");
+    }
+
+    @After
+    public void after() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void shouldShareStateBetweenViews() {
+        MappedAccountRepository repository = new MappedAccountRepository(file);
+
+        Account account = repository.create();
+        account.setBalance(BigDecimal.TEN);
+        account.setLastTransactionId(account.getNextTransactionId());
+
+        Account found = repository.find(account.getId());
+        Assert.assertEquals(account, found);
+        Assert.assertEquals(BigDecimal.TEN, found.getBalance());
+        Assert.assertEquals(Long.valueOf(1L), found.getLastTransactionId());
+        Assert.assertEquals(Long.valueOf(2L), found.getNextTransactionId());
+        Assert.assertSame(account.getLock(), found.getLock());
+    }
+
+    @Test
+    public void shouldNotLoseConcurrentCredits_whenChangedThroughManyViews() throws Exception {
+        MappedAccountRepository repository = new MappedAccountRepository(file);
+        long id = repository.create().getId();
+
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                for (int j = 0; j < REPEAT_COUNT; j++) {
+                    Account view = repository.find(id);
+                    view.credit(3);
+                    view.debit(1);
+                }
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+
+        Assert.assertEquals(2L * THREADS * REPEAT_COUNT, repository.find(id).getBalanceMinor());
+    }
+
+    @Test
+    public void shouldKeepAccounts_whenReopened() {
+        MappedAccountRepository repository = new MappedAccountRepository(file);
+
+        Account first = repository.create();
+        first.setBalance(BigDecimal.valueOf(100));
+        Account second = repository.create();
+        second.setBalance(new BigDecimal("0.5"));
+        second.setLastTransactionId(second.getNextTransactionId());
+        Account deleted = repository.create();
+        Assert.assertTrue(repository.delete(deleted.getId()));
+        repository.force();
+
+        MappedAccountRepository reopened = new MappedAccountRepository(file);
+        Assert.assertEquals(2, reopened.findAll().size());
+        Assert.assertEquals(BigDecimal.valueOf(100), reopened.find(first.getId()).getBalance());
+        Assert.assertEquals(new BigDecimal("0.5"), reopened.find(second.getId()).getBalance());
+        Assert.assertEquals(Long.valueOf(1L), reopened.find(second.getId()).getLastTransactionId());
+        Assert.assertNull(reopened.find(deleted.getId()));
+        Assert.assertTrue(reopened.create().getId() > deleted.getId());
+    }
+
+    @Test
+    public void shouldContinueFromLastTransactionId_whenReopenedWithUnprocessedTransactions() {
+        MappedAccountRepository repository = new MappedAccountRepository(file);
+
+        Account account = repository.create();
+        account.setLastTransactionId(account.getNextTransactionId());
+        // Accepted, but lost with the queue before being processed
+        account.getNextTransactionId();
+        account.getNextTransactionId();
+        Account idle = repository.create();
+        repository.force();
+
+        MappedAccountRepository reopened = new MappedAccountRepository(file);
+        Account found = reopened.find(account.getId());
+        Assert.assertEquals(Long.valueOf(1L), found.getLastTransactionId());
+        Assert.assertEquals(1L, found.getTransactionIdGenerator().get());
+        Assert.assertEquals(Long.valueOf(2L), found.getNextTransactionId());
+        Assert.assertEquals(Long.valueOf(1L), reopened.find(idle.getId()).getNextTransactionId());
+    }
+
+    @Test
+    public void shouldNotFindAccount_whenIdIsInvalid() {
+        MappedAccountRepository repository = new MappedAccountRepository(file);
+
+        Account account = repository.create();
+
+        Assert.assertNull(repository.find(0));
+        Assert.assertNull(repository.find(account.getId() + 1));
+        Assert.assertNull(repository.find(account.getId() + (1 << 24)));
+        Assert.assertFalse(repository.delete(account.getId() + 1));
+    }
+}
@@ -0,0 +1,95 @@
+package org.lightquark.moneytransfer.repository;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.lightquark.moneytransfer.model.Transaction;
+import org.lightquark.moneytransfer.model.TransactionStatus;
+import org.lightquark.moneytransfer.model.TransactionType;
+import org.lightquark.moneytransfer.util.ThreadUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class RingBufferTransactionQueueTest {
+
+    private static final int CAPACITY = 4;
+    private static final int PRODUCERS = 4;
+    private static final int TRANSACTIONS_PER_PRODUCER = 20_000;
+
+    @Test
+    public void shouldReuseSlots_whenWrappingAround() {
+        RingBufferTransactionQueue queue = new RingBufferTransactionQueue(CAPACITY);
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertNull(queue.poll());
+
+        long next = 1;
+        for (int lap = 0; lap < 10; lap++) {
+            // Leaves some transactions in the ring, so the laps start at different slots
+            for (int i = 0; i < 3; i++) {
+                queue.add(transaction(0, next + i));
+            }
+            for (int i = 0; i < 3; i++) {
+                Assert.assertEquals(next + i, queue.poll().getId().longValue());
+            }
+            next += 3;
+            Assert.assertTrue(queue.isEmpty());
+        }
+        Assert.assertNull(queue.poll());
+    }
+
+    @Test
+    public void shouldBlockProducer_whenRingIsFull() throws Exception {
+        RingBufferTransactionQueue queue = new RingBufferTransactionQueue(CAPACITY);
+        for (long id = 1; id <= CAPACITY; id++) {
+            queue.add(transaction(0, id));
+        }
+
+        CompletableFuture<Void> producer = CompletableFuture.runAsync(() -> queue.add(transaction(0, CAPACITY + 1)));
+        ThreadUtils.sleep(100L);
+        Assert.assertFalse(producer.isDone());
+
+        Assert.assertEquals(1L, queue.poll().getId().longValue());
+        producer.get(10, TimeUnit.SECONDS);
+        for (long id = 2; id <= CAPACITY + 1; id++) {
+            Assert.assertEquals(id, queue.poll().getId().longValue());
+        }
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void shouldKeepOrderOfEveryProducer_whenProducersAddAtOnce() throws Exception {
+        RingBufferTransactionQueue queue = new RingBufferTransactionQueue(CAPACITY);
+        List<CompletableFuture<Void>> producers = new ArrayList<>();
+        for (int producer = 0; producer < PRODUCERS; producer++) {
+            long accountId = producer;
+            producers.add(CompletableFuture.runAsync(() -> {
+                for (long id = 1; id <= TRANSACTIONS_PER_PRODUCER; id++) {
+                    queue.add(transaction(accountId, id));
+                }
+            }));
+        }
+
+        long[] lastIds = new long[PRODUCERS];
+        long deadline = System.currentTimeMillis() + 30_000;
+        for (int taken = 0; taken < PRODUCERS * TRANSACTIONS_PER_PRODUCER; ) {
+            Transaction transaction = queue.poll();
+            if (transaction == null) {
+                Assert.assertTrue(System.currentTimeMillis() < deadline);
+                Thread.yield();
+                continue;
+            }
+            int producer = transaction.getSourceAccountId().intValue();
+            Assert.assertEquals(lastIds[producer] + 1, transaction.getId().longValue());
+            lastIds[producer] = transaction.getId();
+            taken++;
+        }
+        CompletableFuture.allOf(producers.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    private static Transaction transaction(long accountId, long id) {
+        return new Transaction(id, TransactionType.DEPOSIT, TransactionStatus.UNPROCESSED, accountId, null, 1L);
+    }
+}
@@ -0,0 +1,48 @@
+package org.lightquark.moneytransfer.service;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.lightquark.moneytransfer.model.Account;
+
+public class AccountJsonCacheTest {
+
+    @Test
+    public void shouldEvictAccountNotReadAgain_whenCacheIsFull() {
+        AccountJsonCache cache = new AccountJsonCache(2);
+        Account first = new Account();
+        Account second = new Account();
+        Account third = new Account();
+
+        cache.getJson(first);
+        cache.getJson(second);
+        cache.getJson(first);
+        Assert.assertEquals(1, cache.getHitCount());
+        cache.getJson(third);
+
+        Assert.assertEquals(2, cache.getSize());
+        Assert.assertEquals(1, cache.getEvictionCount());
+        cache.getJson(first);
+        Assert.assertEquals(2, cache.getHitCount());
+        cache.getJson(second);
+        Assert.assertEquals(4, cache.getMissCount());
+        Assert.assertEquals(2, cache.getSize());
+    }
+
+    @Test
+    public void shouldKeepNewEntry_whenRemovedOneIsEvicted() {
+        AccountJsonCache cache = new AccountJsonCache(2);
+        Account account = new Account();
+
+        cache.getJson(account);
+        cache.remove(account.getId());
+        Assert.assertEquals(0, cache.getSize());
+        cache.getJson(account);
+        // The hand reaches the removed entry of the account first
+        cache.getJson(new Account());
+
+        Assert.assertEquals(2, cache.getSize());
+        Assert.assertEquals(0, cache.getEvictionCount());
+        cache.getJson(account);
+        Assert.assertEquals(1, cache.getHitCount());
+    }
+}
@@ -1,5 +1,6 @@
 package org.lightquark.moneytransfer.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -38,6 +39,24 @@ public class AccountServiceTest {
         Assert.assertEquals(account, accountFromRepository);
     }
 
+    @Test
+    public void shouldEncodeAccountAgain_whenAccountChanges() throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        Account account = accountService.create();
+        Assert.assertNotNull(account);
+
+        byte[] json = accountService.findJson(account.getId());
+        Assert.assertArrayEquals(objectMapper.writeValueAsBytes(account), json);
+        Assert.assertSame(json, accountService.findJson(account.getId()));
+
+        Assert.assertTrue(account.credit(1025L));
+        byte[] credited = accountService.findJson(account.getId());
+        Assert.assertArrayEquals(objectMapper.writeValueAsBytes(account), credited);
+
+        account.getNextTransactionId();
+        Assert.assertArrayEquals(objectMapper.writeValueAsBytes(account), accountService.findJson(account.getId()));
+    }
+
     @Test
     public void shouldFindAllAccounts() {
 
@@ -0,0 +1,50 @@
+package org.lightquark.moneytransfer.service;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AdmissionControlTest {
+
+    private static final String CLIENT = "127.0.0.1";
+
+    @Test
+    public void shouldRejectWithRetryAfter_whenQueueIsFull() {
+        AtomicInteger queueDepth = new AtomicInteger(9);
+        AdmissionControl admissionControl = new AdmissionControl(queueDepth::get, 10, 3, 0, 0, 0, 0, 100);
+
+        Assert.assertEquals(AdmissionControl.ADMITTED, admissionControl.admit(CLIENT, 1L));
+        queueDepth.set(10);
+        Assert.assertEquals(3, admissionControl.admit(CLIENT, 1L));
+        Assert.assertEquals(3, admissionControl.checkQueueDepth());
+        Assert.assertEquals(2, admissionControl.getRejectedCount(AdmissionControl.Rejection.QUEUE_DEPTH));
+        queueDepth.set(0);
+        Assert.assertEquals(AdmissionControl.ADMITTED, admissionControl.admit(CLIENT, 1L));
+    }
+
+    @Test
+    public void shouldLimitRatePerClient() {
+        AdmissionControl admissionControl = new AdmissionControl(() -> 0, 0, 1, 1, 5, 0, 0, 100);
+
+        for (int i = 0; i < 5; i++) {
+            Assert.assertEquals(AdmissionControl.ADMITTED, admissionControl.admit(CLIENT, (long) i));
+        }
+        Assert.assertEquals(1, admissionControl.admit(CLIENT, 10L));
+        Assert.assertEquals(AdmissionControl.ADMITTED, admissionControl.admit("127.0.0.2", 10L));
+        Assert.assertEquals(1, admissionControl.getRejectedCount(AdmissionControl.Rejection.CLIENT_RATE));
+    }
+
+    @Test
+    public void shouldGiveBackClientToken_whenAccountRateIsExceeded() {
+        AdmissionControl admissionControl = new AdmissionControl(() -> 0, 0, 1, 1, 2, 1, 1, 100);
+
+        Assert.assertEquals(AdmissionControl.ADMITTED, admissionControl.admit(CLIENT, 1L));
+        Assert.assertEquals(1, admissionControl.admit(CLIENT, 1L));
+        Assert.assertEquals(1, admissionControl.getRejectedCount(AdmissionControl.Rejection.ACCOUNT_RATE));
+        // The token of the client is not spent by the rejected transaction
+        Assert.assertEquals(AdmissionControl.ADMITTED, admissionControl.admit(CLIENT, 2L));
+        Assert.assertEquals(1, admissionControl.admit(CLIENT, 3L));
+        Assert.assertEquals(1, admissionControl.getRejectedCount(AdmissionControl.Rejection.CLIENT_RATE));
+    }
+}
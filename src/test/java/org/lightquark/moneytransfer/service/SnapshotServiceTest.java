@@ -0,0 +1,163 @@
+package org.lightquark.moneytransfer.service;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.lightquark.moneytransfer.journal.SnapshotStore;
+import org.lightquark.moneytransfer.journal.TransactionJournal;
+import org.lightquark.moneytransfer.model.Account;
+import org.lightquark.moneytransfer.model.Transaction;
+import org.lightquark.moneytransfer.model.TransactionStatus;
+import org.lightquark.moneytransfer.repository.TransactionRepository;
+import org.lightquark.moneytransfer.util.ThreadUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+public class SnapshotServiceTest {
+
+    private static final int ACCOUNTS = 32;
+    private static final int PRODUCERS = 4;
+    private static final int SNAPSHOTS = 3;
+    private static final int APPEND_SIZE = 16;
+    private static final long INITIAL_BALANCE = 1_000_000_000L;
+
+    private AccountService accountService = AccountService.getInstance();
+    private TransactionService transactionService = TransactionService.getInstance();
+    private TransactionRepository transactionRepository = TransactionRepository.getInstance();
+
+    private Path journalFile;
+    private Path directory;
+    private volatile boolean stopped;
+
+    @BeforeClass
+    public static void beforeClass() {
+        new TransactionProcessor().start();
+    }
+
+    @Before
+    public void before() throws IOException {
+        accountService.clear();
+        journalFile = Files.createTempFile("transaction-journal", ".dat");
+        directory = Files.createTempDirectory("snapshots");
+    }
+
+    @After
+    public void after() throws IOException {
+        accountService.clear();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> file.toFile().delete());
+        }
+        Files.deleteIfExists(directory);
+        Files.deleteIfExists(journalFile);
+    }
+
+    // A replay missing a transaction would wait for it forever
+    @Test(timeout = 60_000)
+    public void shouldTakeSnapshots_whileTransactionsKeepArriving() throws Exception {
+        TransactionJournal journal = new TransactionJournal(journalFile, 64, 0, transactionRepository::saveAll);
+        journal.start();
+        SnapshotService snapshotService = new SnapshotService(journal, new SnapshotStore(directory),
+                TimeUnit.SECONDS.toNanos(10));
+        Account[] accounts = new Account[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts[i] = accountService.create();
+            accounts[i].setBalanceMinor(INITIAL_BALANCE);
+        }
+
+        // Every producer creates the transactions of its own source accounts, so they are journaled in order
+        List<CompletableFuture<Void>> producers = new ArrayList<>();
+        for (int producer = 0; producer < PRODUCERS; producer++) {
+            int first = producer;
+            producers.add(CompletableFuture.runAsync(() -> produce(journal, accounts, first)));
+        }
+        for (int i = 0; i < SNAPSHOTS; i++) {
+            ThreadUtils.sleep(50L);
+            Assert.assertTrue(snapshotService.takeSnapshot());
+        }
+        long snapshotOffset = new SnapshotStore(directory).readLatest().getJournalOffset();
+        ThreadUtils.sleep(50L);
+        stopped = true;
+        CompletableFuture.allOf(producers.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+        Assert.assertTrue(Files.size(journalFile) > snapshotOffset);
+        awaitProcessed();
+
+        long[] balances = new long[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            balances[i] = accounts[i].getBalanceMinor();
+        }
+
+        // The latest snapshot with the journal after it makes the same balances
+        snapshotService.recover();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            Account recovered = accountService.find(accounts[i].getId());
+            Assert.assertEquals(balances[i], recovered.getBalanceMinor());
+            Assert.assertEquals(accounts[i].getLastTransactionId(), recovered.getLastTransactionId());
+        }
+    }
+
+    @Test(timeout = 60_000)
+    public void shouldApplyJournaledOutcomes_whenRecovered() throws Exception {
+        // The transactions are not processed, their outcomes are journaled as if processed in the other order
+        TransactionJournal journal = new TransactionJournal(journalFile, 64, 0, transactions -> { });
+        journal.start();
+        SnapshotService snapshotService = new SnapshotService(journal, new SnapshotStore(directory),
+                TimeUnit.SECONDS.toNanos(10));
+        Account account = accountService.create();
+        Account payer = accountService.create();
+        payer.setBalanceMinor(100);
+        Assert.assertTrue(snapshotService.takeSnapshot());
+
+        Transaction withdraw = transactionService.createWithdraw(account, 100);
+        Transaction transfer = transactionService.createTransfer(payer, account, 100);
+        journal.appendAll(Arrays.asList(withdraw, transfer));
+        transfer.setStatus(TransactionStatus.COMPLETED);
+        journal.appendOutcome(transfer);
+        withdraw.setStatus(TransactionStatus.COMPLETED);
+        journal.appendOutcome(withdraw);
+        // Waits for the outcomes queued before
+        journal.appendAll(Collections.emptyList());
+
+        // Decided again in the journal order, the withdrawal would find no money
+        snapshotService.recover();
+        Assert.assertEquals(0, accountService.find(account.getId()).getBalanceMinor());
+        Assert.assertEquals(0, accountService.find(payer.getId()).getBalanceMinor());
+        Assert.assertEquals(Long.valueOf(1L), accountService.find(account.getId()).getLastTransactionId());
+    }
+
+    private void produce(TransactionJournal journal, Account[] accounts, int first) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<Transaction> transactions = new ArrayList<>(APPEND_SIZE);
+        while (!stopped) {
+            for (int i = 0; i < APPEND_SIZE; i++) {
+                Account source = accounts[first + PRODUCERS * random.nextInt(ACCOUNTS / PRODUCERS)];
+                Account destination = accounts[random.nextInt(ACCOUNTS)];
+                long amount = 1 + random.nextInt(100);
+                transactions.add(source == destination
+                        ? transactionService.createDeposit(source, amount)
+                        : transactionService.createTransfer(source, destination, amount));
+            }
+            journal.appendAll(transactions);
+            transactions.clear();
+        }
+    }
+
+    private void awaitProcessed() {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (transactionRepository.getSize() > 0 && System.currentTimeMillis() < deadline) {
+            ThreadUtils.sleep(10L);
+        }
+        Assert.assertEquals(0, transactionRepository.getSize());
+    }
+}
@@ -5,10 +5,14 @@ import org.junit.Assert;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.lightquark.moneytransfer.model.Account;
+import org.lightquark.moneytransfer.model.Transaction;
+import org.lightquark.moneytransfer.model.TransactionStatus;
 import org.lightquark.moneytransfer.repository.TransactionRepository;
 import org.lightquark.moneytransfer.util.ThreadUtils;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
 
 @Slf4j
 public class TransactionServiceTest {
@@ -188,6 +192,75 @@ public class TransactionServiceTest {
         assertAccounts(destinationAccountBalance, destinationAccounts);
     }
 
+    @Test
+    public void concurrentModifications_whenTransfer_toHotAccount() {
+
+        Account[] sourceAccounts = createAccounts();
+        Account hotAccount = accountService.create(true);
+        Account destinationAccount = accountService.create();
+
+        BigDecimal sourceAccountBalance = AMOUNT_BIG;
+        BigDecimal hotAccountBalance = BigDecimal.ZERO;
+        for (int j = 0; j < sourceAccounts.length; j++) {
+            transactionService.deposit(sourceAccounts[j], sourceAccountBalance);
+        }
+
+        for (int i = 1; i < REPEAT_COUNT; i++) {
+            BigDecimal amount = BigDecimal.valueOf(i);
+            for (int j = 0; j < sourceAccounts.length; j++) {
+                transactionService.transfer(sourceAccounts[j], hotAccount, amount);
+                hotAccountBalance = hotAccountBalance.add(amount);
+            }
+            sourceAccountBalance = sourceAccountBalance.subtract(amount);
+            if (i % 10 == 0) {
+                transactionService.transfer(hotAccount, destinationAccount, amount);
+                hotAccountBalance = hotAccountBalance.subtract(amount);
+            }
+        }
+
+        waitUntilTransactionsAreCompleted();
+        assertAccounts(sourceAccountBalance, sourceAccounts);
+        Assert.assertEquals(hotAccountBalance, hotAccount.getBalance());
+        Assert.assertEquals(AMOUNT_BIG.multiply(BigDecimal.valueOf(sourceAccounts.length)),
+                hotAccount.getBalance().add(destinationAccount.getBalance())
+                        .add(sourceAccountBalance.multiply(BigDecimal.valueOf(sourceAccounts.length))));
+    }
+
+    @Test
+    public void shouldInvalidateTransfers_whenHotAccountWouldOverflow() {
+
+        Account[] sourceAccounts = createAccounts();
+        Account hotAccount = accountService.create(true);
+        hotAccount.setBalanceMinor(Long.MAX_VALUE - 1000);
+        for (int j = 0; j < sourceAccounts.length; j++) {
+            sourceAccounts[j].setBalanceMinor(1000);
+        }
+
+        // The workers of the source accounts credit different cells, the sum has room for a tenth of the transfers
+        List<Transaction> transactions = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            for (int j = 0; j < sourceAccounts.length; j++) {
+                transactions.add(transactionService.transfer(sourceAccounts[j], hotAccount, 10L));
+            }
+        }
+
+        waitUntilTransactionsAreCompleted();
+        long completed = transactions.stream()
+                .filter(transaction -> transaction.getStatus() == TransactionStatus.COMPLETED)
+                .count();
+        long invalid = transactions.stream()
+                .filter(transaction -> transaction.getStatus() == TransactionStatus.INVALID)
+                .count();
+        Assert.assertEquals(100, completed);
+        Assert.assertEquals(transactions.size() - 100, invalid);
+        Assert.assertEquals(Long.MAX_VALUE, hotAccount.getBalanceMinor());
+        long sourceBalance = 0;
+        for (int j = 0; j < sourceAccounts.length; j++) {
+            sourceBalance += sourceAccounts[j].getBalanceMinor();
+        }
+        Assert.assertEquals(1000L * sourceAccounts.length - 1000, sourceBalance);
+    }
+
     private void waitUntilTransactionsAreCompleted() {
         int transactionCount;
         do {
@@ -0,0 +1,124 @@
+package org.lightquark.moneytransfer.tcp;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.lightquark.moneytransfer.client.Acknowledgement;
+import org.lightquark.moneytransfer.client.TcpTransactionClient;
+import org.lightquark.moneytransfer.model.Account;
+import org.lightquark.moneytransfer.service.AccountService;
+import org.lightquark.moneytransfer.service.TransactionProcessor;
+import org.lightquark.moneytransfer.util.ThreadUtils;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class TcpIngestionServerTest {
+
+    private static final int PIPELINED_REQUESTS = 10_000;
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    private static TcpIngestionServer server;
+
+    private AccountService accountService = AccountService.getInstance();
+
+    @BeforeClass
+    public static void beforeClass() throws IOException {
+        new TransactionProcessor().start();
+        // A small buffer makes the acknowledgements outgrow it
+        server = new TcpIngestionServer(0, 2048);
+        server.start();
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        server.stop();
+    }
+
+    @Test
+    public void shouldAcknowledgePipelinedRequestsInOrder() throws Exception {
+        Account account = accountService.create();
+        try (TcpTransactionClient client = new TcpTransactionClient("localhost", server.getPort())) {
+            List<CompletableFuture<Acknowledgement>> acknowledgements = new ArrayList<>();
+            for (int i = 0; i < PIPELINED_REQUESTS; i++) {
+                acknowledgements.add(client.deposit(account.getId(), 1L));
+            }
+            client.flush();
+
+            long previousTransactionId = 0;
+            for (CompletableFuture<Acknowledgement> future : acknowledgements) {
+                Acknowledgement acknowledgement = future.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                Assert.assertTrue(acknowledgement.isAccepted());
+                Assert.assertTrue(acknowledgement.getTransactionId() > previousTransactionId);
+                previousTransactionId = acknowledgement.getTransactionId();
+            }
+        }
+        awaitBalance(account, PIPELINED_REQUESTS);
+    }
+
+    @Test
+    public void shouldRejectInvalidRequests() throws Exception {
+        Account source = accountService.create();
+        Account destination = accountService.create();
+        try (TcpTransactionClient client = new TcpTransactionClient("localhost", server.getPort())) {
+            CompletableFuture<Acknowledgement> deposit = client.deposit(source.getId(), 100L);
+            CompletableFuture<Acknowledgement> unknownAccount = client.deposit(-1L, 100L);
+            CompletableFuture<Acknowledgement> zeroAmount = client.deposit(source.getId(), 0L);
+            CompletableFuture<Acknowledgement> sameAccount = client.transfer(source.getId(), source.getId(), 1L);
+            CompletableFuture<Acknowledgement> unknownDestination = client.transfer(source.getId(), -1L, 1L);
+            client.flush();
+
+            Assert.assertTrue(deposit.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).isAccepted());
+            Assert.assertEquals(AckStatus.INVALID_ACCOUNT, unknownAccount.get().getStatus());
+            Assert.assertEquals(AckStatus.INVALID_AMOUNT, zeroAmount.get().getStatus());
+            Assert.assertEquals(AckStatus.INVALID_DESTINATION_ACCOUNT, sameAccount.get().getStatus());
+            Assert.assertEquals(AckStatus.INVALID_DESTINATION_ACCOUNT, unknownDestination.get().getStatus());
+            Assert.assertEquals(0L, unknownAccount.get().getTransactionId());
+
+            awaitBalance(source, 100L);
+            CompletableFuture<Acknowledgement> transfer = client.transfer(source.getId(), destination.getId(), 60L);
+            CompletableFuture<Acknowledgement> overdraft = client.withdraw(source.getId(), 1000L);
+            client.flush();
+            Assert.assertTrue(transfer.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).isAccepted());
+            Assert.assertEquals(AckStatus.INVALID_AMOUNT, overdraft.get().getStatus());
+        }
+        awaitBalance(destination, 60L);
+    }
+
+    @Test
+    public void shouldCloseOnlyFailedConnection() throws Exception {
+        Account account = accountService.create();
+        try (TcpTransactionClient client = new TcpTransactionClient("localhost", server.getPort());
+                Socket invalid = new Socket("localhost", server.getPort())) {
+            CompletableFuture<Acknowledgement> first = client.deposit(account.getId(), 5L);
+            client.flush();
+            Assert.assertTrue(first.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).isAccepted());
+
+            // A frame over the max length fails its connection
+            DataOutputStream out = new DataOutputStream(invalid.getOutputStream());
+            out.writeInt(BinaryProtocol.MAX_FRAME_SIZE + 1);
+            out.flush();
+            invalid.setSoTimeout((int) TIMEOUT_MILLIS);
+            Assert.assertEquals(-1, invalid.getInputStream().read());
+
+            CompletableFuture<Acknowledgement> second = client.deposit(account.getId(), 5L);
+            client.flush();
+            Assert.assertTrue(second.get(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).isAccepted());
+        }
+        awaitBalance(account, 10L);
+    }
+
+    private static void awaitBalance(Account account, long expected) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (account.getBalanceMinor() != expected && System.currentTimeMillis() < deadline) {
+            ThreadUtils.sleep(10L);
+        }
+        Assert.assertEquals(expected, account.getBalanceMinor());
+    }
+}
@@ -0,0 +1,83 @@
+package org.lightquark.moneytransfer.trace;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.lightquark.moneytransfer.model.Transaction;
+import org.lightquark.moneytransfer.model.TransactionStatus;
+import org.lightquark.moneytransfer.model.TransactionType;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class EventRecorderTest {
+
+    private static final int THREADS = 4;
+    private static final int EVENTS_PER_THREAD = 10_000;
+
+    private Path file;
+
+    @Before
+    public void before() throws IOException {
+        file = Files.createTempFile("transaction-trace", ".dat");
+    }
+
+    @After
+    public void after() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void shouldWriteEventsDecodedByDecoder() throws Exception {
+        EventRecorder recorder = new EventRecorder(file, 16);
+        recorder.start();
+        Transaction transfer = new Transaction(7L, TransactionType.TRANSFER, TransactionStatus.UNPROCESSED, 1L, 2L,
+                1025L);
+        recorder.record(TraceEvent.ACCEPTED, transfer);
+        recorder.record(TraceEvent.INSUFFICIENT_FUNDS, transfer, 500L);
+        recorder.record(TraceEvent.INVALID_PARAMS, new Transaction(8L, null, TransactionStatus.UNPROCESSED, 1L, null,
+                100L));
+        recorder.close();
+
+        StringWriter out = new StringWriter();
+        Assert.assertEquals(4, new TraceDecoder().decode(file, out));
+        String[] lines = out.toString().split("\n");
+        Assert.assertTrue(lines[0].contains(" START "));
+        Assert.assertTrue(lines[1].endsWith(
+                " ACCEPTED thread " + Thread.currentThread().threadId()
+                        + " transaction 7 TRANSFER source 1 destination 2 amount 10.25"));
+        Assert.assertTrue(lines[2].endsWith(" amount 10.25 balance 5"));
+        // A transaction without a type is not decoded as a deposit
+        Assert.assertTrue(lines[3].endsWith(" INVALID_PARAMS thread " + Thread.currentThread().threadId()
+                + " transaction 8 source 1 amount 1"));
+    }
+
+    @Test
+    public void shouldKeepEveryEvent_whenNotDropped() throws Exception {
+        EventRecorder recorder = new EventRecorder(file, 1024);
+        recorder.start();
+        List<CompletableFuture<Void>> recorders = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            long accountId = thread + 1;
+            recorders.add(CompletableFuture.runAsync(() -> {
+                for (long id = 1; id <= EVENTS_PER_THREAD; id++) {
+                    recorder.record(TraceEvent.COMPLETED, new Transaction(id, TransactionType.DEPOSIT,
+                            TransactionStatus.COMPLETED, accountId, null, id));
+                }
+            }));
+        }
+        CompletableFuture.allOf(recorders.toArray(new CompletableFuture<?>[0])).get(30, TimeUnit.SECONDS);
+        recorder.close();
+
+        long recorded = THREADS * EVENTS_PER_THREAD - recorder.getDroppedCount();
+        Assert.assertEquals(1 + recorded, Files.size(file) / TraceRecord.SIZE);
+        Assert.assertEquals(0, Files.size(file) % TraceRecord.SIZE);
+    }
+}
@@ -0,0 +1,51 @@
+package org.lightquark.moneytransfer.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.lightquark.moneytransfer.model.Account;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class TransferLockManagerTest {
+
+    private static final int REPEAT_COUNT = 100_000;
+
+    @Test
+    public void shouldNotDeadlock_whenTransfersGoInOppositeDirections() throws Exception {
+        TransferLockManager lockManager = new TransferLockManager(16, TimeUnit.SECONDS.toNanos(1));
+        Account first = new Account();
+        Account second = new Account();
+
+        CompletableFuture<Integer> forward = CompletableFuture.supplyAsync(() -> transfer(lockManager, first, second));
+        CompletableFuture<Integer> backward = CompletableFuture.supplyAsync(() -> transfer(lockManager, second, first));
+
+        Assert.assertEquals(REPEAT_COUNT, forward.get(30, TimeUnit.SECONDS).intValue());
+        Assert.assertEquals(REPEAT_COUNT, backward.get(30, TimeUnit.SECONDS).intValue());
+        Assert.assertEquals(0, lockManager.getStats().getTimeouts());
+    }
+
+    @Test
+    public void shouldReleaseFirstLock_whenSecondIsBusy() throws Exception {
+        TransferLockManager lockManager = new TransferLockManager(0, TimeUnit.MILLISECONDS.toNanos(1));
+        Account first = new Account();
+        Account second = new Account();
+        CompletableFuture.runAsync(() -> second.getLock().lock()).get();
+
+        Assert.assertFalse(lockManager.lock(first, second));
+        Assert.assertEquals(1, lockManager.getStats().getTimeouts());
+        Assert.assertTrue(lockManager.getStats().getWaitNanos() >= TimeUnit.MILLISECONDS.toNanos(1));
+        Assert.assertTrue(CompletableFuture.supplyAsync(() -> first.getLock().tryLock()).get());
+    }
+
+    private static int transfer(TransferLockManager lockManager, Account source, Account destination) {
+        int completed = 0;
+        for (int i = 0; i < REPEAT_COUNT; i++) {
+            if (lockManager.lock(source, destination)) {
+                completed++;
+                lockManager.unlock(source, destination);
+            }
+        }
+        return completed;
+    }
+}